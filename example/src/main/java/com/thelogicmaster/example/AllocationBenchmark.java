@@ -0,0 +1,62 @@
+package com.thelogicmaster.example;
+
+/**
+ * Stress benchmark that allocates short-lived objects from a varying number of threads to measure allocator scaling
+ * Usage: AllocationBenchmark [maxThreads] [allocationsPerThread]
+ */
+public class AllocationBenchmark {
+
+	private static final int WARMUP_ALLOCATIONS = 1_000_000;
+
+	private static volatile Object sink;
+
+	private static final class Node {
+		int value;
+		Node next;
+
+		Node(int value, Node next) {
+			this.value = value;
+			this.next = next;
+		}
+	}
+
+	private static void allocate(int count) {
+		Node list = null;
+		for (int i = 0; i < count; i++) {
+			list = new Node(i, (i & 15) == 0 ? null : list);
+			if ((i & 0xFFFF) == 0)
+				sink = list;
+		}
+		sink = list;
+	}
+
+	private static long run(int threadCount, int allocations) throws InterruptedException {
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++)
+			threads[i] = new Thread(() -> allocate(allocations));
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int allocations = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+		allocate(WARMUP_ALLOCATIONS);
+
+		System.out.println("threads, total allocations, time (ms), allocations/ms, scaling");
+		double baseline = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long nanos = run(threads, allocations);
+			double throughput = (double) threads * allocations / (nanos / 1_000_000.0);
+			if (threads == 1)
+				baseline = throughput;
+			System.out.println(threads + ", " + (long) threads * allocations + ", " + nanos / 1_000_000 + ", "
+					+ (long) throughput + ", " + String.format("%.2fx", throughput / baseline));
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.thelogicmaster.example;
+
+/**
+ * Tight numeric loop benchmark for comparing code generation modes, such as transpiling with and without `useTypedLocals`
+ * Usage: NumericBenchmark [iterations]
+ */
+public class NumericBenchmark {
+
+	private static final int RUNS = 5;
+
+	private static volatile long sink;
+
+	private static long integerLoop(int iterations) {
+		int hash = 17;
+		int sum = 0;
+		for (int i = 0; i < iterations; i++) {
+			hash = hash * 31 + i;
+			sum += (hash ^ (hash >>> 7)) & 0xFF;
+		}
+		return sum;
+	}
+
+	private static long longLoop(int iterations) {
+		long steps = 0;
+		for (int i = 1; i < iterations / 64; i++) {
+			long n = i;
+			while (n != 1) {
+				n = (n & 1) == 0 ? n >> 1 : 3 * n + 1;
+				steps++;
+			}
+		}
+		return steps;
+	}
+
+	private static long doubleLoop(int iterations) {
+		int escaped = 0;
+		int size = (int) Math.sqrt(iterations / 16.0);
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++) {
+				double cr = 3.0 * x / size - 2.0;
+				double ci = 2.0 * y / size - 1.0;
+				double zr = 0, zi = 0;
+				int i = 0;
+				while (i < 16 && zr * zr + zi * zi < 4.0) {
+					double t = zr * zr - zi * zi + cr;
+					zi = 2.0 * zr * zi + ci;
+					zr = t;
+					i++;
+				}
+				if (i < 16)
+					escaped++;
+			}
+		return escaped;
+	}
+
+	private static long floatLoop(int iterations) {
+		float a = 0.5f, b = 1.5f, accumulator = 0;
+		for (int i = 0; i < iterations; i++) {
+			accumulator += a * b;
+			a += 0.0001f;
+			b -= 0.0001f;
+		}
+		return (long) accumulator;
+	}
+
+	private interface Loop {
+		long run(int iterations);
+	}
+
+	private static void measure(String name, Loop loop, int iterations) {
+		sink = loop.run(iterations / 10); // Warmup
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			sink = loop.run(iterations);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println(name + ", " + best / 1_000 + ", " + (long) (iterations / (best / 1_000_000.0)));
+	}
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+
+		System.out.println("loop, best time (us), iterations/ms");
+		measure("int", NumericBenchmark::integerLoop, iterations);
+		measure("long", NumericBenchmark::longLoop, iterations);
+		measure("double", NumericBenchmark::doubleLoop, iterations);
+		measure("float", NumericBenchmark::floatLoop, iterations);
+	}
+}
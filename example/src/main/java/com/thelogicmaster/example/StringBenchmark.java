@@ -0,0 +1,79 @@
+package com.thelogicmaster.example;
+
+/**
+ * String benchmark for the UTF-8 boundary, decoding and encoding ASCII, mixed European, and CJK text, and for
+ * string concatenation of mixed primitive and object arguments, like log messages
+ * Usage: StringBenchmark [iterations]
+ */
+public class StringBenchmark {
+
+	private static final int RUNS = 5;
+	private static final int TEXT_LENGTH = 4096;
+
+	private static volatile long sink;
+
+	private static String repeat(String sample) {
+		StringBuilder builder = new StringBuilder(TEXT_LENGTH + sample.length());
+		while (builder.length() < TEXT_LENGTH)
+			builder.append(sample);
+		return builder.toString();
+	}
+
+	private static Loop decode(byte[] bytes) {
+		return iterations -> {
+			long length = 0;
+			for (int i = 0; i < iterations; i++)
+				length += new String(bytes).length();
+			return length;
+		};
+	}
+
+	private static Loop encode(String text) {
+		return iterations -> {
+			long length = 0;
+			for (int i = 0; i < iterations; i++)
+				length += text.getBytes().length;
+			return length;
+		};
+	}
+
+	private static long concat(int iterations) {
+		long length = 0;
+		String user = "admin";
+		for (int i = 0; i < iterations; i++)
+			length += ("request " + i + " from " + user + " took " + (i * 31L) + "ms, cached=" + ((i & 1) == 0) + " grade=" + (char) ('A' + i % 4)).length();
+		return length;
+	}
+
+	private interface Loop {
+		long run(int iterations);
+	}
+
+	private static void measure(String name, Loop loop, int iterations) {
+		sink = loop.run(iterations / 10); // Warmup
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			sink = loop.run(iterations);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println(name + ", " + best / 1_000 + ", " + (long) (iterations / (best / 1_000_000.0)));
+	}
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+		String ascii = repeat("The quick brown fox jumps over the lazy dog. ");
+		String mixed = repeat("Café naïve résumé – señor 😀 façade. ");
+		String cjk = repeat("统一码转换测试文本。日本語の文章。");
+
+		System.out.println("loop, best time (us), iterations/ms");
+		measure("decode ascii", decode(ascii.getBytes()), iterations);
+		measure("decode mixed", decode(mixed.getBytes()), iterations);
+		measure("decode cjk", decode(cjk.getBytes()), iterations);
+		measure("encode ascii", encode(ascii), iterations);
+		measure("encode mixed", encode(mixed), iterations);
+		measure("encode cjk", encode(cjk), iterations);
+		measure("concat", StringBenchmark::concat, iterations);
+	}
+}
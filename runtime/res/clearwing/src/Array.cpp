@@ -14,23 +14,23 @@ static jclass cloneableInterface = &class_java_lang_Cloneable;
 void clinit_array(jcontext ctx) {
 }
 
-void mark_array(jobject object, jint mark, jint depth) {
-    if (!object || (depth > GC_DEPTH_ALWAYS && (object->gcMark < GC_MARK_START || object->gcMark == mark)))
-        return;
-    if (depth > MAX_GC_MARK_DEPTH) {
-        markDeepObject(object);
-        return;
-    }
-    if (object->gcMark >= GC_MARK_START)
-        object->gcMark = mark;
-    if (((jclass) ((jclass) object->clazz)->componentClass)->primitive)
+void mark_array(jobject object, jint mark) {
+    if (!object || ((jclass) ((jclass) object->clazz)->componentClass)->primitive)
         return;
     auto array = (jarray) object;
-    for (int i = 0; i < array->length; i++) {
-        auto child = ((jobject *) array->data)[i];
-        if (child)
-            ((gc_mark_ptr) ((jclass) child->clazz)->markFunction)(child, mark, depth + 1);
+    auto data = (jobject *) array->data;
+    int i = 0;
+    // Skip runs of nulls a few elements at a time, since sparse and partially filled arrays are common
+    for (; i + 4 <= array->length; i += 4) {
+        if (!((intptr_t) data[i] | (intptr_t) data[i + 1] | (intptr_t) data[i + 2] | (intptr_t) data[i + 3]))
+            continue;
+        for (int j = i; j < i + 4; j++)
+            if (data[j])
+                markObject(data[j], mark);
     }
+    for (; i < array->length; i++)
+        if (data[i])
+            markObject(data[i], mark);
 }
 
 jobject array_clone_R_java_lang_Object(jcontext ctx, jobject self) {
@@ -124,9 +124,11 @@ extern "C++" jarray createMultiArray(jcontext ctx, jclass type, const std::vecto
     if (type->primitive and dimensions.size() == 1) {
         array->data = new char[type->size * array->length]{};
         adjustHeapUsage(type->size * array->length);
+        countAllocatedBytes(ctx, type->size * array->length);
     } else {
         array->data = new char[sizeof(jobject) * array->length]{};
         adjustHeapUsage((int64_t) sizeof(jobject) * array->length);
+        countAllocatedBytes(ctx, (int64_t) sizeof(jobject) * array->length);
         if (dimensions.size() > 1) {
             auto itemDims = std::vector<int>(dimensions.begin() + 1, dimensions.end());
             for (int i = 0; i < dimensions[0]; i++)
@@ -4,6 +4,6 @@
 
 extern "C" {
 
-
+void array_finalize(jcontext ctx, jobject self);
 
 }
@@ -24,6 +24,7 @@ jobject SM_java_nio_ByteBuffer_allocateDirect_int_R_java_nio_ByteBuffer(jcontext
     init_java_nio_ByteBuffer_long_int(ctx, buffer, (jlong) data, size);
     unprotectObject(buffer);
     adjustHeapUsage(size);
+    countAllocatedBytes(ctx, size);
     return buffer;
 }
 
@@ -24,6 +24,7 @@
 #include "java/lang/Double.h"
 #include "java/lang/Boolean.h"
 #include "java/lang/Number.h"
+#include "Array.hpp"
 #include <java/nio/ByteBuffer.h>
 #include <java/lang/ref/WeakReference.h>
 #include <java/lang/reflect/Method.h>
@@ -36,21 +37,63 @@
 #include <mutex>
 #include <iostream>
 #include <cstring>
-#include <locale>
-#include <codecvt>
 #include <atomic>
 #include <unordered_set>
-#include <cstdarg>
 #include <ranges>
 #include <chrono>
 #include <thread>
+#include <new>
+#include <condition_variable>
+#include <algorithm>
 
 static_assert(sizeof(Class) == sizeof(java_lang_Class)); // Loosely ensure generated Class structure matches native representation
 static_assert(std::alignment_of<java_lang_Object>() == std::alignment_of<jlong>()); // Embedding Object in type struct should not add padding
+static_assert((GC_NURSERY_CHUNK_SIZE & (GC_NURSERY_CHUNK_SIZE - 1)) == 0, "Nursery chunk size must be a power of two");
+
+// A young generation region that objects are bump allocated from. Objects are never moved, so a chunk is recycled once all of its objects are freed.
+// Until then, a retired chunk's memory that isn't used by live objects is retained and counted in the heap usage.
+struct NurseryChunk {
+    char *top; // Next free byte
+    bool owned; // Whether a thread (Or the shared allocator) is still bump allocating from this chunk
+    int64_t allocatedObjects; // Objects allocated by the owner, merged into `liveObjects` once retired (Owner only)
+    int64_t allocatedBytes; // Heap usage of objects allocated by the owner, merged into `liveBytes` once retired (Owner only)
+    int64_t liveObjects; // Allocated objects not yet freed, including promoted objects, only accurate once retired (Requires objectsLock)
+    int64_t liveBytes; // Heap usage of the objects counted by `liveObjects` (Requires objectsLock)
+    uint64_t youngBits[GC_NURSERY_CHUNK_SIZE / sizeof(jlong) / 64]; // One bit per word marking the start of an object that hasn't been promoted
+};
+
+struct ClassUsage {
+    jclass clazz;
+    int64_t objects;
+    int64_t bytes;
+};
 
 static ankerl::unordered_dense::set<jobject> *objects;
 static ankerl::unordered_dense::set<jobject> *rootObjects;
-static std::vector<jobject> collectedObjects;
+static std::vector<jobject> collectedObjects; // Unreachable objects without finalizers waiting to be freed (Requires objectsLock)
+static std::vector<jobject> finalizableObjects; // Unreachable objects waiting to be finalized and freed (Requires objectsLock)
+static std::condition_variable collectionCondition; // Wakes the collection thread once objects have been queued (Used with objectsLock)
+static std::atomic_int64_t sweptObjects;
+static std::atomic_int64_t sweptBytes;
+static std::atomic_int64_t sweepNanoseconds;
+static std::mutex safepointMutex; // Guards safepoint handshakes between the collecting thread and mutators
+static std::condition_variable safepointArrivalCondition; // Signaled when a thread becomes suspended
+static int64_t safepointArrivals; // Incremented whenever a thread becomes suspended (Requires safepointMutex)
+static std::condition_variable safepointResumeCondition; // Signaled when suspendVM is cleared or the VM is exiting
+static std::atomic_int64_t safepointCount;
+static std::atomic_int64_t safepointNanoseconds;
+static std::atomic_int64_t safepointMaxNanoseconds;
+static std::atomic_int64_t safepointLastNanoseconds;
+static std::atomic_int64_t collectionCount;
+static std::atomic_int64_t majorCollectionCount;
+static std::atomic_int64_t pauseNanoseconds;
+static std::atomic_int64_t maxPauseNanoseconds;
+static std::atomic_int64_t pauseHistogram[GC_PAUSE_HISTOGRAM_BUCKETS]; // Bucket `i` counts pauses under 2^i microseconds (The last is unbounded)
+static std::atomic_int64_t heapHighWaterMark;
+static std::atomic_bool liveHistogramEnabled;
+static std::mutex liveHistogramMutex;
+static std::vector<ClassUsage> liveHistogram; // Live objects by class from the last major collection, sorted by bytes (Requires liveHistogramMutex)
+static FILE *collectionLog; // Machine-readable log with a JSON line per collection, enabled by the CLEARWING_GC_LOG env var
 static std::multimap<jobject, jweak> weakReferences;
 static std::mutex objectsLock;
 static jthread collectionThread;
@@ -58,13 +101,46 @@ static std::map<std::string, jclass> *classes;
 static std::recursive_mutex criticalLock;
 static std::mutex *registryMutex;
 static std::vector<jcontext> threadContexts;
-static std::vector<jobject> deepMarkedObjects;
+static ankerl::unordered_dense::set<uintptr_t> nurseryChunks;
+static std::vector<NurseryChunk *> freeNurseryChunks;
+static NurseryChunk *nurseryChunk; // Shared allocation chunk for threads without a thread-local buffer
+static std::vector<jobject> youngObjects; // Young objects from the shared allocation chunk or from destroyed contexts
 static bool vmInitialized;
 static volatile bool exiting;
 static thread_local jcontext threadContext;
 
+/// Hashes strings by content. Compact strings are canonical, so equal strings always share a coder.
+struct StringContentHash {
+    using is_avalanching = void;
+
+    uint64_t operator()(jstring string) const {
+        auto chars = getStringChars(string);
+        return ankerl::unordered_dense::detail::wyhash::hash(chars.chars, chars.latin1 ? chars.length : chars.length * sizeof(jchar));
+    }
+};
+
+struct StringContentEqual {
+    bool operator()(jstring first, jstring second) const {
+        auto a = getStringChars(first);
+        auto b = getStringChars(second);
+        return a.latin1 == b.latin1 and a.length == b.length and !memcmp(a.chars, b.chars, a.latin1 ? a.length : a.length * sizeof(jchar));
+    }
+};
+
+#define INTERN_STRIPES 64 // Independently locked partitions of the intern table
+
+/// A partition of the intern table shared by string literals and String.intern()
+struct InternStripe {
+    std::mutex lock;
+    ankerl::unordered_dense::set<jstring, StringContentHash, StringContentEqual> strings;
+};
+
+static InternStripe internStripes[INTERN_STRIPES];
+
 std::atomic_int64_t heapUsage;
 std::atomic_int64_t allocationsSinceCollection;
+std::atomic_int64_t nurseryUsage;
+static std::atomic_int64_t retainedNurseryBytes; // Unused memory of retired nursery chunks pinned by live objects (Modified with objectsLock)
 int64_t lastCollectionHeapUsage;
 
 extern "C" {
@@ -73,7 +149,7 @@ bool volatile suspendVM;
 
 static void collectionThreadFunc(jcontext ctx);
 
-static void markPrimitive(jobject object, jint mark, jint depth) {}
+static void markPrimitive(jobject object, jint mark) {}
 
 static void clinitPrimitive(jcontext ctx) {}
 
@@ -119,6 +195,14 @@ jcontext initVM() {
     }
     vmInitialized = true;
 
+    // The collection log can be written to a file or the standard streams, and also enables the live class histogram
+    if (auto env = getenv("CLEARWING_GC_LOG"); env && !collectionLog) {
+        std::string_view target(env);
+        collectionLog = target == "stderr" ? stderr : target == "stdout" || target == "1" ? stdout : fopen(env, "a");
+        if (collectionLog)
+            liveHistogramEnabled = true;
+    }
+
     auto mainContext = createContext();
 
     jcontext collectionCtx = createContext();
@@ -138,7 +222,7 @@ void shutdownVM(jcontext ctx) {
     exiting = true;
     if (ctx) {
         ctx->dead = true;
-        ctx->suspended = true;
+        suspendContext(ctx);
     }
     auto timeout = std::chrono::system_clock::now() + std::chrono::seconds(10);
     while (std::chrono::system_clock::now() < timeout) {
@@ -149,9 +233,18 @@ void shutdownVM(jcontext ctx) {
             done = false;
             threadContext->lock.lock();
             if (threadContext->blockedBy)
-                ((jmonitor) ((jobject) threadContext->blockedBy)->monitor)->condition.notify_all();
+                if (auto monitor = getInflatedMonitor(threadContext->blockedBy)) {
+                    // Holding the monitor lock ensures a thread about to wait sees `exiting` or gets the notification
+                    std::lock_guard monitorLock(monitor->lock);
+                    monitor->condition.notify_all();
+                    monitor->entryCondition.notify_all();
+                }
             threadContext->lock.unlock();
         }
+        {
+            std::lock_guard lock(safepointMutex);
+            safepointResumeCondition.notify_all();
+        }
         if (done)
             break;
     }
@@ -169,6 +262,51 @@ jcontext getThreadContext() {
     return threadContext;
 }
 
+static std::vector<std::pair<ProfileCounter *, int>> *profiles;
+
+static void dumpProfile() {
+    auto path = getenv("CLEARWING_PROFILE");
+    auto file = fopen(path ? path : "clearwing.profile", "w");
+    if (!file) {
+        fprintf(stderr, "Failed to write profile\n");
+        return;
+    }
+    fprintf(file, "# Clearwing profile\n");
+    for (auto [counters, count] : *profiles)
+        for (int i = 0; i < count; i++) {
+            auto &counter = counters[i];
+            switch (counter.kind) {
+                case ProfileKind::Method:
+                    fprintf(file, "method %s %lld\n", counter.method, (long long) counter.counts[0].load());
+                    break;
+                case ProfileKind::Branch:
+                    fprintf(file, "branch %s %d %lld %lld\n", counter.method, counter.site, (long long) counter.counts[0].load(), (long long) counter.counts[1].load());
+                    break;
+                case ProfileKind::Call:
+                    fprintf(file, "call %s %d %lld", counter.method, counter.site, (long long) counter.counts[0].load());
+                    for (int j = 0; j < PROFILE_RECEIVERS; j++)
+                        if (auto receiver = counter.receivers[j].load())
+                            fprintf(file, " %s %lld", (const char *) receiver->nativeName, (long long) counter.receiverCounts[j].load());
+                    fprintf(file, "\n");
+                    break;
+                case ProfileKind::Handler:
+                    fprintf(file, "handler %s %d %lld\n", counter.method, counter.site, (long long) counter.counts[0].load());
+                    break;
+            }
+        }
+    fclose(file);
+}
+
+extern "C++" bool registerProfile(ProfileCounter *counters, int count) {
+    // Called from static initializers, so the list can't rely on being constructed
+    if (!profiles) {
+        profiles = new std::vector<std::pair<ProfileCounter *, int>>;
+        atexit(dumpProfile);
+    }
+    profiles->emplace_back(counters, count);
+    return true;
+}
+
 /// Registers a class and populates its object fields. Does not throw exceptions.
 bool registerClass(jclass clazz) {
     extern void *vtable_java_lang_Class[];
@@ -183,15 +321,15 @@ bool registerClass(jclass clazz) {
             .clazz = (intptr_t) &class_java_lang_Class,
             .gcMark = GC_MARK_ETERNAL,
             .vtable = (intptr_t) vtable_java_lang_Class,
-            .monitor = (intptr_t) new ObjectMonitor,
+            .monitor = 0,
     };
 
     auto instanceCache = new std::unordered_set<jclass>;
-    auto interfaceCache = new std::unordered_map<jclass, std::vector<int>>;
+    std::vector<ItableEntry> itable;
     std::function<void(jclass)> processClass;
     processClass = [&](jclass cls) {
-        if (cls != clazz && cls->access & 0x0200) { // ACC_INTERFACE
-            std::vector<int> offsets(cls->methodCount);
+        if (cls != clazz && cls->access & 0x0200 && !instanceCache->contains(cls)) { // ACC_INTERFACE
+            auto offsets = new int[cls->methodCount];
             for (int i = 0; i < cls->methodCount; i++) {
                 auto &metadata = ((MethodMetadata *) cls->nativeMethods)[i];
                 if (metadata.access & 0x8) { // ACC_STATIC
@@ -208,7 +346,7 @@ bool registerClass(jclass clazz) {
                 }
                 offsets[i] = found;
             }
-            (*interfaceCache)[cls] = std::move(offsets);
+            itable.push_back({ cls, clazz, offsets, cls->methodCount });
         }
 
         instanceCache->emplace(cls);
@@ -218,13 +356,34 @@ bool registerClass(jclass clazz) {
             processClass(((jclass *)cls->nativeInterfaces)[i]);
     };
     processClass(clazz);
+    itable.push_back({}); // Terminator
+    auto itableEntries = new ItableEntry[itable.size()];
+    std::copy(itable.begin(), itable.end(), itableEntries);
     clazz->instanceOfCache = (intptr_t) instanceCache;
-    clazz->interfaceCache = (intptr_t) interfaceCache;
+    clazz->itable = (intptr_t) itableEntries;
 
     registryMutex->unlock();
     return true;
 }
 
+/// Resolves an interface method on an inline cache miss and caches the receiver's itable entry, replacing older entries once full. Throws exceptions.
+extern "C++" void *resolveInterfaceCallSiteMiss(jcontext ctx, InterfaceCallSite &site, jclass interface, int method, jobject object) {
+    auto entry = findItableEntry((jclass) NULL_CHECK(object)->clazz, interface);
+    if (!entry || method >= entry->offsetCount || entry->offsets[method] < 0) CPP_UNLIKELY
+        throwNoSuchMethod(ctx);
+    bool cached = false;
+    for (auto &slot : site.entries) {
+        const ItableEntry *empty = nullptr;
+        if (slot.compare_exchange_strong(empty, entry, std::memory_order_release) || empty == entry) {
+            cached = true;
+            break;
+        }
+    }
+    if (!cached) // Polymorphic sites past the cache size replace entries round-robin
+        site.entries[site.next.fetch_add(1, std::memory_order_relaxed) % INTERFACE_CALL_SITE_SIZE].store(entry, std::memory_order_release);
+    return ((void **) object->vtable)[entry->offsets[method]];
+}
+
 /// Retrieves a class or nullptr if one is not found. Does not throw exceptions.
 jclass classForName(const char *name) {
     try {
@@ -258,15 +417,31 @@ jint longCompare(jlong value1, jlong value2) {
     return 0;
 }
 
-static jstring createString(jcontext ctx, const char *string, int length, bool protect) {
-    auto encoded = std::wstring_convert<std::codecvt_utf8_utf16<char16_t>, char16_t>{}.from_bytes(string, string + length);
-    int encodedLength = (int)encoded.length();
+/// Allocates a string with uninitialized chars, stored as Latin-1 if `latin1` is set. Throws exceptions.
+static jstring allocateString(jcontext ctx, int length, bool latin1, bool protect) {
     auto inst = (jstring) gcAllocProtected(ctx, &class_java_lang_String); // This leaks if createArray throws an exception
-    inst->F_value = (intptr_t) createArray(ctx, &class_char, encodedLength);
+    if (latin1)
+        inst->F_latin1 = (intptr_t) createArray(ctx, &class_byte, length);
+    else
+        inst->F_value = (intptr_t) createArray(ctx, &class_char, length);
     if (!protect)
         unprotectObject((jobject)inst);
-    inst->F_count = encodedLength;
-    memcpy(((jarray) inst->F_value)->data, encoded.c_str(), encoded.length() * 2);
+    inst->F_coder = latin1 ? STRING_LATIN1 : STRING_UTF16;
+    inst->F_count = length;
+    return inst;
+}
+
+static jstring createString(jcontext ctx, const char *string, int length, bool protect) {
+    // ASCII is already Latin-1, so the common case is a plain copy, and anything else is decoded straight into the string
+    bool latin1;
+    int decodedLength = getUTF8DecodedLength(string, length, &latin1);
+    auto inst = allocateString(ctx, decodedLength, latin1, protect);
+    if (!latin1)
+        decodeUTF8(string, length, (jchar *) jarray(inst->F_value)->data);
+    else if (decodedLength == length)
+        memcpy(jarray(inst->F_latin1)->data, string, length);
+    else
+        decodeUTF8Latin1(string, length, (char *) jarray(inst->F_latin1)->data);
     return inst;
 }
 
@@ -290,59 +465,97 @@ jstring stringFromNativeEternal(jcontext ctx, const char *string) {
     return str;
 }
 
-/// Creates a string from a StringLiteral. Throws exceptions.
-jstring createStringLiteral(jcontext ctx, StringLiteral literal) {
-    static std::map<const char *, jstring> pool;
-    static std::mutex lock;
-    jstring value{};
-    std::lock_guard guard{ lock };
-    auto it = pool.find(literal.string);
-    if (it != pool.end()) {
-        value = it->second;
-    } else {
-        value = createString(ctx, literal.string, literal.length, false);
-        makeEternal((jobject)value);
-        makeEternal((jobject)value->F_value);
-        pool[literal.string] = value;
+/// Creates a compact string from Latin-1 chars. Throws exceptions.
+jstring stringFromLatin1(jcontext ctx, const char *chars, int length) {
+    auto inst = allocateString(ctx, length, true, false);
+    memcpy(jarray(inst->F_latin1)->data, chars, length);
+    return inst;
+}
+
+/// Creates a string from UTF-16 chars, which is compact if they all fit in Latin-1. Throws exceptions.
+jstring stringFromUTF16(jcontext ctx, const jchar *chars, int length) {
+    bool latin1 = countLatin1Chars(chars, length) == length;
+    auto inst = allocateString(ctx, length, latin1, false);
+    if (latin1)
+        compressLatin1(chars, length, (char *) jarray(inst->F_latin1)->data);
+    else
+        memcpy(jarray(inst->F_value)->data, chars, length * sizeof(jchar));
+    return inst;
+}
+
+/// Gets the canonical instance of a string, adding it to the intern table if no equal string is interned yet. Interned
+/// strings are never collected. Does not throw exceptions.
+jstring internString(jcontext ctx, jstring string) {
+    auto &stripe = internStripes[(StringContentHash{}(string) >> 32) % INTERN_STRIPES];
+    std::lock_guard guard{ stripe.lock };
+    auto [it, inserted] = stripe.strings.emplace(string);
+    if (inserted) {
+        makeEternal((jobject)string);
+        makeEternal((jobject)(string->F_coder == STRING_LATIN1 ? string->F_latin1 : string->F_value));
     }
-    return value;
+    return *it;
+}
+
+/// Gets the interned string for a StringLiteral. Prefer STRING_LITERAL, which caches it per use site. Throws exceptions.
+jstring createStringLiteral(jcontext ctx, StringLiteral literal) {
+    return internString(ctx, createString(ctx, literal.string, literal.length, false));
+}
+
+/// Fills the slot of a STRING_LITERAL use site. Threads racing here all publish the same interned string. Throws exceptions.
+jstring loadStringLiteral(jcontext ctx, jstring *slot, StringLiteral literal) {
+    auto string = createStringLiteral(ctx, literal);
+    std::atomic_ref(*slot).store(string, std::memory_order_release);
+    return string;
 }
 
 /// Returns a native string tied to the lifespan of the string object. Throws exceptions.
 const char *stringToNative(jcontext ctx, jstring string) {
     if (!NULL_CHECK(string)->F_nativeString) { // Race condition here probably doesn't matter
-        auto bytes = (jarray) M_java_lang_String_getBytes_R_Array1_byte(ctx, (jobject) string);
-        string->F_nativeString = (intptr_t) new char[bytes->length + 1]{};
-        memcpy((char *) string->F_nativeString, bytes->data, bytes->length);
+        // Encoded straight into the cached buffer, without going through a byte array
+        char *native;
+        if (string->F_coder == STRING_LATIN1) {
+            auto chars = (const char *) jarray(string->F_latin1)->data;
+            native = new char[getLatin1UTF8Length(chars, string->F_count) + 1]{};
+            encodeLatin1UTF8(chars, string->F_count, native);
+        } else {
+            auto chars = (const jchar *) jarray(string->F_value)->data;
+            native = new char[getUTF8EncodedLength(chars, string->F_count) + 1]{};
+            encodeUTF8(chars, string->F_count, native);
+        }
+        string->F_nativeString = (intptr_t) native;
     }
     return (const char *) string->F_nativeString;
 }
 
-jstring concatStringsRecipe(jcontext ctx, const char *recipe, int argCount, ...) {
-    va_list args;
-    va_start(args, argCount);
-    volatile auto string = new std::string;
-    jstring result{};
-    tryFinally([&] {
-        int term = 0;
-        for (const char *it = recipe; *it; it++) {
-            if (*it == 0x1 || *it == 0x2) {
-                if (term++ >= argCount) throw std::runtime_error("Not enough args for string recipe");
-                auto obj = va_arg(args, jobject);
-                if (obj)
-                    *string += stringToNative(ctx, (jstring)invokeVirtual<func_java_lang_Object_toString_R_java_lang_String, VTABLE_java_lang_Object_toString_R_java_lang_String>(ctx, obj));
-                else
-                    *string += "null";
-            } else {
-                *string += *it;
-            }
-        }
-        result = stringFromNative(ctx, string->c_str());
-    }, [&] {
-        delete string;
-        va_end(args); // This may be unsafe if an exception is thrown...
-    });
-    return result;
+/// Gets the chars of a string, which are only valid while the string is reachable. Does not throw exceptions.
+StringChars getStringChars(jstring string) {
+    if (string->F_coder == STRING_LATIN1)
+        return { jarray(string->F_latin1)->data, string->F_count, true };
+    return { jarray(string->F_value)->data, string->F_count, false };
+}
+
+/// Allocates the result of a string concatenation, with uninitialized chars. Throws exceptions.
+jstring allocateConcatString(jcontext ctx, jlong length, bool latin1, void **chars) {
+    if (length > INT32_MAX) CPP_UNLIKELY
+        constructAndThrow<&class_java_lang_OutOfMemoryError, init_java_lang_OutOfMemoryError>(ctx);
+    auto string = allocateString(ctx, (int) length, latin1, false);
+    *chars = jarray(latin1 ? string->F_latin1 : string->F_value)->data;
+    return string;
+}
+
+/// Converts a string concatenation argument to a string, where null (Or a null toString result) is "null". Throws exceptions.
+jstring concatToString(jcontext ctx, jobject object) {
+    if (object)
+        object = invokeVirtual<func_java_lang_Object_toString_R_java_lang_String, VTABLE_java_lang_Object_toString_R_java_lang_String>(ctx, object);
+    return object ? (jstring) object : STRING_LITERAL(u8"null"_j);
+}
+
+jstring concatDoubleToString(jcontext ctx, jdouble value) {
+    return (jstring) SM_java_lang_Double_toString_double_R_java_lang_String(ctx, value);
+}
+
+jstring concatFloatToString(jcontext ctx, jfloat value) {
+    return (jstring) SM_java_lang_Float_toString_float_R_java_lang_String(ctx, value);
 }
 
 /// Returns whether a provided `assignee` is an instance of or inherits from `type`. Does not throw exceptions.
@@ -363,6 +576,133 @@ bool isInstance(jcontext ctx, jobject object, jclass type) {
     return isAssignableFrom(ctx, type, (jclass) object->clazz);
 }
 
+/// Finds the nursery chunk containing an address, if any. Must hold objectsLock. Does not throw exceptions.
+static NurseryChunk *findNurseryChunk(const void *address) {
+    auto base = (uintptr_t) address & ~(uintptr_t) (GC_NURSERY_CHUNK_SIZE - 1);
+    return nurseryChunks.contains(base) ? (NurseryChunk *) base : nullptr;
+}
+
+static void setYoung(NurseryChunk *chunk, jobject object, bool young) {
+    auto word = ((char *) object - (char *) chunk) / sizeof(jlong);
+    std::atomic_ref bits(chunk->youngBits[word / 64]); // Owner threads set bits without holding objectsLock
+    if (young)
+        bits.fetch_or(1ull << (word % 64), std::memory_order_relaxed);
+    else
+        bits.fetch_and(~(1ull << (word % 64)), std::memory_order_relaxed);
+}
+
+/// Checks whether a pointer is the start of an object in the young generation. Must hold objectsLock. Does not throw exceptions.
+static bool isYoungObject(jobject object) {
+    auto chunk = findNurseryChunk(object);
+    if (!chunk || (uintptr_t) object % sizeof(jlong) != 0)
+        return false;
+    auto word = ((char *) object - (char *) chunk) / sizeof(jlong);
+    return std::atomic_ref(chunk->youngBits[word / 64]).load(std::memory_order_relaxed) & (1ull << (word % 64));
+}
+
+/// Checks whether a pointer refers to a live collectable object. Must hold objectsLock. Does not throw exceptions.
+static bool isHeapObject(jobject object) {
+    return objects->contains(object) || isYoungObject(object);
+}
+
+static void resetNurseryChunk(NurseryChunk *chunk) {
+    chunk->top = (char *) chunk + sizeof(NurseryChunk);
+    chunk->owned = false;
+    chunk->allocatedObjects = 0;
+    chunk->allocatedBytes = 0;
+    chunk->liveObjects = 0;
+    chunk->liveBytes = 0;
+    memset(chunk->youngBits, 0, sizeof(chunk->youngBits));
+}
+
+/// Adjusts the memory retained by pinned nursery chunks, which is counted in the heap usage. Must hold objectsLock. Does not throw exceptions.
+static void adjustRetainedNurseryBytes(int64_t amount) {
+    retainedNurseryBytes += amount;
+    heapUsage += amount;
+}
+
+/// Recycles an empty and unowned nursery chunk. Must hold objectsLock. Does not throw exceptions.
+static void recycleNurseryChunk(NurseryChunk *chunk) {
+    adjustRetainedNurseryBytes(-GC_NURSERY_CHUNK_SIZE); // Retired chunks retain everything but their live objects
+    if ((int64_t) freeNurseryChunks.size() * GC_NURSERY_CHUNK_SIZE < GC_NURSERY_SIZE) {
+        resetNurseryChunk(chunk);
+        freeNurseryChunks.emplace_back(chunk);
+    } else {
+        nurseryChunks.erase((uintptr_t) chunk);
+        ::operator delete(chunk, std::align_val_t(GC_NURSERY_CHUNK_SIZE));
+    }
+}
+
+/// Stops bump allocating from a chunk, merging its allocation count. Must hold objectsLock. Does not throw exceptions.
+static void retireNurseryChunk(NurseryChunk *chunk) {
+    if (!chunk)
+        return;
+    chunk->owned = false;
+    chunk->liveObjects += chunk->allocatedObjects;
+    chunk->liveBytes += chunk->allocatedBytes;
+    chunk->allocatedObjects = 0;
+    chunk->allocatedBytes = 0;
+    adjustRetainedNurseryBytes(GC_NURSERY_CHUNK_SIZE - chunk->liveBytes);
+    if (chunk->liveObjects == 0)
+        recycleNurseryChunk(chunk);
+}
+
+/// Retires a full chunk and takes an empty one for bump allocation. Must hold objectsLock. Returns null on failure. Does not throw exceptions.
+static NurseryChunk *refillNurseryChunk(NurseryChunk *previous) {
+    retireNurseryChunk(previous);
+    NurseryChunk *chunk;
+    if (!freeNurseryChunks.empty()) {
+        chunk = freeNurseryChunks.back();
+        freeNurseryChunks.pop_back();
+    } else {
+        chunk = (NurseryChunk *) ::operator new(GC_NURSERY_CHUNK_SIZE, std::align_val_t(GC_NURSERY_CHUNK_SIZE), std::nothrow);
+        if (!chunk)
+            return nullptr;
+        resetNurseryChunk(chunk);
+        nurseryChunks.emplace((uintptr_t) chunk);
+    }
+    chunk->owned = true;
+    return chunk;
+}
+
+/// Bump allocates zeroed object memory from a chunk, counting its heap usage. Only the owner may call this. Returns null if the chunk is full. Does not throw exceptions.
+static jobject bumpAlloc(NurseryChunk *chunk, int size, int64_t usage) {
+    if (!chunk || chunk->top + size > (char *) chunk + GC_NURSERY_CHUNK_SIZE)
+        return nullptr;
+    auto object = (jobject) chunk->top;
+    chunk->top += size;
+    chunk->allocatedObjects++;
+    chunk->allocatedBytes += usage;
+    memset(object, 0, size);
+    setYoung(chunk, object, true);
+    return object;
+}
+
+/// Merges thread-local allocation counters into the global counters. Must hold objectsLock. Does not throw exceptions.
+static void flushAllocationCounters(jcontext ctx) {
+    heapUsage += ctx->pendingHeapUsage;
+    nurseryUsage += ctx->pendingNurseryUsage;
+    ctx->pendingHeapUsage = 0;
+    ctx->pendingNurseryUsage = 0;
+}
+
+/// Frees the memory of a destroyed object with the given heap usage, recycling nursery chunks once empty. Must hold objectsLock. Does not throw exceptions.
+static void releaseObjectMemory(jobject object, int64_t usage) {
+    auto chunk = findNurseryChunk(object);
+    if (!chunk) {
+        delete[] (char *) object;
+        return;
+    }
+    chunk->liveBytes -= usage;
+    if (chunk->owned) {
+        chunk->liveObjects--;
+        return;
+    }
+    adjustRetainedNurseryBytes(usage); // The freed memory stays pinned until the rest of the chunk is freed
+    if (--chunk->liveObjects == 0)
+        recycleNurseryChunk(chunk);
+}
+
 jobject gcAllocObject(jcontext ctx, jclass clazz, int mark) {
     thread_local bool outOfMem;
 
@@ -375,6 +715,8 @@ jobject gcAllocObject(jcontext ctx, jclass clazz, int mark) {
 
     if (heapUsage > GC_HEAP_THRESHOLD || heapUsage - lastCollectionHeapUsage > GC_MEM_THRESHOLD || allocationsSinceCollection > GC_OBJECT_THRESHOLD) CPP_UNLIKELY
         runGC(ctx);
+    else if (nurseryUsage > GC_NURSERY_SIZE) CPP_UNLIKELY
+        runMinorGC(ctx);
 
     if (heapUsage > GC_HEAP_OOM_THRESHOLD && !outOfMem) CPP_UNLIKELY
     {
@@ -386,23 +728,70 @@ jobject gcAllocObject(jcontext ctx, jclass clazz, int mark) {
         });
     }
 
-    auto object = (jobject) new char[clazz->size]{};
-    heapUsage += clazz->size + (int64_t) sizeof(ObjectMonitor);
-    allocationsSinceCollection++;
+    int size = (clazz->size + (int) sizeof(jlong) - 1) & ~((int) sizeof(jlong) - 1);
+    int64_t usage = clazz->size;
 
-    *object = {
-        .clazz = (intptr_t) clazz,
-        .gcMark = mark,
-        .vtable = (intptr_t) clazz->classVtable,
-        .monitor = (intptr_t) new ObjectMonitor,
+    auto initHeader = [&](jobject object) {
+        *object = {
+            .clazz = (intptr_t) clazz,
+            .gcMark = mark,
+            .vtable = (intptr_t) clazz->classVtable,
+            .monitor = 0, // Monitors are only inflated when contended or waited on
+        };
     };
 
-    objectsLock.lock();
-    if (mark == GC_MARK_START) CPP_LIKELY
-        objects->emplace(object);
-    else
-        rootObjects->emplace(object);
-    objectsLock.unlock();
+    // Short-lived objects are bump allocated in the nursery and only added to the object set once promoted, unless too many
+    // chunks are already pinned by survivors, so that fragmentation is bounded until enough of them die
+    jobject object{};
+    if (mark == GC_MARK_START && size <= GC_NURSERY_MAX_OBJECT_SIZE && retainedNurseryBytes.load(std::memory_order_relaxed) < GC_NURSERY_MAX_RETAINED) CPP_LIKELY {
+        if (ctx->thread && ctx->thread->F_alive) CPP_LIKELY {
+            // Running Java threads are always waited on by the collector, so the thread-local buffer only needs the lock to refill
+            auto chunk = (NurseryChunk *) ctx->nurseryChunk;
+            object = bumpAlloc(chunk, size, usage);
+            if (!object) CPP_UNLIKELY {
+                objectsLock.lock();
+                chunk = refillNurseryChunk(chunk);
+                ctx->nurseryChunk = chunk;
+                flushAllocationCounters(ctx);
+                objectsLock.unlock();
+                object = bumpAlloc(chunk, size, usage);
+            }
+            if (object) CPP_LIKELY {
+                initHeader(object);
+                ctx->youngObjects.emplace_back(object);
+                ctx->pendingHeapUsage += usage;
+                ctx->pendingNurseryUsage += size;
+            }
+        } else {
+            // Other threads like the collection thread can allocate during a collection, so use the shared chunk
+            objectsLock.lock();
+            object = bumpAlloc(nurseryChunk, size, usage);
+            if (!object) {
+                nurseryChunk = refillNurseryChunk(nurseryChunk);
+                object = bumpAlloc(nurseryChunk, size, usage);
+            }
+            if (object) {
+                initHeader(object);
+                youngObjects.emplace_back(object);
+                heapUsage += usage;
+                nurseryUsage += size;
+            }
+            objectsLock.unlock();
+        }
+    }
+    if (!object) {
+        object = (jobject) new char[clazz->size]{};
+        initHeader(object);
+        heapUsage += usage;
+        allocationsSinceCollection++;
+        objectsLock.lock();
+        if (mark == GC_MARK_START)
+            objects->emplace(object);
+        else
+            rootObjects->emplace(object);
+        objectsLock.unlock();
+    }
+    countAllocatedBytes(ctx, usage);
 
     return object;
 }
@@ -421,6 +810,19 @@ jobject gcAllocEternal(jcontext ctx, jclass clazz) {
     return gcAllocObject(ctx, clazz, GC_MARK_ETERNAL);
 }
 
+/// Initializes an object in frame storage for an allocation the transpiler proved never escapes its method. The object is never tracked by the GC, since its fields are scanned with the frame. Does not throw exceptions.
+jobject initStackObject(jclass clazz, void *storage) {
+    auto object = (jobject) storage;
+    memset(object, 0, clazz->size);
+    *object = {
+        .clazz = (intptr_t) clazz,
+        .gcMark = GC_MARK_STACK,
+        .vtable = (intptr_t) clazz->classVtable,
+        .monitor = 0,
+    };
+    return object;
+}
+
 static jobject makeRoot(jobject object, int mark) {
     objectsLock.lock();
     if (object->gcMark == mark) {
@@ -428,7 +830,7 @@ static jobject makeRoot(jobject object, int mark) {
         return object;
     }
     object->gcMark = mark;
-    objects->erase(object);
+    objects->erase(object); // Young objects stay in the nursery list until the next collection drops them
     rootObjects->emplace(object);
     objectsLock.unlock();
     return object;
@@ -442,7 +844,8 @@ static jobject makeRegular(jobject object, int mark) {
     }
     object->gcMark = GC_MARK_START;
     rootObjects->erase(object);
-    objects->emplace(object);
+    if (!isYoungObject(object))
+        objects->emplace(object);
     objectsLock.unlock();
     return object;
 }
@@ -484,8 +887,10 @@ void deregisterWeak(jweak reference) {
 
 /// Creates a new context. Does not throw exceptions.
 jcontext createContext() {
+    static std::atomic_int64_t lockIds;
     auto context = new Context;
     context->jniEnv = createJni(context);
+    context->lockId = ++lockIds;
     acquireCriticalLock();
     threadContexts.emplace_back(context);
     releaseCriticalLock();
@@ -495,14 +900,84 @@ jcontext createContext() {
 /// Destroys a context. Does not throw exceptions.
 void destroyContext(jcontext context) {
     destroyJni(context->jniEnv);
+    objectsLock.lock(); // The collector flushes every context under the lock without waiting for exiting threads
+    flushAllocationCounters(context);
+    retireNurseryChunk((NurseryChunk *) context->nurseryChunk);
+    youngObjects.insert(youngObjects.end(), context->youngObjects.begin(), context->youngObjects.end());
+    objectsLock.unlock();
     acquireCriticalLock();
     std::erase(threadContexts, context);
     releaseCriticalLock();
     delete context;
 }
 
+/// Clears weak references to a collected object and forgets them. Requires objectsLock.
+static void clearWeakReferences(jobject object) {
+    auto [begin, end] = weakReferences.equal_range(object);
+    if (begin == end)
+        return;
+    for (auto it = begin; it != end; ++it)
+        it->second->F_ptr = 0;
+    weakReferences.erase(begin, end);
+}
+
+/// Clears weak references to a batch of collected objects, taking the objects lock once. Does not throw exceptions.
+static void clearBatchWeakReferences(const jobject *batch, size_t count) {
+    objectsLock.lock();
+    if (!weakReferences.empty())
+        for (size_t i = 0; i < count; i++)
+            clearWeakReferences(batch[i]);
+    objectsLock.unlock();
+}
+
+/// Frees a batch of at most GC_SWEEP_BATCH_SIZE collected objects, taking the objects lock once for the entire batch. Does not throw exceptions.
+static void sweepObjects(jcontext ctx, const jobject *batch, size_t count) {
+    auto start = std::chrono::steady_clock::now();
+    int64_t objectBytes = 0;
+    int64_t arrayBytes = 0;
+    int sizes[GC_SWEEP_BATCH_SIZE]; // Object sizes, since headers are erased before the memory is released
+
+    clearBatchWeakReferences(batch, count);
+
+    for (size_t i = 0; i < count; i++) {
+        jobject obj = batch[i];
+        auto clazz = (jclass) obj->clazz;
+        sizes[i] = clazz->size;
+        objectBytes += clazz->size;
+        if (clazz->arrayDimensions > 0) {
+            auto component = (jclass) clazz->componentClass;
+            arrayBytes += (component->primitive ? component->size : (int64_t) sizeof(jobject)) * ((jarray) obj)->length;
+            array_finalize(ctx, obj); // Arrays have no Java finalizer, so the data is freed inline
+        }
+
+        if (auto monitor = getInflatedMonitor(obj)) {
+            objectBytes += (int64_t) sizeof(ObjectMonitor);
+            delete monitor;
+        }
+
+        memset(obj, 0, sizeof(java_lang_Object)); // Erase collected objects to make memory bugs easier to catch
+        obj->gcMark = GC_MARK_DESTROYED;
+        obj->clazz = 1;
+        obj->vtable = 2;
+        obj->monitor = 3;
+    }
+    heapUsage -= objectBytes;
+
+    objectsLock.lock();
+    for (size_t i = 0; i < count; i++) {
+        objects->erase(batch[i]);
+        releaseObjectMemory(batch[i], sizes[i]);
+    }
+    objectsLock.unlock();
+
+    sweptObjects += (int64_t) count;
+    sweptBytes += objectBytes + arrayBytes;
+    sweepNanoseconds += std::chrono::duration_cast<std::chrono::nanoseconds>(std::chrono::steady_clock::now() - start).count();
+}
+
 static void collectionThreadFunc(jcontext ctx) {
     static std::vector<jobject> collected;
+    static std::vector<jobject> finalizable;
 
     attachThread(ctx);
 
@@ -510,93 +985,378 @@ static void collectionThreadFunc(jcontext ctx) {
         FrameInfo frameInfo{ "GC:collect", 0 };
         FrameGuard frameRef{ ctx, &frameInfo, nullptr };
 
-        while (true) { // Todo
-            objectsLock.lock();
-            if (!collectedObjects.empty()) {
-                collected = collectedObjects;
-                collectedObjects.clear();
-                if (collected[0]->vtable < 10)
-                    abort();
+        while (true) {
+            {
+                std::unique_lock lock(objectsLock);
+                collectionCondition.wait_for(lock, std::chrono::milliseconds(10), []{
+                    return !collectedObjects.empty() or !finalizableObjects.empty() or exiting;
+                });
+                std::swap(collected, collectedObjects);
+                std::swap(finalizable, finalizableObjects);
             }
-            objectsLock.unlock();
 
-            if (!collected.empty()) {
-                for (jobject obj : collected) {
-                    // Clear weak references during finalization (JNI-compliant behavior)
-                    for (auto[it, end] = weakReferences.equal_range(obj); it != end; ++it)
-                        it->second->F_ptr = 0;
-                    
+            // Only objects with non-trivial finalizers pay for finalization, which runs without holding the objects lock
+            if (!finalizable.empty()) {
+                for (size_t i = 0; i < finalizable.size(); i += GC_SWEEP_BATCH_SIZE)
+                    clearBatchWeakReferences(finalizable.data() + i, std::min<size_t>(GC_SWEEP_BATCH_SIZE, finalizable.size() - i));
+
+                for (jobject obj : finalizable) {
+                    if (obj->vtable < 10)
+                        abort();
                     tryCatch(ctx, [&]{
                         ((finalizer_ptr)((void **)obj->vtable)[VTABLE_java_lang_Object_finalize])(ctx, obj);
                     }, &class_java_lang_Throwable, [](jobject ignored){});
                     obj->gcMark = GC_MARK_FINALIZED;
                 }
 
-                for (jobject obj : collected) {
-                    objectsLock.lock();
-                    objects->erase(obj);
-                    objectsLock.unlock();
+                collected.insert(collected.end(), finalizable.begin(), finalizable.end());
+                finalizable.clear();
+            }
+
+            // Free in batches to amortize locking without starving allocating threads
+            for (size_t i = 0; i < collected.size(); i += GC_SWEEP_BATCH_SIZE) {
+                sweepObjects(ctx, collected.data() + i, std::min<size_t>(GC_SWEEP_BATCH_SIZE, collected.size() - i));
+                SAFEPOINT();
+            }
+            collected.clear();
+
+            SAFEPOINT();
+        }
+    } catch (const ExitException &) { }
+
+    ctx->dead = true;
+    suspendContext(ctx);
+}
+
+// A fixed-size block of a mark stack. Full chunks are shared so idle mark workers can steal them.
+struct MarkChunk {
+    MarkChunk *next;
+    int count;
+    jobject objects[GC_MARK_CHUNK_SIZE];
+};
+
+// A root scanned at the start of marking: calls a mark function with an object, or with null to mark class static fields
+struct MarkRoot {
+    gc_mark_ptr function;
+    jobject object;
+};
+
+// A mark worker's stack of marked objects with unscanned children. Only the owner uses the current chunk, full chunks are shared.
+struct MarkWorker {
+    MarkChunk *current;
+    std::mutex lock;
+    std::atomic<MarkChunk *> shared; // Stack of shared chunks (Modified with lock)
+};
+
+static std::vector<MarkWorker *> markWorkers;
+static std::atomic_int idleMarkWorkers;
+static std::mutex markPoolMutex;
+static std::condition_variable markPoolCondition;
+static int markEpoch;
+static int finishedMarkWorkers;
+static jint currentMark;
+static const std::vector<MarkRoot> *currentMarkRoots;
+static std::mutex markChunkMutex;
+static MarkChunk *freeMarkChunks; // Chunks are recycled, so mark stack memory only grows to the deepest mark so far (Requires markChunkMutex)
+static thread_local MarkWorker *currentMarkWorker;
+
+// Min private stack size to split when other mark workers are idle, since only whole chunks can be stolen
+static constexpr int MARK_SPLIT_THRESHOLD = 32;
+
+static MarkChunk *allocateMarkChunk() {
+    std::lock_guard guard(markChunkMutex);
+    auto chunk = freeMarkChunks;
+    if (chunk)
+        freeMarkChunks = chunk->next;
+    else
+        chunk = new MarkChunk;
+    chunk->next = nullptr;
+    chunk->count = 0;
+    return chunk;
+}
 
-                    heapUsage -= ((jclass) obj->clazz)->size + (int64_t) sizeof(ObjectMonitor);
+static void freeMarkChunk(MarkChunk *chunk) {
+    std::lock_guard guard(markChunkMutex);
+    chunk->next = freeMarkChunks;
+    freeMarkChunks = chunk;
+}
 
-                    delete (ObjectMonitor *) obj->monitor;
+static void shareMarkChunk(MarkWorker *worker, MarkChunk *chunk) {
+    std::lock_guard guard(worker->lock);
+    chunk->next = worker->shared;
+    worker->shared = chunk;
+}
 
-                    memset(obj, 0, sizeof(java_lang_Object)); // Erase collected objects to make memory bugs easier to catch
-                    obj->gcMark = GC_MARK_DESTROYED;
-                    obj->clazz = 1;
-                    obj->vtable = 2;
-                    obj->monitor = 3;
+static MarkChunk *takeMarkChunk(MarkWorker *worker) {
+    if (!worker->shared)
+        return nullptr;
+    std::lock_guard guard(worker->lock);
+    auto chunk = worker->shared.load();
+    if (chunk)
+        worker->shared = chunk->next;
+    return chunk;
+}
+
+/// Replaces an exhausted current chunk with one of the worker's shared chunks, or one stolen from another worker
+static bool refillMarkChunk(MarkWorker *self) {
+    auto chunk = takeMarkChunk(self);
+    for (int i = 0; !chunk && i < (int) markWorkers.size(); i++)
+        if (markWorkers[i] != self)
+            chunk = takeMarkChunk(markWorkers[i]);
+    if (!chunk)
+        return false;
+    freeMarkChunk(self->current);
+    self->current = chunk;
+    return true;
+}
 
-                    delete[] (char *) obj;
-                }
+/// Shares the bottom half of the current chunk, since the oldest entries are the most likely to have large subgraphs
+static void splitMarkChunk(MarkWorker *self) {
+    auto current = self->current;
+    auto half = allocateMarkChunk();
+    half->count = current->count / 2;
+    memcpy(half->objects, current->objects, half->count * sizeof(jobject));
+    memmove(current->objects, current->objects + half->count, (current->count - half->count) * sizeof(jobject));
+    current->count -= half->count;
+    shareMarkChunk(self, half);
+}
+
+static bool hasSharedMarkChunks() {
+    for (auto worker : markWorkers)
+        if (worker->shared)
+            return true;
+    return false;
+}
+
+/// Scans roots, then processes the mark stacks until every worker is out of work. Does not throw exceptions.
+static void runMarkWorker(int index) {
+    auto self = markWorkers[index];
+    currentMarkWorker = self;
+
+    for (int i = index; i < (int) currentMarkRoots->size(); i += (int) markWorkers.size()) {
+        auto &root = (*currentMarkRoots)[i];
+        root.function(root.object, currentMark);
+    }
 
-                collected.clear();
+    while (true) {
+        if (self->current->count > 0 || refillMarkChunk(self)) {
+            auto chunk = self->current;
+            if (chunk->count >= MARK_SPLIT_THRESHOLD && !self->shared && idleMarkWorkers.load(std::memory_order_relaxed) > 0)
+                splitMarkChunk(self);
+            jobject object = chunk->objects[--chunk->count];
+            ((gc_mark_ptr) ((jclass) object->clazz)->markFunction)(object, currentMark);
+            continue;
+        }
+        // Work is only produced by busy workers, so once every worker is idle the mark phase is complete
+        idleMarkWorkers++;
+        while (true) {
+            if (idleMarkWorkers == (int) markWorkers.size()) {
+                currentMarkWorker = nullptr;
+                return;
+            }
+            if (hasSharedMarkChunks()) {
+                idleMarkWorkers--;
+                break;
             }
+            std::this_thread::yield();
+        }
+    }
+}
 
-            std::this_thread::sleep_for(std::chrono::milliseconds(1));
+static void markWorkerThreadFunc(int index) {
+    int epoch = 0;
+    while (true) {
+        {
+            std::unique_lock lock(markPoolMutex);
+            markPoolCondition.wait(lock, [&]{ return markEpoch != epoch; });
+            epoch = markEpoch;
+        }
+        runMarkWorker(index);
+        {
+            std::lock_guard lock(markPoolMutex);
+            finishedMarkWorkers++;
+        }
+        markPoolCondition.notify_all();
+    }
+}
 
-            SAFEPOINT();
+/// Gets the number of marking threads, including the collecting thread. Can be overridden with the CLEARWING_GC_THREADS env var.
+static int getMarkThreadCount() {
+    int count = GC_MARK_THREADS;
+    if (auto env = getenv("CLEARWING_GC_THREADS"))
+        count = atoi(env);
+    if (count <= 0)
+        count = (int) std::thread::hardware_concurrency();
+    return std::max(count, 1);
+}
+
+/// Marks everything reachable from the given roots using the mark worker pool. Does not throw exceptions.
+static void markParallel(const std::vector<MarkRoot> &roots, jint mark) {
+    if (markWorkers.empty()) {
+        int count = getMarkThreadCount();
+        for (int i = 0; i < count; i++) {
+            markWorkers.emplace_back(new MarkWorker);
+            markWorkers.back()->current = allocateMarkChunk();
         }
-    } catch (const ExitException &) { }
+        for (int i = 1; i < count; i++)
+            std::thread(markWorkerThreadFunc, i).detach();
+    }
 
-    ctx->dead = true;
-    ctx->suspended = true;
+    currentMark = mark;
+    currentMarkRoots = &roots;
+    idleMarkWorkers = 0;
+
+    if (markWorkers.size() > 1) {
+        {
+            std::lock_guard lock(markPoolMutex);
+            finishedMarkWorkers = 0;
+            markEpoch++;
+        }
+        markPoolCondition.notify_all();
+    }
+
+    runMarkWorker(0);
+
+    if (markWorkers.size() > 1) {
+        std::unique_lock lock(markPoolMutex);
+        markPoolCondition.wait(lock, [&]{ return finishedMarkWorkers == (int) markWorkers.size() - 1; });
+    }
 }
 
-/// Runs the garbage collector
-void runGC(jcontext ctx) {
+/// Marks a root object that may already be marked, such as one referenced from a thread stack. Does not throw exceptions.
+static void markRootObject(jobject object, jint mark) {
+    markObject(object, mark);
+}
+
+/// Queues an unreachable object for the collection thread, only routing objects with non-trivial finalizers through finalization. Requires objectsLock.
+static void queueCollectedObject(jobject object) {
+    if (((jclass) object->clazz)->access & CLASS_FINALIZABLE)
+        finalizableObjects.emplace_back(object);
+    else
+        collectedObjects.emplace_back(object);
+}
+
+/// Gets the heap bytes used by an object, including array data. Does not throw exceptions.
+static int64_t getObjectBytes(jobject object) {
+    auto clazz = (jclass) object->clazz;
+    int64_t bytes = clazz->size;
+    if (clazz->arrayDimensions > 0) {
+        auto component = (jclass) clazz->componentClass;
+        bytes += (component->primitive ? component->size : (int64_t) sizeof(jobject)) * ((jarray) object)->length;
+    }
+    return bytes;
+}
+
+/// Counts a live object towards its class in a histogram. Does not throw exceptions.
+static void countLiveObject(ankerl::unordered_dense::map<jclass, ClassUsage> &usage, jobject object) {
+    auto clazz = (jclass) object->clazz;
+    auto &entry = usage[clazz];
+    entry.clazz = clazz;
+    entry.objects++;
+    entry.bytes += getObjectBytes(object);
+}
+
+/// Replaces the live class histogram, sorted by bytes. Does not throw exceptions.
+static void publishLiveHistogram(const ankerl::unordered_dense::map<jclass, ClassUsage> &usage) {
+    std::vector<ClassUsage> histogram;
+    histogram.reserve(usage.size());
+    for (auto &pair : usage)
+        histogram.emplace_back(pair.second);
+    std::sort(histogram.begin(), histogram.end(), [](const ClassUsage &a, const ClassUsage &b) { return a.bytes > b.bytes; });
+    std::lock_guard lock(liveHistogramMutex);
+    liveHistogram.swap(histogram);
+}
+
+/// Records a completed collection pause in the collection stats. Does not throw exceptions.
+static void recordCollectionPause(int64_t nanos, bool major) {
+    collectionCount++;
+    if (major)
+        majorCollectionCount++;
+    pauseNanoseconds += nanos;
+    for (int64_t max = maxPauseNanoseconds; nanos > max && !maxPauseNanoseconds.compare_exchange_weak(max, nanos);) ;
+    int bucket = std::min((int) std::bit_width((uint64_t) (nanos / 1000)), GC_PAUSE_HISTOGRAM_BUCKETS - 1);
+    pauseHistogram[bucket]++;
+}
+
+/// Raises the heap high-water mark to the current heap usage, if higher. Does not throw exceptions.
+static void updateHeapHighWaterMark() {
+    int64_t usage = heapUsage;
+    for (int64_t max = heapHighWaterMark; usage > max && !heapHighWaterMark.compare_exchange_weak(max, usage);) ;
+}
+
+struct CollectionRecord {
+    bool major;
+    int64_t pauseNanoseconds;
+    int64_t safepointNanoseconds;
+    int64_t rootsNanoseconds;
+    int64_t markNanoseconds;
+    int64_t sweepNanoseconds;
+    int64_t collectedObjects;
+    int64_t trackedObjects;
+};
+
+/// Writes a collection to the collection log as a single line of JSON. Does not throw exceptions.
+static void logCollection(const CollectionRecord &record) {
+    auto sweep = getSweepStatistics();
+    fprintf(collectionLog, "{\"collection\":%lld,\"major\":%s,\"pauseNs\":%lld,\"safepointNs\":%lld,\"rootsNs\":%lld,\"markNs\":%lld,\"sweepNs\":%lld,"
+            "\"collectedObjects\":%lld,\"trackedObjects\":%lld,\"heapBytes\":%lld,\"heapHighWaterMark\":%lld,\"retainedNurseryBytes\":%lld,\"sweptObjects\":%lld,\"sweptBytes\":%lld",
+            (long long) collectionCount, record.major ? "true" : "false", (long long) record.pauseNanoseconds, (long long) record.safepointNanoseconds,
+            (long long) record.rootsNanoseconds, (long long) record.markNanoseconds, (long long) record.sweepNanoseconds, (long long) record.collectedObjects,
+            (long long) record.trackedObjects, (long long) heapUsage, (long long) heapHighWaterMark, (long long) retainedNurseryBytes, (long long) sweep.objects, (long long) sweep.bytes);
+    if (record.major) {
+        fprintf(collectionLog, ",\"liveClasses\":[");
+        std::lock_guard lock(liveHistogramMutex);
+        for (int i = 0; i < std::min((int) liveHistogram.size(), 10); i++)
+            fprintf(collectionLog, "%s{\"class\":\"%s\",\"objects\":%lld,\"bytes\":%lld}", i ? "," : "", (const char *) liveHistogram[i].clazz->nativeName,
+                    (long long) liveHistogram[i].objects, (long long) liveHistogram[i].bytes);
+        fprintf(collectionLog, "]");
+    }
+    fprintf(collectionLog, "}\n");
+    fflush(collectionLog);
+}
+
+/// Runs a collection. Every collection marks the full heap, since there are no write barriers to track old-to-young references,
+/// but a minor collection only sweeps the nursery, promoting survivors to the old generation.
+static void collect(jcontext ctx, bool major) {
     static std::atomic_bool running;
-    static std::mutex suspendMutex;
 
     if (running.exchange(true))
         return;
 
-    FrameInfo frameInfo { "runGC", 0 };
+    FrameInfo frameInfo { major ? "runGC" : "runMinorGC", 0 };
     FrameGuard frameRef{ ctx, &frameInfo, nullptr };
 
     auto blockTime = std::chrono::system_clock::now();
 
     // Suspend all threads before collecting (Suspended threads must have all owned objects reachable)
     {
-        std::lock_guard lock(suspendMutex);
+        std::unique_lock lock(safepointMutex);
         suspendVM = true;
-    }
-    while (true) {
-        if (exiting) throw ExitException();
-        bool blocked = false;
-        acquireCriticalLock();
-        for (auto threadContext : threadContexts) {
-            if (threadContext == ctx)
-                continue;
-            if (!threadContext->suspended && threadContext->thread->F_alive)
-                blocked = true;
+        while (true) {
+            // The safepoint lock isn't held while checking to avoid ordering it with the critical lock
+            int64_t arrivals = safepointArrivals;
+            lock.unlock();
+            if (exiting) throw ExitException();
+            bool blocked = false;
+            acquireCriticalLock();
+            for (auto threadContext : threadContexts)
+                if (threadContext != ctx && !threadContext->suspended && threadContext->thread->F_alive)
+                    blocked = true;
+            releaseCriticalLock();
+            if (!blocked)
+                break;
+            lock.lock();
+            // Threads notify on arrival, but the timeout bounds the wait for threads marked suspended without notifying
+            safepointArrivalCondition.wait_for(lock, std::chrono::milliseconds(1), [&]{ return safepointArrivals != arrivals; });
         }
-        releaseCriticalLock();
-        if (!blocked)
-            break;
     }
 
     auto copyTime = std::chrono::system_clock::now();
+    auto timeToSafepoint = std::chrono::duration_cast<std::chrono::nanoseconds>(copyTime - blockTime).count();
+    safepointCount++;
+    safepointNanoseconds += timeToSafepoint;
+    safepointLastNanoseconds = timeToSafepoint;
+    for (int64_t max = safepointMaxNanoseconds; timeToSafepoint > max && !safepointMaxNanoseconds.compare_exchange_weak(max, timeToSafepoint);) ;
 
     acquireCriticalLock();
     objectsLock.lock();
@@ -605,168 +1365,191 @@ void runGC(jcontext ctx) {
     if (++mark > GC_MARK_END)
         mark = GC_MARK_START + 1;
 
-    deepMarkedObjects.clear();
-
-    auto nonCollectableTime = std::chrono::system_clock::now();
+    // Gather roots to be distributed across the mark workers
+    static std::vector<MarkRoot> roots;
+    roots.clear();
 
     // Explicitly mark children of non-collectable objects
     for (auto object : *rootObjects)
-        ((gc_mark_ptr) ((jclass) object->clazz)->markFunction)(object, mark, GC_DEPTH_ALWAYS);
-
-    auto markClassesTime = std::chrono::system_clock::now();
+        roots.push_back({ (gc_mark_ptr) ((jclass) object->clazz)->markFunction, object });
 
     // Mark class objects (Not in `objects`) // Todo: Not needed once all eternal
     for (auto &pair : *classes)
-        mark_java_lang_Class((jobject) pair.second, mark, GC_DEPTH_ALWAYS);
-
-    auto markStaticFieldsTime = std::chrono::system_clock::now();
+        roots.push_back({ mark_java_lang_Class, (jobject) pair.second });
 
     // Mark static fields
     for (auto &pair : *classes)
-        ((gc_mark_ptr) pair.second->markFunction)(nullptr, mark, GC_DEPTH_ALWAYS);
-
-    auto markStackTime = std::chrono::system_clock::now();
+        roots.push_back({ (gc_mark_ptr) pair.second->markFunction, nullptr });
 
     // Mark stack objects
+    auto addRoot = [&](jobject object) {
+        roots.push_back({ markRootObject, object });
+    };
     for (auto threadContext : threadContexts) {
         if (threadContext->jniException)
-            ((gc_mark_ptr) ((jclass) threadContext->jniException->parent.clazz)->markFunction)((jobject)threadContext->jniException, mark, 0);
+            addRoot((jobject) threadContext->jniException);
 
         if (auto exception = (jobject)threadContext->currentException)
-            ((gc_mark_ptr) ((jclass) exception->clazz)->markFunction)(exception, mark, 0);
+            addRoot(exception);
 
         for (auto global : threadContext->globalRefs)
-            ((gc_mark_ptr) ((jclass) global->clazz)->markFunction)(global, mark, 0);
+            addRoot(global);
 
         for (int i = 0; i < threadContext->stackDepth; i++) {
             const auto &frame = threadContext->frames[i];
 
             for (auto &localFrame : frame.localRefs)
                 for (auto local : localFrame)
-                    ((gc_mark_ptr) ((jclass) local->clazz)->markFunction)(local, mark, 0);
-
-            for (int j = 0; j < (int)frame.info->size; j++) {
-                const auto obj = frame.frame[j].o;
-                if (objects->contains(obj))
-                    ((gc_mark_ptr) ((jclass) obj->clazz)->markFunction)(obj, mark, 0);
+                    addRoot(local);
+
+            auto info = frame.info;
+            if (info->referenceMaps && frame.location >= -1 && frame.location < info->locationCount) {
+                // Only visit slots the transpiler knows can hold references at the current location
+                int words = (info->size + 31) / 32;
+                int row = (frame.location + 1) * words;
+                for (int w = 0; w < words; w++) {
+                    for (uint32_t bits = info->referenceMaps[row + w]; bits; bits &= bits - 1)
+                        if (auto obj = frame.frame[w * 32 + std::countr_zero(bits)].o)
+                            addRoot(obj);
+                    if (info->ambiguousMaps)
+                        for (uint32_t bits = info->ambiguousMaps[row + w]; bits; bits &= bits - 1)
+                            if (auto obj = frame.frame[w * 32 + std::countr_zero(bits)].o; isHeapObject(obj))
+                                addRoot(obj);
+                }
+            } else {
+                for (int j = 0; j < (int)info->size; j++) {
+                    const auto obj = frame.frame[j].o;
+                    if (isHeapObject(obj))
+                        addRoot(obj);
+                }
             }
         }
     }
 
-    auto markDeepTime = std::chrono::system_clock::now();
+    auto markTime = std::chrono::system_clock::now();
 
-    // Specially mark deep object chains to avoid stack overflows
-    while (!deepMarkedObjects.empty()) {
-        auto deep = deepMarkedObjects;
-        deepMarkedObjects.clear();
-        for (auto obj : deep)
-            ((gc_mark_ptr) ((jclass) obj->clazz)->markFunction)(obj, mark, 0);
-    }
+    // Mark in parallel using explicit mark stacks, so deep object graphs don't recurse on the native stack
+    markParallel(roots, mark);
 
     auto collectTime = std::chrono::system_clock::now();
 
-    // Collect unreachable objects
-    for (jobject obj : *objects) {
-        if (obj->gcMark < GC_MARK_START || obj->gcMark == mark)
-            continue;
-        if (obj->vtable < 10 || obj->gcMark <= GC_MARK_COLLECTED)
-            abort();
-        obj->gcMark = GC_MARK_COLLECTED;
-        collectedObjects.emplace_back(obj);
-
-        // Store weak references for later clearing during finalization
-        // Note: We don't clear weak references here as per JNI spec - they should be cleared during finalization
-    }
+    size_t queuedObjects = collectedObjects.size() + finalizableObjects.size();
 
-#if false // Todo: Use macro
-    std::map<jclass, int> usage;
-    std::map<jclass, int> counts;
-    std::multimap<int, jclass> usageMap;
-    for (jobject o : *objectsSet) {
-        auto cls = (jclass)o->clazz;
-        counts[cls]++;
-        usage[cls] += cls->size;
-        if (cls->arrayDimensions > 0) {
-            auto array = (jarray)o;
-            auto component = (jclass)cls->componentClass;
-            usage[cls] += cls->size + component->primitive ? component->size * array->length : (int)sizeof(jobject) * array->length;
-        } else if (isInstance(ctx, o, &class_java_nio_ByteBuffer)) {
-            auto buffer = (java_nio_ByteBuffer *) o;
-            if (buffer->F_isOwner && buffer->parent.F_address)
-                usage[cls] += buffer->parent.F_capacity;
+    // Collect unreachable young objects and promote survivors (Rooted young objects are already tracked as roots)
+    auto sweepYoung = [&](std::vector<jobject> &young) {
+        for (jobject obj : young) {
+            if (!isYoungObject(obj))
+                continue;
+            setYoung(findNurseryChunk(obj), obj, false);
+            if (obj->gcMark < GC_MARK_START)
+                continue;
+            if (obj->gcMark == mark) {
+                objects->emplace(obj);
+                allocationsSinceCollection++;
+                continue;
+            }
+            if (obj->vtable < 10)
+                abort();
+            obj->gcMark = GC_MARK_COLLECTED;
+            queueCollectedObject(obj);
         }
+        young.clear();
+    };
+    for (auto threadContext : threadContexts) {
+        flushAllocationCounters(threadContext);
+        sweepYoung(threadContext->youngObjects);
     }
-    printf("GC collected %i objects after %i allocations and %i bytes (%i bytes and %i objects total)\n", (int)collectedObjects.size(), (int)allocationsSinceCollection, (int)heapUsage - (int)lastCollectionHeapUsage, (int)heapUsage, (int)objectsSet->size());
-    for (auto &pair : usage)
-        usageMap.emplace(pair.second, pair.first);
-    int loggedUsages = 0;
-    for (auto &pair : usageMap | std::views::reverse) {
-        printf("%i objects (%i bytes) of %s\n", counts[pair.second], pair.first, (char *)pair.second->nativeName);
-        if (++loggedUsages >= 10)
-            break;
-    }
-    printf("\n");
-
-    usage.clear();
-    counts.clear();
-    usageMap.clear();
-    for (jobject o : collectedObjects) {
-        auto cls = (jclass)o->clazz;
-        counts[cls]++;
-        usage[cls] += cls->size;
-        if (cls->arrayDimensions > 0) {
-            auto array = (jarray)o;
-            auto component = (jclass)cls->componentClass;
-            usage[cls] += cls->size + component->primitive ? component->size * array->length : (int)sizeof(jobject) * array->length;
-        } else if (isInstance(ctx, o, &class_java_nio_ByteBuffer)) {
-            auto buffer = (java_nio_ByteBuffer *) o;
-            if (buffer->F_isOwner && buffer->parent.F_address)
-                usage[cls] += buffer->parent.F_capacity;
+    sweepYoung(youngObjects);
+    nurseryUsage = 0;
+    updateHeapHighWaterMark(); // Heap usage peaks right before a collection, once thread-local counters are merged
+
+    // Collect unreachable old objects, counting survivors by class if requested
+    static ankerl::unordered_dense::map<jclass, ClassUsage> liveClasses;
+    bool countLiveClasses = major && liveHistogramEnabled;
+    if (major) {
+        for (jobject obj : *objects) {
+            if (obj->gcMark < GC_MARK_START || obj->gcMark == mark) {
+                if (countLiveClasses)
+                    countLiveObject(liveClasses, obj);
+                continue;
+            }
+            if (obj->vtable < 10 || obj->gcMark <= GC_MARK_COLLECTED)
+                abort();
+            obj->gcMark = GC_MARK_COLLECTED;
+            queueCollectedObject(obj);
         }
     }
-    printf("Collection Stats:\n");
-    for (auto &pair : usage)
-        usageMap.emplace(pair.second, pair.first);
-    loggedUsages = 0;
-    for (auto &pair : usageMap | std::views::reverse) {
-        printf("%i objects (%i bytes) of %s\n", counts[pair.second], pair.first, (char *)pair.second->nativeName);
-        if (++loggedUsages >= 10)
-            break;
+
+    if (countLiveClasses) {
+        for (jobject obj : *rootObjects)
+            countLiveObject(liveClasses, obj);
+        publishLiveHistogram(liveClasses);
+        liveClasses.clear();
     }
-    printf("\n");
-#endif
 
-    allocationsSinceCollection = 0;
+    int64_t collected = (int64_t) (collectedObjects.size() + finalizableObjects.size() - queuedObjects);
+    int64_t trackedObjects = (int64_t) (objects->size() + rootObjects->size());
+
+    if (major)
+        allocationsSinceCollection = 0;
 
     objectsLock.unlock();
+    collectionCondition.notify_one();
     releaseCriticalLock();
     {
-        std::lock_guard lock(suspendMutex);
+        std::lock_guard lock(safepointMutex);
         suspendVM = false;
     }
+    safepointResumeCondition.notify_all();
 
-#if false // Todo: Use macro
     auto finishTime = std::chrono::system_clock::now();
+    auto nanoseconds = [](auto duration) { return (int64_t) std::chrono::duration_cast<std::chrono::nanoseconds>(duration).count(); };
+    recordCollectionPause(nanoseconds(finishTime - blockTime), major);
+    if (collectionLog)
+        logCollection({
+                .major = major,
+                .pauseNanoseconds = nanoseconds(finishTime - blockTime),
+                .safepointNanoseconds = timeToSafepoint,
+                .rootsNanoseconds = nanoseconds(markTime - copyTime),
+                .markNanoseconds = nanoseconds(collectTime - markTime),
+                .sweepNanoseconds = nanoseconds(finishTime - collectTime),
+                .collectedObjects = collected,
+                .trackedObjects = trackedObjects,
+        });
 
-    printf("\nGC Timings:\n");
-    printf("Block Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(copyTime - blockTime).count());
-    printf("Copy Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(nonCollectableTime - copyTime).count());
-    printf("Non-Collectable Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(markClassesTime - nonCollectableTime).count());
-    printf("Classes Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(markStaticFieldsTime - markClassesTime).count());
-    printf("Fields Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(markStackTime - markStaticFieldsTime).count());
-    printf("Stack Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(markDeepTime - markStackTime).count());
-    printf("Deep Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(collectTime - markDeepTime).count());
-    printf("Collect Time: %i\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(finishTime - collectTime).count());
-    printf("Total Time: %i\n\n", (int)std::chrono::duration_cast<std::chrono::milliseconds>(finishTime - blockTime).count());
-#endif
-
-    lastCollectionHeapUsage = heapUsage;
+    if (major)
+        lastCollectionHeapUsage = heapUsage;
 
     running = false;
 }
 
-void markDeepObject(jobject obj) {
-    deepMarkedObjects.emplace_back(obj);
+/// Runs a major collection of the whole heap. Throws exceptions.
+void runGC(jcontext ctx) {
+    collect(ctx, true);
+}
+
+/// Runs a minor collection of the nursery. Throws exceptions.
+void runMinorGC(jcontext ctx) {
+    collect(ctx, false);
+}
+
+/// Marks a reachable object and pushes it onto the current mark worker's stack to have its children scanned. Does not throw exceptions.
+void markObject(jobject object, jint mark) {
+    // Workers race to claim objects, so only the one that swaps in the mark scans it
+    std::atomic_ref gcMark(object->gcMark);
+    jint current = gcMark.load(std::memory_order_relaxed);
+    do {
+        if (current < GC_MARK_START || current == mark)
+            return;
+    } while (!gcMark.compare_exchange_weak(current, mark, std::memory_order_relaxed));
+    assertm(currentMarkWorker, "Marking outside of a mark worker");
+    auto worker = currentMarkWorker;
+    auto chunk = worker->current;
+    if (chunk->count == GC_MARK_CHUNK_SIZE) CPP_UNLIKELY {
+        shareMarkChunk(worker, chunk);
+        chunk = worker->current = allocateMarkChunk();
+    }
+    chunk->objects[chunk->count++] = object;
 }
 
 int64_t getHeapUsage() {
@@ -778,6 +1561,11 @@ void adjustHeapUsage(int64_t amount) {
     heapUsage += amount;
 }
 
+/// Gets the cumulative collection thread sweep stats, for computing sweep throughput. Does not throw exceptions.
+SweepStatistics getSweepStatistics() {
+    return { sweptObjects, sweptBytes, sweepNanoseconds };
+}
+
 void initializeJniClasses(jcontext ctx) {
     for (auto &pair : *classes) {
         jclass cls = pair.second;
@@ -796,16 +1584,59 @@ void releaseCriticalLock() {
     criticalLock.unlock();
 }
 
-/// Suspends a thread while the VM is suspended. Does not throw exceptions.
+/// Parks the current thread while the VM is suspended. Throws exceptions.
 void safepointSuspend(jcontext ctx) {
+    std::unique_lock lock(safepointMutex);
     ctx->suspended = true;
-    while (suspendVM) {
-        if (exiting)
-            throw ExitException();
-    }
+    safepointArrivals++;
+    safepointArrivalCondition.notify_all();
+    safepointResumeCondition.wait(lock, []{ return !suspendVM || exiting; });
+    if (suspendVM) // Only still set when exiting
+        throw ExitException();
     ctx->suspended = false;
 }
 
+/// Marks a context as suspended while it blocks or leaves Java code, notifying a collector waiting on it. Does not throw exceptions.
+void suspendContext(jcontext ctx) {
+    std::lock_guard lock(safepointMutex);
+    ctx->suspended = true;
+    safepointArrivals++;
+    safepointArrivalCondition.notify_all();
+}
+
+/// Gets the cumulative collection count, pause, and heap high-water mark stats. Does not throw exceptions.
+CollectionStatistics getCollectionStatistics() {
+    updateHeapHighWaterMark();
+    return { collectionCount, majorCollectionCount, pauseNanoseconds, maxPauseNanoseconds, heapHighWaterMark };
+}
+
+/// Copies the collection pause histogram into `buckets`, which must hold GC_PAUSE_HISTOGRAM_BUCKETS entries. Does not throw exceptions.
+void getPauseHistogram(int64_t *buckets) {
+    for (int i = 0; i < GC_PAUSE_HISTOGRAM_BUCKETS; i++)
+        buckets[i] = pauseHistogram[i];
+}
+
+/// Enables or disables counting live objects by class during major collections. Does not throw exceptions.
+void setLiveHistogramEnabled(bool enabled) {
+    liveHistogramEnabled = enabled || collectionLog;
+}
+
+/// Copies up to `capacity` entries of the live class histogram from the last major collection, returning the full histogram size. Does not throw exceptions.
+int copyLiveHistogram(jclass *classes, int64_t *counts, int64_t *bytes, int capacity) {
+    std::lock_guard lock(liveHistogramMutex);
+    for (int i = 0; i < std::min(capacity, (int) liveHistogram.size()); i++) {
+        classes[i] = liveHistogram[i].clazz;
+        counts[i] = liveHistogram[i].objects;
+        bytes[i] = liveHistogram[i].bytes;
+    }
+    return (int) liveHistogram.size();
+}
+
+/// Gets the cumulative time-to-safepoint stats for collections. Does not throw exceptions.
+SafepointStatistics getSafepointStatistics() {
+    return { safepointCount, safepointNanoseconds, safepointMaxNanoseconds, safepointLastNanoseconds };
+}
+
 jobject clearCurrentException(jcontext ctx) {
     auto exception = ctx->currentException;
     ctx->currentException = nullptr;
@@ -871,25 +1702,92 @@ void throwRuntimeException(jcontext ctx, const char *message) {
     constructAndThrow<&class_java_lang_RuntimeException, init_java_lang_RuntimeException>(ctx);
 }
 
-/// Lock on a monitor. Throws exceptions.
+static inline bool isThinLocked(jref word) {
+    return word & THIN_LOCK_BIT;
+}
+
+static inline int64_t getThinLockOwner(jref word) {
+    return (int64_t) ((uint64_t) word >> THIN_LOCK_OWNER_SHIFT);
+}
+
+static inline int getThinLockCount(jref word) {
+    return (int) ((word >> THIN_LOCK_COUNT_SHIFT) & THIN_LOCK_COUNT_MAX);
+}
+
+static inline jref makeThinLock(jcontext ctx, int count) {
+    return (jref) ((uint64_t) ctx->lockId << THIN_LOCK_OWNER_SHIFT) | ((jref) count << THIN_LOCK_COUNT_SHIFT) | THIN_LOCK_BIT;
+}
+
+/// Inflates a thin locked or unlocked monitor word, transferring thin lock ownership to the new monitor.
+/// Returns null if the word changed before it could be replaced. Does not throw exceptions.
+static jmonitor inflateMonitor(jobject object, jref &expected) {
+    auto monitor = new ObjectMonitor;
+    if (isThinLocked(expected)) {
+        monitor->owner = getThinLockOwner(expected);
+        monitor->depth = getThinLockCount(expected);
+    }
+    if (!std::atomic_ref(object->monitor).compare_exchange_strong(expected, (jref) monitor, std::memory_order_acq_rel)) {
+        delete monitor;
+        return nullptr;
+    }
+    heapUsage += (int64_t) sizeof(ObjectMonitor);
+    return monitor;
+}
+
+/// Gets the inflated monitor for an object owned by the current thread, inflating it if thin locked. Does not throw exceptions.
+static jmonitor inflateOwnedMonitor(jobject object) {
+    jref word = std::atomic_ref(object->monitor).load(std::memory_order_acquire);
+    while (isThinLocked(word))
+        if (auto monitor = inflateMonitor(object, word))
+            return monitor;
+    return (jmonitor) word;
+}
+
+/// Lock on a monitor. Uncontended locking is a single CAS on the object header, inflating to a full monitor on contention. Throws exceptions.
 void monitorEnter(jcontext ctx, jobject object) {
     NULL_CHECK(object);
-    auto monitor = (jmonitor) object->monitor;
+    std::atomic_ref word(object->monitor);
+
+    jref expected = 0;
+    if (word.compare_exchange_strong(expected, makeThinLock(ctx, 1), std::memory_order_acquire)) CPP_LIKELY
+        return;
+
+    jmonitor monitor{};
+    while (!monitor) {
+        if (!expected) {
+            if (word.compare_exchange_weak(expected, makeThinLock(ctx, 1), std::memory_order_acquire))
+                return;
+        } else if (!isThinLocked(expected))
+            monitor = (jmonitor) expected;
+        else if (getThinLockOwner(expected) == ctx->lockId && getThinLockCount(expected) < THIN_LOCK_COUNT_MAX) {
+            // The CAS is still needed here since a contending thread may be inflating the monitor
+            if (word.compare_exchange_weak(expected, expected + (1 << THIN_LOCK_COUNT_SHIFT), std::memory_order_acquire))
+                return;
+        } else
+            monitor = inflateMonitor(object, expected);
+    }
 
-    // Race condition here is fine, fall back to slower/blocking acquire
-    if (monitor->lock.try_lock()) {
-        monitor->owner = ctx;
-        ++monitor->depth;
+    std::unique_lock lock(monitor->lock);
+    if (monitor->owner == ctx->lockId) {
+        monitor->depth++;
+        return;
+    }
+    if (!monitor->owner) {
+        monitor->owner = ctx->lockId;
+        monitor->depth = 1;
         return;
     }
 
     // Suspend thread to avoid deadlock blocking GC and deadlocking system
     ctx->blockedBy = object;
-    ctx->suspended = true;
+    suspendContext(ctx);
 
-    monitor->lock.lock();
-    monitor->owner = ctx;
-    ++monitor->depth;
+    monitor->entryCondition.wait(lock, [&]{ return !monitor->owner || exiting; });
+    if (monitor->owner) // Only still owned when exiting
+        throw ExitException();
+    monitor->owner = ctx->lockId;
+    monitor->depth = 1;
+    lock.unlock();
 
     ctx->blockedBy = nullptr;
     ctx->suspended = false;
@@ -900,20 +1798,88 @@ void monitorEnter(jcontext ctx, jobject object) {
 /// Unlock on a monitor. Throws exceptions.
 void monitorExit(jcontext ctx, jobject object) {
     NULL_CHECK(object);
-    auto monitor = (jmonitor) object->monitor;
-    monitorOwnerCheck(ctx, object);
-    if (--monitor->depth == 0)
-        monitor->owner = nullptr;
-    monitor->lock.unlock();
+    std::atomic_ref word(object->monitor);
+
+    jref expected = word.load(std::memory_order_relaxed);
+    while (isThinLocked(expected) && getThinLockOwner(expected) == ctx->lockId) {
+        jref unlocked = getThinLockCount(expected) > 1 ? expected - (1 << THIN_LOCK_COUNT_SHIFT) : 0;
+        if (word.compare_exchange_weak(expected, unlocked, std::memory_order_release)) CPP_LIKELY
+            return;
+    }
+
+    auto monitor = isThinLocked(expected) ? nullptr : (jmonitor) expected;
+    if (monitor) {
+        std::lock_guard lock(monitor->lock);
+        if (monitor->owner == ctx->lockId) CPP_LIKELY {
+            if (--monitor->depth == 0) {
+                monitor->owner = 0;
+                monitor->entryCondition.notify_one();
+            }
+            return;
+        }
+    }
+    constructAndThrow<&class_java_lang_IllegalMonitorStateException, init_java_lang_IllegalMonitorStateException>(ctx);
 }
 
 /// Checks if the current thread owns a given monitor. Throws exceptions.
 void monitorOwnerCheck(jcontext ctx, jobject object) {
-    auto monitor = (jmonitor) object->monitor;
-    if (!monitor->owner or monitor->owner != ctx) CPP_UNLIKELY
+    jref word = std::atomic_ref(object->monitor).load(std::memory_order_acquire);
+    bool owned = isThinLocked(word) ? getThinLockOwner(word) == ctx->lockId : word && ((jmonitor) word)->owner == ctx->lockId;
+    if (!owned) CPP_UNLIKELY
         constructAndThrow<&class_java_lang_IllegalMonitorStateException, init_java_lang_IllegalMonitorStateException>(ctx);
 }
 
+/// Releases a monitor owned by the current thread and waits for a notification, interrupt, or timeout (Unless negative) before reacquiring it. Throws exceptions.
+void monitorWait(jcontext ctx, jobject object, int64_t nanos) {
+    monitorOwnerCheck(ctx, object);
+    interruptedCheck(ctx);
+    auto monitor = inflateOwnedMonitor(object);
+    ctx->lock.lock();
+    ctx->blockedBy = object;
+    ctx->lock.unlock();
+
+    suspendContext(ctx);
+    {
+        // Releasing and waiting under the monitor lock ensures notifications can't be missed
+        std::unique_lock lock(monitor->lock);
+        int depth = monitor->depth;
+        monitor->owner = 0;
+        monitor->depth = 0;
+        monitor->entryCondition.notify_one();
+        if ((!ctx->thread || !ctx->thread->F_interrupted) && !exiting) {
+            if (nanos >= 0)
+                monitor->condition.wait_for(lock, std::chrono::nanoseconds(nanos));
+            else
+                monitor->condition.wait(lock);
+        }
+        monitor->entryCondition.wait(lock, [&]{ return !monitor->owner || exiting; });
+        if (monitor->owner) // Only still owned when exiting
+            throw ExitException();
+        monitor->owner = ctx->lockId;
+        monitor->depth = depth;
+    }
+    ctx->suspended = false;
+    SAFEPOINT();
+
+    ctx->lock.lock();
+    ctx->blockedBy = nullptr;
+    ctx->lock.unlock();
+    interruptedCheck(ctx);
+}
+
+/// Wakes threads waiting on a monitor owned by the current thread. Throws exceptions.
+void monitorNotify(jcontext ctx, jobject object, bool all) {
+    monitorOwnerCheck(ctx, object);
+    auto monitor = getInflatedMonitor(object);
+    if (!monitor) // Waiting always inflates the monitor, so thin locks have no waiters
+        return;
+    std::lock_guard lock(monitor->lock);
+    if (all)
+        monitor->condition.notify_all();
+    else
+        monitor->condition.notify_one();
+}
+
 /// Checks if the current thread is interrupted. Throws exceptions.
 void interruptedCheck(jcontext ctx) {
     if (ctx->thread->F_interrupted) CPP_UNLIKELY {
@@ -37,10 +37,26 @@ extern "C" {
 #define GC_MARK_COLLECTED (-3)
 #define GC_MARK_FINALIZED (-4)
 #define GC_MARK_DESTROYED (-5)
-#define GC_DEPTH_ALWAYS (-1)
+#define GC_MARK_STACK (-6) // Non-escaping objects stored in a method frame, which are never tracked by the GC
 
-#ifndef MAX_GC_MARK_DEPTH
-#define MAX_GC_MARK_DEPTH 1000
+// Number of objects per mark stack chunk (Chunks are the unit of work shared between mark workers)
+#ifndef GC_MARK_CHUNK_SIZE
+#define GC_MARK_CHUNK_SIZE 1024
+#endif
+
+// Number of threads used for marking, including the collecting thread (0 uses the hardware thread count)
+#ifndef GC_MARK_THREADS
+#define GC_MARK_THREADS 0
+#endif
+
+// Number of receiver classes cached per interface call site
+#ifndef INTERFACE_CALL_SITE_SIZE
+#define INTERFACE_CALL_SITE_SIZE 4
+#endif
+
+// Number of receiver classes recorded per call site in instrumented builds
+#ifndef PROFILE_RECEIVERS
+#define PROFILE_RECEIVERS 4
 #endif
 
 // Max number of object allocations between collections
@@ -63,6 +79,41 @@ extern "C" {
 #define GC_HEAP_OOM_THRESHOLD 3000000000
 #endif
 
+// Max memory allocated in the nursery (young generation) between minor collections
+#ifndef GC_NURSERY_SIZE
+#define GC_NURSERY_SIZE 33554432
+#endif
+
+// Size of each nursery bump allocation chunk (Must be a power of two)
+#ifndef GC_NURSERY_CHUNK_SIZE
+#define GC_NURSERY_CHUNK_SIZE 1048576
+#endif
+
+// Max memory held by nursery chunks that promoted survivors keep from being recycled, beyond which new objects skip the nursery
+#ifndef GC_NURSERY_MAX_RETAINED
+#define GC_NURSERY_MAX_RETAINED 67108864
+#endif
+
+// Max object size to allocate in the nursery, larger objects are allocated directly in the old generation
+#ifndef GC_NURSERY_MAX_OBJECT_SIZE
+#define GC_NURSERY_MAX_OBJECT_SIZE 1024
+#endif
+
+// Max number of collected objects to free per objects lock acquisition
+#ifndef GC_SWEEP_BATCH_SIZE
+#define GC_SWEEP_BATCH_SIZE 1024
+#endif
+
+// Number of power of two microsecond buckets in the collection pause histogram
+#define GC_PAUSE_HISTOGRAM_BUCKETS 32
+
+// Synthetic class access flag set by the transpiler for classes with a non-trivial finalizer
+#define CLASS_FINALIZABLE 0x10000
+
+// String coders, for compact strings stored as Latin-1 bytes and others stored as UTF-16 chars
+#define STRING_LATIN1 0
+#define STRING_UTF16 1
+
 #ifndef MAX_STACK_DEPTH
 #define MAX_STACK_DEPTH 1000
 #endif
@@ -132,7 +183,7 @@ typedef enum _jobjectType {
 typedef void (*static_init_ptr)(jcontext ctx);
 typedef void (*init_annotations_ptr)(jcontext ctx);
 typedef void (*finalizer_ptr)(jcontext ctx, jobject self);
-typedef void (*gc_mark_ptr)(jobject object, jint mark, int depth);
+typedef void (*gc_mark_ptr)(jobject object, jint mark);
 typedef void (*main_ptr)(jcontext ctx, jobject args);
 
 typedef struct VtableEntry {
@@ -140,6 +191,14 @@ typedef struct VtableEntry {
     const char *desc;
 } VtableEntry;
 
+// An implemented interface in a class itable, which ends with an entry with a null interface
+typedef struct ItableEntry {
+    jclass interface;
+    jclass owner; // The implementing class
+    const int *offsets; // Vtable offset for each interface method index, or -1 for static methods
+    int offsetCount;
+} ItableEntry;
+
 typedef struct FieldMetadata {
     const char *name;
     jclass type;
@@ -173,6 +232,8 @@ typedef struct FrameInfo {
     const FrameLocation *locations;
     int exceptionScopeCount;
     const ExceptionScope *exceptionScopes;
+    const uint32_t *referenceMaps; // Per-location bitmaps of slots always holding references or null (Row 0 is location -1), or null to scan conservatively
+    const uint32_t *ambiguousMaps; // Per-location bitmaps of slots that may hold references, which must be checked against the heap
 } FrameInfo;
 
 typedef struct java_lang_Object {
@@ -217,7 +278,7 @@ typedef struct Class {
     jbool anonymous;
     jbool synthetic;
     jlong instanceOfCache;
-    jlong interfaceCache;
+    jlong itable;
     // Lazy-init fields start here
     jbool initialized;
     jref name;
@@ -234,6 +295,33 @@ typedef struct {
     int length;
 } StringLiteral;
 
+typedef struct StringChars {
+    const void *chars; // Latin-1 bytes or UTF-16 chars
+    int length;
+    bool latin1;
+} StringChars;
+
+typedef struct SweepStatistics {
+    int64_t objects; // Total objects freed by the collection thread
+    int64_t bytes; // Total object bytes freed, including array data
+    int64_t nanoseconds; // Total time spent freeing, excluding finalizers
+} SweepStatistics;
+
+typedef struct SafepointStatistics {
+    int64_t count; // Number of safepoints reached
+    int64_t nanoseconds; // Total time spent waiting for threads to reach safepoints
+    int64_t maxNanoseconds; // Longest time to safepoint
+    int64_t lastNanoseconds; // Most recent time to safepoint
+} SafepointStatistics;
+
+typedef struct CollectionStatistics {
+    int64_t count; // Number of completed collections, minor and major
+    int64_t majorCount; // Number of completed major collections
+    int64_t pauseNanoseconds; // Total time threads were stopped for collections, including time to safepoint
+    int64_t maxPauseNanoseconds; // Longest collection pause
+    int64_t heapHighWaterMark; // Highest observed heap usage
+} CollectionStatistics;
+
 typedef union {
     volatile jobject o;
     jint i;
@@ -271,6 +359,7 @@ bool isInstance(jcontext ctx, jobject object, jclass type);
 jobject gcAlloc(jcontext ctx, jclass clazz);
 jobject gcAllocProtected(jcontext ctx, jclass clazz);
 jobject gcAllocEternal(jcontext ctx, jclass clazz);
+jobject initStackObject(jclass clazz, void *storage);
 jobject makeEternal(jobject object);
 jobject makeEphemeral(jobject object);
 jobject protectObject(jobject object);
@@ -278,7 +367,8 @@ jobject unprotectObject(jobject object);
 void registerWeak(jweak reference);
 void deregisterWeak(jweak reference);
 void runGC(jcontext ctx);
-void markDeepObject(jobject obj);
+void runMinorGC(jcontext ctx);
+void markObject(jobject object, jint mark);
 jcontext createContext();
 void destroyContext(jcontext ctx);
 
@@ -290,22 +380,52 @@ jstring stringFromNative(jcontext ctx, const char *string);
 jstring stringFromNativeLength(jcontext ctx, const char *string, int length);
 jstring stringFromNativeProtected(jcontext ctx, const char *string);
 jstring stringFromNativeEternal(jcontext ctx, const char *string);
+jstring stringFromLatin1(jcontext ctx, const char *chars, int length);
+jstring stringFromUTF16(jcontext ctx, const jchar *chars, int length);
+jstring internString(jcontext ctx, jstring string);
 jstring createStringLiteral(jcontext ctx, StringLiteral string);
+jstring loadStringLiteral(jcontext ctx, jstring *slot, StringLiteral literal);
 const char *stringToNative(jcontext ctx, jstring string);
-jstring concatStringsRecipe(jcontext ctx, const char *recipe, int argCount, ...);
+StringChars getStringChars(jstring string);
+jstring allocateConcatString(jcontext ctx, jlong length, bool latin1, void **chars);
+jstring concatToString(jcontext ctx, jobject object);
+jstring concatDoubleToString(jcontext ctx, jdouble value);
+jstring concatFloatToString(jcontext ctx, jfloat value);
+
+int countASCII(const char *chars, int length);
+int countASCIIChars(const jchar *chars, int length);
+int countLatin1Chars(const jchar *chars, int length);
+void compressLatin1(const jchar *chars, int length, char *out);
+void inflateLatin1(const char *chars, int length, jchar *out);
+int getUTF8DecodedLength(const char *data, int length, bool *latin1);
+void decodeUTF8(const char *data, int length, jchar *out);
+void decodeUTF8Latin1(const char *data, int length, char *out);
+int getUTF8EncodedLength(const jchar *chars, int length);
+int encodeUTF8(const jchar *chars, int length, char *out);
+int getLatin1UTF8Length(const char *chars, int length);
+int encodeLatin1UTF8(const char *chars, int length, char *out);
 
 void acquireCriticalLock();
 void releaseCriticalLock();
 void safepointSuspend(jcontext ctx);
+void suspendContext(jcontext ctx);
+SafepointStatistics getSafepointStatistics();
 
 jobject clearCurrentException(jcontext ctx);
 
 void monitorEnter(jcontext ctx, jobject object);
 void monitorExit(jcontext ctx, jobject object);
 void monitorOwnerCheck(jcontext ctx, jobject object);
+void monitorWait(jcontext ctx, jobject object, int64_t nanos);
+void monitorNotify(jcontext ctx, jobject object, bool all);
 void interruptedCheck(jcontext ctx);
 int64_t getHeapUsage();
 void adjustHeapUsage(int64_t amount);
+SweepStatistics getSweepStatistics();
+CollectionStatistics getCollectionStatistics();
+void getPauseHistogram(int64_t *buckets);
+void setLiveHistogramEnabled(bool enabled);
+int copyLiveHistogram(jclass *classes, int64_t *counts, int64_t *bytes, int capacity);
 void initializeJniClasses(jcontext ctx);
 
 NORETURN void throwException(jcontext ctx, jobject exception);
@@ -345,7 +465,7 @@ jint longCompare(jlong value1, jlong value2);
 
 #define SEMICOLON_RECEPTOR 0
 
-#define CLINIT(clazz) if (!initialized_##clazz) CPP_UNLIKELY clinit_##clazz(ctx)
+#define CLINIT(clazz) if (!initialized_##clazz.load(std::memory_order_acquire)) CPP_UNLIKELY clinit_##clazz(ctx)
 
 #define CONSTRUCT_OBJECT(clazz, constructor, ...) \
     ({ jobject object = gcAllocNative(ctx, clazz); \
@@ -856,6 +976,9 @@ jint longCompare(jlong value1, jlong value2);
 #include <condition_variable>
 #include <bit>
 #include <functional>
+#include <exception>
+#include <tuple>
+#include <cstring>
 
 using std::bit_cast;
 
@@ -871,17 +994,17 @@ using std::bit_cast;
 #define CHECK_CAST(type, object) (object)
 #endif
 
+/// Array access with the null and bounds checks omitted, for accesses the transpiler proved to be in bounds
+#define ARRAY_ACCESS_UNCHECKED(type, obj, index) (((type *) ((jarray) obj)->data)[index])
+
 #ifdef USE_VALUE_CHECKS
 #define ARRAY_ACCESS(type, obj, index) (((type *) arrayBoundsCheck(ctx, (jarray) obj, index)->data)[index])
 #else
-#define ARRAY_ACCESS(type, obj, index) (((type *) ((jarray) obj)->data)[index])
+#define ARRAY_ACCESS(type, obj, index) ARRAY_ACCESS_UNCHECKED(type, obj, index)
 #endif
 
-#ifdef USE_LINE_NUMBERS
+// Locations are always tracked, since GC stack maps are keyed by location
 #define LINE_NUMBER(line, loc) frameRef->location = loc
-#else
-#define LINE_NUMBER(line, loc) SEMICOLON_RECEPTOR
-#endif
 
 #define FRAME_LOCATION(loc) frameRef->location = loc
 
@@ -914,14 +1037,26 @@ public:
     JavaException() : std::runtime_error("JavaException") { }
 };
 
+// The object header monitor word is either 0 (Unlocked), a thin lock, or a pointer to an inflated ObjectMonitor
+#define THIN_LOCK_BIT 1 // Set for thin locks, inflated monitor pointers are always aligned
+#define THIN_LOCK_COUNT_SHIFT 1
+#define THIN_LOCK_COUNT_MAX 0x7FFF // Max recursive thin lock depth before inflating
+#define THIN_LOCK_OWNER_SHIFT 16 // The owner thread lock ID is stored in the upper bits
+
 struct ObjectMonitor {
-    std::recursive_mutex lock;
-    std::atomic_int32_t depth;
-    std::atomic<jcontext> owner;
-    std::condition_variable condition;
-    std::mutex conditionMutex;
+    std::mutex lock; // Guards ownership changes and the conditions
+    std::atomic_int64_t owner; // Lock ID of the owning thread, or 0
+    int32_t depth; // Recursive lock depth
+    std::condition_variable entryCondition; // Signaled when the monitor is released
+    std::condition_variable condition; // Object.wait/notify condition
 };
 
+/// Gets the inflated monitor for an object, or null if it's unlocked or thin locked. Does not throw exceptions.
+inline jmonitor getInflatedMonitor(jobject object) {
+    jref word = std::atomic_ref(object->monitor).load(std::memory_order_acquire);
+    return word & THIN_LOCK_BIT ? nullptr : (jmonitor) word;
+}
+
 struct StackFrame {
     const FrameInfo *info{}; // Static information about frame
     jtype *frame{}; // Pointer to frame data
@@ -941,10 +1076,21 @@ struct Context {
     volatile bool suspended{}; // Considered at safepoint, must check for suspendVM flag when un-suspending
     std::recursive_mutex lock; // Lock on changing the stack or blocking monitor
     std::atomic<jobject> blockedBy; // Object monitor blocking the current thread, or null
+    int64_t lockId{}; // Unique nonzero ID identifying this thread as a monitor owner
     bool dead{};
     std::vector<jobject> globalRefs{}; // Global JNI references
+    void *nurseryChunk{}; // Thread-local nursery chunk to bump allocate from, or null
+    std::vector<jobject> youngObjects{}; // Unpromoted objects allocated from thread-local nursery chunks
+    int64_t pendingHeapUsage{}; // Heap usage not yet merged into the global counter
+    int64_t pendingNurseryUsage{}; // Nursery usage not yet merged into the global counter
+    std::atomic_int64_t allocatedBytes{}; // Total bytes allocated by this thread, including array data
 };
 
+/// Counts bytes allocated by the current thread. Only the owning thread writes the counter, so no atomic increment is needed. Does not throw exceptions.
+inline void countAllocatedBytes(jcontext ctx, int64_t bytes) {
+    ctx->allocatedBytes.store(ctx->allocatedBytes.load(std::memory_order_relaxed) + bytes, std::memory_order_relaxed);
+}
+
 /// Checks if an object is null. Throws exceptions.
 template<typename T>
 T *nullCheck(jcontext ctx, T *object) {
@@ -953,17 +1099,86 @@ T *nullCheck(jcontext ctx, T *object) {
     return object;
 }
 
+/// Finds the itable entry for an interface in a class, or null if it isn't implemented. Does not throw exceptions.
+inline const ItableEntry *findItableEntry(jclass clazz, jclass interface) {
+    for (auto entry = (const ItableEntry *) clazz->itable; entry->interface; entry++)
+        if ((jclass) entry->interface == interface)
+            return entry;
+    return nullptr;
+}
+
 /// Resolves an interface in an object vtable. Method index must be an index into the method metadata array of this exact interface (Not a super class). Throws exceptions.
 inline void *resolveInterfaceMethod(jcontext ctx, jclass interface, int method, jobject object) {
-    auto objectClass = NULL_CHECK((jclass) object->clazz);
-    auto cache = (std::unordered_map<jclass, std::vector<int>> *)objectClass->interfaceCache;
-    auto it = cache->find(interface);
-    if (it == cache->end()) CPP_UNLIKELY
-        throwNoSuchMethod(ctx);
-    int offset = method < (int)it->second.size() ? it->second[method] : -1;
-    if (offset < 0) CPP_UNLIKELY
+    auto entry = findItableEntry((jclass) NULL_CHECK(object)->clazz, interface);
+    if (!entry || method >= entry->offsetCount || entry->offsets[method] < 0) CPP_UNLIKELY
         throwNoSuchMethod(ctx);
-    return ((void **) object->vtable)[offset];
+    return ((void **) object->vtable)[entry->offsets[method]];
+}
+
+// A per call site cache of itable entries for recently seen receiver classes. Entries are immutable, so each slot can be replaced atomically.
+struct InterfaceCallSite {
+    std::atomic<const ItableEntry *> entries[INTERFACE_CALL_SITE_SIZE];
+    std::atomic_int next; // Next slot to replace once full
+};
+
+void *resolveInterfaceCallSiteMiss(jcontext ctx, InterfaceCallSite &site, jclass interface, int method, jobject object);
+
+/// Resolves an interface method through a call site cache, only searching the receiver's itable on a miss. Throws exceptions.
+inline void *resolveInterfaceCallSite(jcontext ctx, InterfaceCallSite &site, jclass interface, int method, jobject object) {
+    auto objectClass = (jclass) NULL_CHECK(object)->clazz;
+    for (auto &slot : site.entries) {
+        auto entry = slot.load(std::memory_order_acquire);
+        if (!entry)
+            break;
+        if ((jclass) entry->owner == objectClass) CPP_LIKELY
+            return ((void **) object->vtable)[entry->offsets[method]];
+    }
+    return resolveInterfaceCallSiteMiss(ctx, site, interface, method, object);
+}
+
+enum class ProfileKind { Method, Branch, Call, Handler };
+
+/// A counter in an instrumented build, which is dumped to the profile at exit.
+/// Counts are method invocations, branches taken and not taken, call site receivers, or exception handler entries.
+struct ProfileCounter {
+    ProfileKind kind;
+    const char *method;
+    int site;
+    std::atomic<jlong> counts[2];
+    std::atomic<jclass> receivers[PROFILE_RECEIVERS];
+    std::atomic<jlong> receiverCounts[PROFILE_RECEIVERS];
+};
+
+/// Registers the profile counters of a class to be dumped at exit, to the file set by `CLEARWING_PROFILE` or `clearwing.profile`
+bool registerProfile(ProfileCounter *counters, int count);
+
+inline void profileCount(ProfileCounter &counter) {
+    counter.counts[0].fetch_add(1, std::memory_order_relaxed);
+}
+
+/// Counts a branch, returning the condition
+inline bool profileBranch(ProfileCounter &counter, bool taken) {
+    counter.counts[taken ? 0 : 1].fetch_add(1, std::memory_order_relaxed);
+    return taken;
+}
+
+/// Records the receiver class of a call, returning the receiver. Receivers past the recorded classes are only counted.
+inline jobject profileReceiver(ProfileCounter &counter, jobject object) {
+    counter.counts[0].fetch_add(1, std::memory_order_relaxed);
+    if (!object)
+        return object;
+    auto clazz = (jclass) object->clazz;
+    for (int i = 0; i < PROFILE_RECEIVERS; i++) {
+        auto receiver = counter.receivers[i].load(std::memory_order_relaxed);
+        if (!receiver && counter.receivers[i].compare_exchange_strong(receiver, clazz, std::memory_order_relaxed))
+            receiver = clazz;
+        if (receiver == clazz) {
+            counter.receiverCounts[i].fetch_add(1, std::memory_order_relaxed);
+            return object;
+        }
+    }
+    counter.counts[1].fetch_add(1, std::memory_order_relaxed);
+    return object;
 }
 
 inline jobject checkCast(jcontext ctx, jclass type, jobject object) {
@@ -974,7 +1189,7 @@ inline jobject checkCast(jcontext ctx, jclass type, jobject object) {
 
 inline jarray arrayBoundsCheck(jcontext ctx, jarray array, int index) {
     nullCheck(ctx, (jobject)array);
-    if (index >= array->length) CPP_UNLIKELY
+    if ((uint32_t) index >= (uint32_t) array->length) CPP_UNLIKELY // Also catches negative indices
         throwIndexOutOfBounds(ctx);
     return array;
 }
@@ -1006,6 +1221,27 @@ private:
     jframe frame;
 };
 
+/// Publishes a class as initialized when its static initializer returns, or resets it to be retried if an exception escapes
+class ClassInitializationGuard {
+public:
+    ClassInitializationGuard(std::atomic<int> &state, std::atomic_bool &initialized) : state(state), initialized(initialized), exceptions(std::uncaught_exceptions()) {
+    }
+
+    ~ClassInitializationGuard() {
+        if (std::uncaught_exceptions() > exceptions) {
+            state.store(0);
+            return;
+        }
+        state.store(2, std::memory_order_release);
+        initialized.store(true, std::memory_order_release);
+    }
+
+private:
+    std::atomic<int> &state;
+    std::atomic_bool &initialized;
+    int exceptions;
+};
+
 class MonitorGuard {
 public:
     MonitorGuard(jcontext ctx, jobject monitor) : ctx(ctx), monitor(monitor) {
@@ -1154,10 +1390,151 @@ inline StringLiteral operator "" _j(const char8_t *string, size_t length) {
     return {(const char *) string, (int) length};
 }
 
+/// Loads a string literal through a static slot for the use site, so only the first load goes through the intern table
+#define STRING_LITERAL(literal) ([ctx] { \
+    static jstring slot; \
+    auto string = std::atomic_ref(slot).load(std::memory_order_acquire); \
+    return string ? string : loadStringLiteral(ctx, &slot, literal); \
+}())
+
 inline jstring stringFromNative(jcontext ctx, const std::string_view &string) {
     return stringFromNativeLength(ctx, string.data(), (int)string.length());
 }
 
+/// Gets the length of a string concatenation part, with objects already converted to strings. Does not throw exceptions.
+inline int concatLength(const StringChars &chars) {
+    return chars.length;
+}
+
+inline int concatLength(jlong value) {
+    uint64_t magnitude = value < 0 ? 0 - (uint64_t) value : value;
+    int length = value < 0 ? 2 : 1;
+    for (; magnitude >= 10; magnitude /= 10)
+        length++;
+    return length;
+}
+
+inline int concatLength(jint value) {
+    return concatLength((jlong) value);
+}
+
+inline int concatLength(jchar value) {
+    return 1;
+}
+
+inline int concatLength(jbool value) {
+    return value ? 4 : 5;
+}
+
+/// Checks whether a string concatenation part fits in Latin-1. Does not throw exceptions.
+inline bool concatLatin1(const StringChars &chars) {
+    return chars.latin1;
+}
+
+inline bool concatLatin1(jchar value) {
+    return value < 0x100;
+}
+
+template<typename T>
+inline bool concatLatin1(T value) {
+    return true;
+}
+
+/// Writes a string concatenation part as Latin-1 (Only when every part fits) or UTF-16, returning the end. Does not throw exceptions.
+template<typename C>
+inline C *concatWrite(C *out, const StringChars &chars) {
+    if constexpr (sizeof(C) == 1)
+        memcpy(out, chars.chars, chars.length);
+    else if (chars.latin1)
+        inflateLatin1((const char *) chars.chars, chars.length, out);
+    else
+        memcpy(out, chars.chars, chars.length * sizeof(jchar));
+    return out + chars.length;
+}
+
+template<typename C>
+inline C *concatWrite(C *out, jlong value) {
+    C *end = out + concatLength(value);
+    uint64_t magnitude = value < 0 ? 0 - (uint64_t) value : value;
+    C *digit = end;
+    do {
+        *--digit = (C) ('0' + magnitude % 10);
+        magnitude /= 10;
+    } while (magnitude);
+    if (value < 0)
+        *out = '-';
+    return end;
+}
+
+template<typename C>
+inline C *concatWrite(C *out, jint value) {
+    return concatWrite(out, (jlong) value);
+}
+
+template<typename C>
+inline C *concatWrite(C *out, jchar value) {
+    *out = (C) value;
+    return out + 1;
+}
+
+template<typename C>
+inline C *concatWrite(C *out, jbool value) {
+    for (const char *it = value ? "true" : "false"; *it; it++)
+        *out++ = *it;
+    return out;
+}
+
+/// Converts string concatenation arguments that aren't written directly into strings, keeping them reachable from a frame slot. Throws exceptions.
+template<typename T>
+inline T concatPrepare(jcontext ctx, T value, jtype *&slot) {
+    return value;
+}
+
+inline StringChars concatPrepare(jcontext ctx, jstring value, jtype *&slot) {
+    auto string = value ? value : concatToString(ctx, nullptr);
+    (slot++)->o = (jobject) string;
+    return getStringChars(string);
+}
+
+inline StringChars concatPrepare(jcontext ctx, jobject value, jtype *&slot) {
+    return concatPrepare(ctx, concatToString(ctx, value), slot);
+}
+
+inline StringChars concatPrepare(jcontext ctx, jdouble value, jtype *&slot) {
+    return concatPrepare(ctx, concatDoubleToString(ctx, value), slot);
+}
+
+inline StringChars concatPrepare(jcontext ctx, jfloat value, jtype *&slot) {
+    return concatPrepare(ctx, concatFloatToString(ctx, value), slot);
+}
+
+/// Concatenates the parts of a string concatenation recipe, specialized per call site by the transpiler. Parts are either
+/// StringChars constants, primitives which are formatted in place, or objects which are converted to strings in order.
+/// The exact length is computed up front, so the only allocation is the result. Throws exceptions.
+template<typename ...T>
+jstring concatStrings(jcontext ctx, T ...values) {
+    constexpr int slots = (0 + ... + (std::is_same_v<T, jobject> or std::is_same_v<T, jstring> or std::is_floating_point_v<T>));
+    jtype frame[slots > 0 ? slots : 1]{};
+    FrameInfo frameInfo{ "java/lang/invoke/StringConcatFactory:makeConcatWithConstants", slots };
+    FrameGuard frameRef{ ctx, &frameInfo, frame };
+    jtype *slot = frame;
+    std::tuple parts{ concatPrepare(ctx, values, slot)... };
+    return std::apply([ctx](const auto &...parts) {
+        jlong length = (0 + ... + (jlong) concatLength(parts));
+        bool latin1 = (true and ... and concatLatin1(parts));
+        void *chars;
+        auto string = allocateConcatString(ctx, length, latin1, &chars);
+        if (latin1) {
+            auto out = (char *) chars;
+            ((out = concatWrite(out, parts)), ...);
+        } else {
+            auto out = (jchar *) chars;
+            ((out = concatWrite(out, parts)), ...);
+        }
+        return string;
+    }, parts);
+}
+
 template<typename T>
 jint floatingCompare(T t1, T t2, jint nanVal) {
     if (std::isnan(t1) or std::isnan(t2)) CPP_UNLIKELY
@@ -0,0 +1,57 @@
+#include "com/thelogicmaster/clearwing/GCTelemetry.h"
+#include "java/lang/Thread.h"
+
+#include <algorithm>
+
+extern "C" {
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getCollectionCount_R_long(jcontext ctx) {
+    return getCollectionStatistics().count;
+}
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getMajorCollectionCount_R_long(jcontext ctx) {
+    return getCollectionStatistics().majorCount;
+}
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getTotalPauseNanos_R_long(jcontext ctx) {
+    return getCollectionStatistics().pauseNanoseconds;
+}
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getMaxPauseNanos_R_long(jcontext ctx) {
+    return getCollectionStatistics().maxPauseNanoseconds;
+}
+
+void SM_com_thelogicmaster_clearwing_GCTelemetry_copyPauseHistogram_Array1_long(jcontext ctx, jobject buckets) {
+    auto array = (jarray) NULL_CHECK(buckets);
+    if (array->length < GC_PAUSE_HISTOGRAM_BUCKETS)
+        throwIndexOutOfBounds(ctx);
+    getPauseHistogram((int64_t *) array->data);
+}
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getHeapUsage_R_long(jcontext ctx) {
+    return getHeapUsage();
+}
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getHeapHighWaterMark_R_long(jcontext ctx) {
+    return getCollectionStatistics().heapHighWaterMark;
+}
+
+jlong SM_com_thelogicmaster_clearwing_GCTelemetry_getAllocatedBytes_java_lang_Thread_R_long(jcontext ctx, jobject thread) {
+    // Contexts are only destroyed once the thread object is collected, so a reachable thread's context is valid
+    auto threadCtx = (jcontext) ((jthread) NULL_CHECK(thread))->F_nativeContext;
+    return threadCtx ? threadCtx->allocatedBytes.load(std::memory_order_relaxed) : 0;
+}
+
+void SM_com_thelogicmaster_clearwing_GCTelemetry_setLiveHistogramEnabled_boolean(jcontext ctx, jbool enabled) {
+    setLiveHistogramEnabled(enabled);
+}
+
+jint SM_com_thelogicmaster_clearwing_GCTelemetry_copyLiveHistogram_Array1_java_lang_Class_Array1_long_Array1_long_R_int(jcontext ctx, jobject classes, jobject objects, jobject bytes) {
+    auto classArray = (jarray) NULL_CHECK(classes);
+    auto objectArray = (jarray) NULL_CHECK(objects);
+    auto byteArray = (jarray) NULL_CHECK(bytes);
+    int capacity = std::min({ classArray->length, objectArray->length, byteArray->length });
+    return copyLiveHistogram((jclass *) classArray->data, (int64_t *) objectArray->data, (int64_t *) byteArray->data, capacity);
+}
+
+}
@@ -1,113 +1,160 @@
 #include "java/lang/String.h"
 #include "java/lang/CharSequence.h"
 
-#include <locale>
-#include <codecvt>
 #include <cstring>
 #include <string>
+#include <algorithm>
 
-extern "C" {
+/// Gets a char from either a compact or UTF-16 string. Does not throw exceptions.
+static inline jchar getStringChar(jstring string, int index) {
+    if (string->F_coder == STRING_LATIN1)
+        return ((unsigned char *) jarray(string->F_latin1)->data)[index];
+    return ((jchar *) jarray(string->F_value)->data)[index];
+}
 
-jobject SM_java_lang_String_bytesToChars_Array1_byte_int_int_java_lang_String_R_Array1_char(jcontext ctx, jobject bytesObj, jint offset, jint length, jobject encodingObj) {
+/// Replaces every occurrence of `target`, or inserts `replacement` around every char if `target` is empty
+static std::string replaceAll(std::string_view string, std::string_view target, std::string_view replacement) {
+    std::string result;
+    if (target.empty()) {
+        result.reserve(string.length() + (string.length() + 1) * replacement.length());
+        result += replacement;
+        for (char c : string) {
+            result += c;
+            result += replacement;
+        }
+        return result;
+    }
+    result.reserve(string.length() + replacement.length()); // Initial estimate
+    size_t pos = 0;
+    size_t lastPos = 0;
+    while ((pos = string.find(target, pos)) != std::string::npos) {
+        result.append(string, lastPos, pos - lastPos);
+        result.append(replacement);
+        pos += target.length();
+        lastPos = pos;
+    }
+    result.append(string, lastPos);
+    return result;
+}
+
+enum class Encoding { UTF8, ASCII, Latin1 };
+
+/// Gets an encoding by name, where unsupported encodings are treated as UTF-8. Throws exceptions.
+static Encoding getEncoding(jcontext ctx, jobject name) {
+    if (!name)
+        return Encoding::UTF8;
+    std::string_view encoding = stringToNative(ctx, (jstring) name);
+    if (encoding == "ASCII" || encoding == "ascii" || encoding == "US-ASCII")
+        return Encoding::ASCII;
+    if (encoding == "ISO-8859-1" || encoding == "iso-8859-1" || encoding == "Latin1")
+        return Encoding::Latin1;
+    return Encoding::UTF8;
+}
+
+/// Gets the bytes to decode, with the length clamped to the array. Throws exceptions.
+static const char *getDecodeRange(jcontext ctx, jobject bytesObj, jint offset, jint &length) {
     auto bytes = (jarray) NULL_CHECK(bytesObj);
     length = std::min(bytes->length, length);
     if (length + offset > bytes->length or offset < 0 or length < 0)
         throwIndexOutOfBounds(ctx);
-    if (length == 0)
-        return (jobject) createArray(ctx, &class_char, 0);
-    auto data = (char *)bytes->data + offset;
-    
-    // Get encoding name (default to UTF-8 if null)
-    std::string encoding = "UTF-8";
-    if (encodingObj) {
-        encoding = stringToNative(ctx, (jstring) encodingObj);
+    return (const char *) bytes->data + offset;
+}
+
+extern "C" {
+
+jobject SM_java_lang_String_bytesToChars_Array1_byte_int_int_java_lang_String_R_Array1_char(jcontext ctx, jobject bytesObj, jint offset, jint length, jobject encodingObj) {
+    auto data = getDecodeRange(ctx, bytesObj, offset, length);
+    auto encoding = getEncoding(ctx, encodingObj);
+    if (encoding == Encoding::ASCII and countASCII(data, length) != length) {
+        throwIOException(ctx, "Invalid ASCII character");
+        return nullptr;
     }
-    
-    try {
-        std::u16string result;
-        if (encoding == "UTF-8" || encoding == "utf-8") {
-            result = std::wstring_convert<std::codecvt_utf8_utf16<char16_t>, char16_t>{}.from_bytes(data, data + length);
-        } else if (encoding == "ASCII" || encoding == "ascii" || encoding == "US-ASCII") {
-            // Simple ASCII conversion
-            result.reserve(length);
-            for (int i = 0; i < length; i++) {
-                unsigned char byte = data[i];
-                if (byte > 127) {
-                    throwIOException(ctx, "Invalid ASCII character");
-                    return nullptr;
-                }
-                result.push_back(static_cast<char16_t>(byte));
-            }
-        } else if (encoding == "ISO-8859-1" || encoding == "iso-8859-1" || encoding == "Latin1") {
-            // Latin-1 (ISO-8859-1) conversion - direct byte to char mapping
-            result.reserve(length);
-            for (int i = 0; i < length; i++) {
-                result.push_back(static_cast<char16_t>(static_cast<unsigned char>(data[i])));
-            }
-        } else {
-            // Unsupported encoding - fall back to UTF-8 interpretation
-            result = std::wstring_convert<std::codecvt_utf8_utf16<char16_t>, char16_t>{}.from_bytes(data, data + length);
-        }
-        
-        auto array = createArray(ctx, &class_char, (int) result.length());
-        memcpy(array->data, result.c_str(), result.length() * 2);
+
+    // Decoded straight into the char array, with Latin-1 and ASCII being a direct byte to char mapping
+    if (encoding != Encoding::UTF8) {
+        auto array = createArray(ctx, &class_char, length);
+        inflateLatin1(data, length, (jchar *) array->data);
         return (jobject) array;
-    } catch (std::exception &ex) {
-        throwIOException(ctx, "Failed to decode bytes");
+    }
+    bool latin1;
+    auto array = createArray(ctx, &class_char, getUTF8DecodedLength(data, length, &latin1));
+    decodeUTF8(data, length, (jchar *) array->data);
+    return (jobject) array;
+}
+
+jobject SM_java_lang_String_decode_Array1_byte_int_int_java_lang_String_R_java_lang_String(jcontext ctx, jobject bytesObj, jint offset, jint length, jobject encodingObj) {
+    auto data = getDecodeRange(ctx, bytesObj, offset, length);
+    auto encoding = getEncoding(ctx, encodingObj);
+    if (encoding == Encoding::ASCII and countASCII(data, length) != length) {
+        throwIOException(ctx, "Invalid ASCII character");
         return nullptr;
     }
+    if (encoding == Encoding::UTF8)
+        return (jobject) stringFromNativeLength(ctx, data, length);
+    return (jobject) stringFromLatin1(ctx, data, length);
+}
+
+jobject SM_java_lang_String_compress_Array1_char_int_int_R_Array1_byte(jcontext ctx, jobject dataObj, jint offset, jint length) {
+    auto chars = (jchar *) ((jarray) NULL_CHECK(dataObj))->data + offset;
+    if (countLatin1Chars(chars, length) != length)
+        return nullptr;
+    auto bytes = createArray(ctx, &class_byte, length);
+    compressLatin1(chars, length, (char *) bytes->data);
+    return (jobject) bytes;
+}
+
+void M_java_lang_String_getChars_int_int_Array1_char_int(jcontext ctx, jobject self, jint srcBegin, jint srcEnd, jobject dstObj, jint dstBegin) {
+    auto string = (jstring) NULL_CHECK(self);
+    auto dst = (jarray) NULL_CHECK(dstObj);
+    if (srcBegin < 0 or srcBegin > srcEnd or srcEnd > string->F_count or dstBegin < 0 or dstBegin > dst->length - (srcEnd - srcBegin))
+        throwIndexOutOfBounds(ctx);
+    auto out = (jchar *) dst->data + dstBegin;
+    if (string->F_coder == STRING_LATIN1)
+        inflateLatin1((const char *) jarray(string->F_latin1)->data + srcBegin, srcEnd - srcBegin, out);
+    else
+        memmove(out, (jchar *) jarray(string->F_value)->data + srcBegin, (srcEnd - srcBegin) * sizeof(jchar));
 }
 
 jobject M_java_lang_String_getBytes_java_lang_String_R_Array1_byte(jcontext ctx, jobject self, jobject encodingObj) {
-    auto charArray = (jarray)((java_lang_String *) NULL_CHECK(self))->F_value;
-    if (charArray->length == 0)
-        return (jobject) createArray(ctx, &class_byte, 0);
-    auto data = (char16_t *)charArray->data;
-    
-    // Get encoding name (default to UTF-8 if null)
-    std::string encoding = "UTF-8";
-    if (encodingObj) {
-        encoding = stringToNative(ctx, (jstring) encodingObj);
-    }
-    
-    try {
-        std::string result;
-        if (encoding == "UTF-8" || encoding == "utf-8") {
-            result = std::wstring_convert<std::codecvt_utf8_utf16<char16_t>, char16_t>{}.to_bytes(data, data + charArray->length);
-        } else if (encoding == "ASCII" || encoding == "ascii" || encoding == "US-ASCII") {
-            // Simple ASCII conversion
-            result.reserve(charArray->length);
-            for (int i = 0; i < charArray->length; i++) {
-                char16_t ch = data[i];
-                if (ch > 127) {
-                    throwIOException(ctx, "Character cannot be mapped to ASCII");
-                    return nullptr;
-                }
-                result.push_back(static_cast<char>(ch));
-            }
-        } else if (encoding == "ISO-8859-1" || encoding == "iso-8859-1" || encoding == "Latin1") {
-            // Latin-1 (ISO-8859-1) conversion
-            result.reserve(charArray->length);
-            for (int i = 0; i < charArray->length; i++) {
-                char16_t ch = data[i];
-                if (ch > 255) {
-                    throwIOException(ctx, "Character cannot be mapped to ISO-8859-1");
-                    return nullptr;
-                }
-                result.push_back(static_cast<char>(ch));
-            }
-        } else {
-            // Unsupported encoding - fall back to UTF-8
-            result = std::wstring_convert<std::codecvt_utf8_utf16<char16_t>, char16_t>{}.to_bytes(data, data + charArray->length);
+    auto string = (jstring) NULL_CHECK(self);
+    auto encoding = getEncoding(ctx, encodingObj);
+    int length = string->F_count;
+
+    // Compact strings are already Latin-1, and ASCII as well unless a char needs two UTF-8 bytes
+    if (string->F_coder == STRING_LATIN1) {
+        auto chars = (const char *) jarray(string->F_latin1)->data;
+        if (encoding == Encoding::ASCII and countASCII(chars, length) != length) {
+            throwIOException(ctx, "Character cannot be mapped to ASCII");
+            return nullptr;
         }
-        
-        auto array = createArray(ctx, &class_byte, (int) result.length());
-        memcpy(array->data, result.data(), result.length());
+        if (encoding == Encoding::UTF8) {
+            auto array = createArray(ctx, &class_byte, getLatin1UTF8Length(chars, length));
+            encodeLatin1UTF8(chars, length, (char *) array->data);
+            return (jobject) array;
+        }
+        auto array = createArray(ctx, &class_byte, length);
+        memcpy(array->data, chars, length);
+        return (jobject) array;
+    }
+
+    // Encoded straight into the byte array
+    auto chars = (const jchar *) jarray(string->F_value)->data;
+    if (encoding == Encoding::UTF8) {
+        auto array = createArray(ctx, &class_byte, getUTF8EncodedLength(chars, length));
+        encodeUTF8(chars, length, (char *) array->data);
         return (jobject) array;
-    } catch (std::exception &ex) {
-        throwIOException(ctx, "Failed to encode bytes");
+    }
+    if (encoding == Encoding::ASCII and countASCIIChars(chars, length) != length) {
+        throwIOException(ctx, "Character cannot be mapped to ASCII");
+        return nullptr;
+    }
+    if (encoding == Encoding::Latin1 and countLatin1Chars(chars, length) != length) {
+        throwIOException(ctx, "Character cannot be mapped to ISO-8859-1");
         return nullptr;
     }
+    auto array = createArray(ctx, &class_byte, length);
+    compressLatin1(chars, length, (char *) array->data);
+    return (jobject) array;
 }
 
 jbool M_java_lang_String_equals_java_lang_Object_R_boolean(jcontext ctx, jobject self, jobject other) {
@@ -117,8 +164,11 @@ jbool M_java_lang_String_equals_java_lang_Object_R_boolean(jcontext ctx, jobject
     if (!isInstance(ctx, other, &class_java_lang_String))
         return false;
     auto otherString = (jstring) other;
-    if (otherString->F_count != string->F_count)
+    // Strings are always compact when they can be, so different coders mean different chars
+    if (otherString->F_count != string->F_count or otherString->F_coder != string->F_coder)
         return false;
+    if (string->F_coder == STRING_LATIN1)
+        return !std::memcmp(jarray(otherString->F_latin1)->data, jarray(string->F_latin1)->data, string->F_count);
     return !std::memcmp(jarray(otherString->F_value)->data, jarray(string->F_value)->data, sizeof(jchar) * string->F_count);
 }
 
@@ -137,13 +187,10 @@ jbool M_java_lang_String_equalsIgnoreCase_java_lang_String_R_boolean(jcontext ct
     if (string->F_count != otherString->F_count)
         return false;
         
-    auto *array = (jchar *) jarray(string->F_value)->data;
-    auto *otherArray = (jchar *) jarray(otherString->F_value)->data;
-    
     // Improved Unicode-aware case comparison using std::towlower
     for (int i = 0; i < string->F_count; i++) {
-        jchar c1 = array[i];
-        jchar c2 = otherArray[i];
+        jchar c1 = getStringChar(string, i);
+        jchar c2 = getStringChar(otherString, i);
         
         // Convert to lowercase using standard library for better Unicode support
         if (c1 != c2) {
@@ -167,14 +214,26 @@ jbool M_java_lang_String_equalsIgnoreCase_java_lang_String_R_boolean(jcontext ct
     return true;
 }
 
+jobject M_java_lang_String_intern_R_java_lang_String(jcontext ctx, jobject self) {
+    return (jobject) internString(ctx, (jstring) NULL_CHECK(self));
+}
+
 jint M_java_lang_String_hashCode_R_int(jcontext ctx, jobject self) {
     auto string = (jstring) NULL_CHECK(self);
     if (string->F_hashCode == 0) {
         if (string->F_count == 0)
             return 0;
-        auto *array = (jchar *) jarray(string->F_value)->data;
-        for (int i = 0; i < string->F_count; i++)
-            string->F_hashCode = 31 * string->F_hashCode + array[i];
+        jint hash = 0;
+        if (string->F_coder == STRING_LATIN1) {
+            auto *array = (unsigned char *) jarray(string->F_latin1)->data;
+            for (int i = 0; i < string->F_count; i++)
+                hash = 31 * hash + array[i];
+        } else {
+            auto *array = (jchar *) jarray(string->F_value)->data;
+            for (int i = 0; i < string->F_count; i++)
+                hash = 31 * hash + array[i];
+        }
+        string->F_hashCode = hash;
     }
     return string->F_hashCode;
 }
@@ -188,45 +247,26 @@ jobject M_java_lang_String_replace_java_lang_CharSequence_java_lang_CharSequence
     frame[0].o = invokeInterface<func_java_lang_CharSequence_toString_R_java_lang_String, &class_java_lang_CharSequence, INDEX_java_lang_CharSequence_toString_R_java_lang_String>(ctx, targetSeq);
     frame[1].o = invokeInterface<func_java_lang_CharSequence_toString_R_java_lang_String, &class_java_lang_CharSequence, INDEX_java_lang_CharSequence_toString_R_java_lang_String>(ctx, replaceSeq);
     
-    // Work with UTF-8 strings for better Unicode support
-    std::string target = stringToNative(ctx, (jstring) frame[0].o);
-    std::string replacement = stringToNative(ctx, (jstring) frame[1].o);
-    std::string string = stringToNative(ctx, (jstring) self);
+    // Compact strings are replaced on their Latin-1 bytes, otherwise work with UTF-8 strings for better Unicode support
+    auto targetString = (jstring) NULL_CHECK(frame[0].o);
+    auto replacementString = (jstring) NULL_CHECK(frame[1].o);
+    auto selfString = (jstring) self;
+    bool latin1 = selfString->F_coder == STRING_LATIN1 and targetString->F_coder == STRING_LATIN1 and replacementString->F_coder == STRING_LATIN1;
+    auto view = [&](jstring string) {
+        if (latin1)
+            return std::string_view((const char *) jarray(string->F_latin1)->data, string->F_count);
+        return std::string_view(stringToNative(ctx, string));
+    };
+    auto target = view(targetString);
+    auto replacement = view(replacementString);
+    auto string = view(selfString);
 
-    // Handle empty target case properly
-    if (target.empty()) {
-        if (replacement.empty()) {
-            return self; // No change needed
-        }
-        // Insert replacement between each character
-        std::string result;
-        result.reserve(string.length() + (string.length() + 1) * replacement.length());
-        result += replacement;
-        for (char c : string) {
-            result += c;
-            result += replacement;
-        }
-        return (jobject) stringFromNativeLength(ctx, result.c_str(), (int) result.size());
-    } else {
-        // Standard string replacement - more efficient with proper reserve
-        if (string.find(target) == std::string::npos) {
-            return self; // No replacements needed
-        }
-        
-        std::string result;
-        result.reserve(string.length() + replacement.length()); // Initial estimate
-        
-        size_t pos = 0;
-        size_t lastPos = 0;
-        while ((pos = string.find(target, pos)) != std::string::npos) {
-            result.append(string, lastPos, pos - lastPos);
-            result.append(replacement);
-            pos += target.length();
-            lastPos = pos;
-        }
-        result.append(string, lastPos);
-        return (jobject) stringFromNativeLength(ctx, result.c_str(), (int) result.size());
-    }
+    if (target.empty() ? replacement.empty() : string.find(target) == std::string::npos)
+        return self; // No replacements needed
+    auto result = replaceAll(string, target, replacement);
+    if (latin1)
+        return (jobject) stringFromLatin1(ctx, result.c_str(), (int) result.size());
+    return (jobject) stringFromNativeLength(ctx, result.c_str(), (int) result.size());
 }
 
 jobject M_java_lang_String_toString_R_java_lang_String(jcontext ctx, jobject self) {
@@ -2,6 +2,8 @@
 #include "java/lang/String.h"
 #include "java/lang/System.h"
 
+#include <cstring>
+
 extern "C" {
 
 jobject M_java_lang_StringBuilder_append_char_R_java_lang_StringBuilder(jcontext ctx, jobject self, jchar c) {
@@ -36,7 +38,11 @@ jobject M_java_lang_StringBuilder_append_java_lang_String_R_java_lang_StringBuil
     int newLength = builder->F_count + string->F_count;
     if (newLength > jarray(builder->F_value)->length)
         M_java_lang_StringBuilder_enlargeBuffer_int(ctx, self, newLength);
-    M_java_lang_String_getChars_int_int_Array1_char_int(ctx, stringObj, 0, string->F_count, (jobject) builder->F_value, builder->F_count);
+    auto out = (jchar *) jarray(builder->F_value)->data + builder->F_count;
+    if (string->F_coder == STRING_LATIN1)
+        inflateLatin1((const char *) jarray(string->F_latin1)->data, string->F_count, out);
+    else
+        memcpy(out, jarray(string->F_value)->data, string->F_count * sizeof(jchar));
     builder->F_count = newLength;
     return self;
 }
@@ -1,15 +1,21 @@
 #include "java/lang/StringToReal.h"
 #include "java/lang/String.h"
 
+#include <cstring>
+
 extern "C" {
 
 jdouble SM_java_lang_StringToReal_parseDblImpl_java_lang_String_int_R_double(jcontext ctx, jobject stringObj, jint e) {
     auto string = (jstring) NULL_CHECK(stringObj);
     auto length = string->F_count;
-    auto chars = (jchar *) jarray(string->F_value)->data;
     char *data = new char[length + 1]{};
-    for (int i = 0; i < length; i++)
-        data[i] = (char)chars[i];
+    if (string->F_coder == STRING_LATIN1)
+        memcpy(data, jarray(string->F_latin1)->data, length);
+    else {
+        auto chars = (jchar *) jarray(string->F_value)->data;
+        for (int i = 0; i < length; i++)
+            data[i] = (char)chars[i];
+    }
     char *err;
     double db = strtod(data, &err);
     if (data == err) {
@@ -43,7 +43,7 @@ jobject SM_java_lang_System_getProperty_java_lang_String_R_java_lang_String(jcon
     static std::mutex lock;
     auto key = stringToNative(ctx, (jstring) NULL_CHECK(keyObj));
     if (!strcmp(key, "java.runtime.name"))
-        return (jobject) createStringLiteral(ctx, u8"Clearwing"_j);
+        return (jobject) STRING_LITERAL(u8"Clearwing"_j);
     std::lock_guard guard(lock);
     auto it = cache.find(key);
     if (it != cache.end())
@@ -41,7 +41,7 @@ void threadEntrypoint(jcontext ctx, jthread thread) {
     } catch (ExitException &) { }
 
     thread->F_alive = false;
-    ctx->suspended = true;
+    suspendContext(ctx);
     ctx->dead = true;
 
     unprotectObject((jobject)thread);
@@ -82,7 +82,10 @@ void M_java_lang_Thread_interrupt(jcontext ctx, jobject self) {
     threadCtx->lock.lock();
     threadCtx->thread->F_interrupted = true;
     if (threadCtx->blockedBy)
-        ((jmonitor) ((jobject) threadCtx->blockedBy)->monitor)->condition.notify_all();
+        if (auto monitor = getInflatedMonitor(threadCtx->blockedBy)) {
+            std::lock_guard lock(monitor->lock);
+            monitor->condition.notify_all();
+        }
     threadCtx->lock.unlock();
 }
 
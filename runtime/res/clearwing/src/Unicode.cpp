@@ -0,0 +1,316 @@
+#include "Clearwing.h"
+
+#include <cstring>
+
+// Vector kernels for the ASCII runs that dominate most text, with multibyte sequences decoded one at a time
+#if defined(__SSE2__) || defined(_M_X64)
+#include <emmintrin.h>
+#define UNICODE_SSE2
+#if defined(__AVX2__)
+#include <immintrin.h>
+#define UNICODE_AVX2
+#endif
+#elif defined(__ARM_NEON) && defined(__aarch64__)
+#include <arm_neon.h>
+#define UNICODE_NEON
+#endif
+
+#define REPLACEMENT_CHAR 0xFFFD
+
+/// Finds the length of the leading run of chars below `limit`, which must be 0x80 or 0x100
+static int countCharsBelow(const jchar *chars, int length, jchar limit) {
+    int i = 0;
+#if defined(UNICODE_AVX2)
+    auto highMask256 = _mm256_set1_epi16((short) ~(limit - 1));
+    for (; i + 16 <= length; i += 16) {
+        auto chunk = _mm256_loadu_si256((const __m256i *) (chars + i));
+        if (!_mm256_testz_si256(chunk, highMask256))
+            break;
+    }
+#endif
+#if defined(UNICODE_SSE2)
+    auto highMask = _mm_set1_epi16((short) ~(limit - 1));
+    auto zero = _mm_setzero_si128();
+    for (; i + 8 <= length; i += 8) {
+        auto chunk = _mm_loadu_si128((const __m128i *) (chars + i));
+        int mask = _mm_movemask_epi8(_mm_cmpeq_epi16(_mm_and_si128(chunk, highMask), zero));
+        if (mask != 0xFFFF)
+            return i + __builtin_ctz(~mask) / 2;
+    }
+#elif defined(UNICODE_NEON)
+    auto highMask = vdupq_n_u16((jchar) ~(limit - 1));
+    for (; i + 8 <= length; i += 8)
+        if (vmaxvq_u16(vandq_u16(vld1q_u16(chars + i), highMask)))
+            break;
+#endif
+    while (i < length && chars[i] < limit)
+        i++;
+    return i;
+}
+
+/// Widens Latin-1 chars to UTF-16
+static void widen(const char *chars, int length, jchar *out) {
+    int i = 0;
+#if defined(UNICODE_AVX2)
+    for (; i + 16 <= length; i += 16)
+        _mm256_storeu_si256((__m256i *) (out + i), _mm256_cvtepu8_epi16(_mm_loadu_si128((const __m128i *) (chars + i))));
+#elif defined(UNICODE_SSE2)
+    auto zero = _mm_setzero_si128();
+    for (; i + 16 <= length; i += 16) {
+        auto chunk = _mm_loadu_si128((const __m128i *) (chars + i));
+        _mm_storeu_si128((__m128i *) (out + i), _mm_unpacklo_epi8(chunk, zero));
+        _mm_storeu_si128((__m128i *) (out + i + 8), _mm_unpackhi_epi8(chunk, zero));
+    }
+#elif defined(UNICODE_NEON)
+    for (; i + 16 <= length; i += 16) {
+        auto chunk = vld1q_u8((const uint8_t *) chars + i);
+        vst1q_u16(out + i, vmovl_u8(vget_low_u8(chunk)));
+        vst1q_u16(out + i + 8, vmovl_u8(vget_high_u8(chunk)));
+    }
+#endif
+    for (; i < length; i++)
+        out[i] = (unsigned char) chars[i];
+}
+
+/// Narrows UTF-16 chars that are all Latin-1
+static void narrow(const jchar *chars, int length, char *out) {
+    int i = 0;
+#if defined(UNICODE_SSE2)
+    for (; i + 16 <= length; i += 16) {
+        auto low = _mm_loadu_si128((const __m128i *) (chars + i));
+        auto high = _mm_loadu_si128((const __m128i *) (chars + i + 8));
+        _mm_storeu_si128((__m128i *) (out + i), _mm_packus_epi16(low, high));
+    }
+#elif defined(UNICODE_NEON)
+    for (; i + 16 <= length; i += 16)
+        vst1q_u8((uint8_t *) out + i, vcombine_u8(vmovn_u16(vld1q_u16(chars + i)), vmovn_u16(vld1q_u16(chars + i + 8))));
+#endif
+    for (; i < length; i++)
+        out[i] = (char) chars[i];
+}
+
+/// Decodes the UTF-8 sequence at `index`, advancing past it, or returns the replacement char for a malformed sequence
+static inline uint32_t decodeSequence(const unsigned char *data, int length, int &index) {
+    auto lead = data[index++];
+    int continuations;
+    uint32_t codePoint, minimum;
+    if (lead < 0x80)
+        return lead;
+    if (lead >= 0xC2 && lead <= 0xDF) {
+        continuations = 1;
+        codePoint = lead & 0x1F;
+        minimum = 0x80;
+    } else if ((lead & 0xF0) == 0xE0) {
+        continuations = 2;
+        codePoint = lead & 0x0F;
+        minimum = 0x800;
+    } else if (lead >= 0xF0 && lead <= 0xF4) {
+        continuations = 3;
+        codePoint = lead & 0x07;
+        minimum = 0x10000;
+    } else
+        return REPLACEMENT_CHAR;
+    for (int i = 0; i < continuations; i++) {
+        if (index >= length || (data[index] & 0xC0) != 0x80)
+            return REPLACEMENT_CHAR;
+        codePoint = (codePoint << 6) | (data[index++] & 0x3F);
+    }
+    if (codePoint < minimum || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF))
+        return REPLACEMENT_CHAR;
+    return codePoint;
+}
+
+template<typename T>
+static void decode(const char *data, int length, T *out) {
+    auto bytes = (const unsigned char *) data;
+    int i = 0;
+    while (i < length) {
+        if (bytes[i] < 0x80) {
+            int ascii = countASCII(data + i, length - i);
+            if constexpr (sizeof(T) == 1)
+                memcpy(out, data + i, ascii);
+            else
+                widen(data + i, ascii, out);
+            out += ascii;
+            i += ascii;
+            continue;
+        }
+        auto codePoint = decodeSequence(bytes, length, i);
+        if (codePoint >= 0x10000) {
+            *out++ = (T) (0xD800 + ((codePoint - 0x10000) >> 10));
+            *out++ = (T) (0xDC00 + (codePoint & 0x3FF));
+        } else
+            *out++ = (T) codePoint;
+    }
+}
+
+extern "C" {
+
+/// Counts the leading ASCII bytes. Does not throw exceptions.
+int countASCII(const char *chars, int length) {
+    int i = 0;
+#if defined(UNICODE_AVX2)
+    for (; i + 32 <= length; i += 32) {
+        int mask = _mm256_movemask_epi8(_mm256_loadu_si256((const __m256i *) (chars + i)));
+        if (mask)
+            return i + __builtin_ctz(mask);
+    }
+#endif
+#if defined(UNICODE_SSE2)
+    for (; i + 16 <= length; i += 16) {
+        int mask = _mm_movemask_epi8(_mm_loadu_si128((const __m128i *) (chars + i)));
+        if (mask)
+            return i + __builtin_ctz(mask);
+    }
+#elif defined(UNICODE_NEON)
+    for (; i + 16 <= length; i += 16)
+        if (vmaxvq_u8(vld1q_u8((const uint8_t *) chars + i)) >= 0x80)
+            break;
+#endif
+    while (i < length && (unsigned char) chars[i] < 0x80)
+        i++;
+    return i;
+}
+
+/// Counts the leading UTF-16 chars that are ASCII. Does not throw exceptions.
+int countASCIIChars(const jchar *chars, int length) {
+    return countCharsBelow(chars, length, 0x80);
+}
+
+/// Counts the leading UTF-16 chars that are Latin-1. Does not throw exceptions.
+int countLatin1Chars(const jchar *chars, int length) {
+    return countCharsBelow(chars, length, 0x100);
+}
+
+/// Narrows UTF-16 chars that are all Latin-1. Does not throw exceptions.
+void compressLatin1(const jchar *chars, int length, char *out) {
+    narrow(chars, length, out);
+}
+
+/// Widens Latin-1 chars to UTF-16. Does not throw exceptions.
+void inflateLatin1(const char *chars, int length, jchar *out) {
+    widen(chars, length, out);
+}
+
+/// Gets the UTF-16 length of UTF-8 data, setting `latin1` if every char fits in Latin-1. Does not throw exceptions.
+int getUTF8DecodedLength(const char *data, int length, bool *latin1) {
+    auto bytes = (const unsigned char *) data;
+    int decoded = 0;
+    uint32_t maximum = 0;
+    int i = 0;
+    while (i < length) {
+        if (bytes[i] < 0x80) {
+            int ascii = countASCII(data + i, length - i);
+            decoded += ascii;
+            i += ascii;
+            continue;
+        }
+        auto codePoint = decodeSequence(bytes, length, i);
+        maximum = std::max(maximum, codePoint);
+        decoded += codePoint >= 0x10000 ? 2 : 1;
+    }
+    *latin1 = maximum <= 0xFF;
+    return decoded;
+}
+
+/// Decodes UTF-8 into UTF-16 chars, replacing malformed sequences, where `out` has room for the decoded length. Does not throw exceptions.
+void decodeUTF8(const char *data, int length, jchar *out) {
+    decode(data, length, out);
+}
+
+/// Decodes UTF-8 that is entirely Latin-1 into Latin-1 chars, where `out` has room for the decoded length. Does not throw exceptions.
+void decodeUTF8Latin1(const char *data, int length, char *out) {
+    decode(data, length, out);
+}
+
+/// Gets the UTF-8 length of UTF-16 chars, with unpaired surrogates encoded as '?'. Does not throw exceptions.
+int getUTF8EncodedLength(const jchar *chars, int length) {
+    int encoded = 0;
+    int i = 0;
+    while (i < length) {
+        int ascii = countASCIIChars(chars + i, length - i);
+        encoded += ascii;
+        i += ascii;
+        if (i >= length)
+            break;
+        auto c = chars[i++];
+        if (c < 0x800)
+            encoded += 2;
+        else if (c >= 0xD800 && c <= 0xDBFF && i < length && chars[i] >= 0xDC00 && chars[i] <= 0xDFFF) {
+            encoded += 4;
+            i++;
+        } else if (c >= 0xD800 && c <= 0xDFFF)
+            encoded += 1;
+        else
+            encoded += 3;
+    }
+    return encoded;
+}
+
+/// Encodes UTF-16 chars as UTF-8 into `out`, which has room for the encoded length, returning the encoded length. Does not throw exceptions.
+int encodeUTF8(const jchar *chars, int length, char *out) {
+    auto start = out;
+    int i = 0;
+    while (i < length) {
+        int ascii = countASCIIChars(chars + i, length - i);
+        narrow(chars + i, ascii, out);
+        out += ascii;
+        i += ascii;
+        if (i >= length)
+            break;
+        uint32_t c = chars[i++];
+        if (c < 0x800) {
+            *out++ = (char) (0xC0 | (c >> 6));
+            *out++ = (char) (0x80 | (c & 0x3F));
+        } else if (c >= 0xD800 && c <= 0xDBFF && i < length && chars[i] >= 0xDC00 && chars[i] <= 0xDFFF) {
+            uint32_t codePoint = 0x10000 + ((c - 0xD800) << 10) + (chars[i++] - 0xDC00);
+            *out++ = (char) (0xF0 | (codePoint >> 18));
+            *out++ = (char) (0x80 | ((codePoint >> 12) & 0x3F));
+            *out++ = (char) (0x80 | ((codePoint >> 6) & 0x3F));
+            *out++ = (char) (0x80 | (codePoint & 0x3F));
+        } else if (c >= 0xD800 && c <= 0xDFFF)
+            *out++ = '?';
+        else {
+            *out++ = (char) (0xE0 | (c >> 12));
+            *out++ = (char) (0x80 | ((c >> 6) & 0x3F));
+            *out++ = (char) (0x80 | (c & 0x3F));
+        }
+    }
+    return (int) (out - start);
+}
+
+/// Gets the UTF-8 length of Latin-1 chars. Does not throw exceptions.
+int getLatin1UTF8Length(const char *chars, int length) {
+    int encoded = 0;
+    int i = 0;
+    while (i < length) {
+        int ascii = countASCII(chars + i, length - i);
+        encoded += ascii;
+        i += ascii;
+        if (i < length) {
+            encoded += 2;
+            i++;
+        }
+    }
+    return encoded;
+}
+
+/// Encodes Latin-1 chars as UTF-8 into `out`, which has room for the encoded length, returning the encoded length. Does not throw exceptions.
+int encodeLatin1UTF8(const char *chars, int length, char *out) {
+    auto start = out;
+    int i = 0;
+    while (i < length) {
+        int ascii = countASCII(chars + i, length - i);
+        memcpy(out, chars + i, ascii);
+        out += ascii;
+        i += ascii;
+        if (i < length) {
+            auto c = (unsigned char) chars[i++];
+            *out++ = (char) (0xC0 | (c >> 6));
+            *out++ = (char) (0x80 | (c & 0x3F));
+        }
+    }
+    return (int) (out - start);
+}
+
+}
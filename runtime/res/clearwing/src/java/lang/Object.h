@@ -7,7 +7,7 @@
 extern "C" {
 #endif
 
-extern bool initialized_java_lang_Object;
+extern std::atomic_bool initialized_java_lang_Object;
 
 #define VTABLE_java_lang_Object_hashCode_R_int 0
 #define VTABLE_java_lang_Object_equals_java_lang_Object_R_boolean 1
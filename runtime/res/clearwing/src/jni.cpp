@@ -126,6 +126,20 @@ static void releaseArrayElements(jnienv env, jarray array) {
     deleteGlobalRef(env, (jobject)array);
 }
 
+/// Gets the UTF-16 chars of a string, which are a copy for compact strings
+static const jchar *getUTF16Chars(jstring string) {
+    if (string->F_coder != STRING_LATIN1)
+        return (jchar *)((jarray)string->F_value)->data;
+    auto copy = new jchar[string->F_count];
+    inflateLatin1((const char *)((jarray)string->F_latin1)->data, string->F_count, copy);
+    return copy;
+}
+
+static void releaseUTF16Chars(jstring string, const jchar *chars) {
+    if (string->F_coder == STRING_LATIN1)
+        delete[] chars;
+}
+
 template<typename T>
 static void getArrayRegion(jnienv env, jarray array, T *buffer, int start, int len) {
     jniTry(env, [&](jcontext ctx) {
@@ -278,7 +292,8 @@ static T invokeMethod(jnienv env, jclass clazz, jobject self, jmethod method, co
         ffi_call(&cif, (void (*)()) func, &returnValue, (void **)argPtrs);
     });
 
-    ctx->suspended = initialSuspend;
+    if (initialSuspend)
+        suspendContext(ctx);
     if constexpr (std::is_same_v<T, jobject>) // Todo: Should really just have this return value on a stack
         protectObject(*(jobject *)&returnValue);
     SAFEPOINT();
@@ -1228,12 +1243,13 @@ jni createJni(jcontext ctx) {
 
         .GetStringChars = [](jnienv env, jstring str, jboolean *isCopy) -> const jchar * {
             if (isCopy)
-                *isCopy = false;
+                *isCopy = str->F_coder == STRING_LATIN1;
             addGlobalRef(env, (jobject)str);
-            return (jchar *)((jarray)str->F_value)->data;
+            return getUTF16Chars(str);
         },
 
         .ReleaseStringChars = [](jnienv env, jstring str, const jchar *chars) -> void {
+            releaseUTF16Chars(str, chars);
             deleteGlobalRef(env, (jobject)str);
         },
 
@@ -1490,7 +1506,10 @@ jni createJni(jcontext ctx) {
             jniTry(env, [&](jcontext ctx) {
                 if (start < 0 or len < 0 or start + len > str->F_count)
                     throwIndexOutOfBounds(ctx);
-                memcpy(buf, (jchar *)((jarray)str->F_value)->data + start, len * sizeof(jchar));
+                if (str->F_coder == STRING_LATIN1)
+                    inflateLatin1((const char *)((jarray)str->F_latin1)->data + start, len, buf);
+                else
+                    memcpy(buf, (jchar *)((jarray)str->F_value)->data + start, len * sizeof(jchar));
             });
         },
 
@@ -1516,12 +1535,13 @@ jni createJni(jcontext ctx) {
 
         .GetStringCritical = [](jnienv env, jstring string, jboolean *isCopy) -> const jchar * {
             if (isCopy)
-                *isCopy = false;
+                *isCopy = string->F_coder == STRING_LATIN1;
             addGlobalRef(env, (jobject)string);
-            return (jchar *)((jarray)string->F_value)->data;
+            return getUTF16Chars(string);
         },
 
-        .ReleaseStringCritical = [](jnienv env, jstring string, [[maybe_unused]] const jchar *cstring) -> void {
+        .ReleaseStringCritical = [](jnienv env, jstring string, const jchar *cstring) -> void {
+            releaseUTF16Chars(string, cstring);
             deleteGlobalRef(env, (jobject)string);
         },
 
@@ -1558,7 +1578,7 @@ jni createJni(jcontext ctx) {
             }, [&] {
                 if (pixelBuffer)
                     unprotectObject(pixelBuffer);
-                ctx->suspended = true;
+                suspendContext(ctx);
             });
             return pixelBuffer;
         },
@@ -0,0 +1,134 @@
+package com.thelogicmaster.clearwing;
+
+/**
+ * Garbage collector and heap statistics for the Clearwing runtime.
+ * The same data is written as a JSON line per collection when the CLEARWING_GC_LOG environment variable is set to a file path, `stdout`, or `stderr`.
+ */
+public final class GCTelemetry {
+
+    /**
+     * The number of pause histogram buckets. Bucket `i` counts pauses shorter than 2^i microseconds that didn't fit in a lower bucket, and the last bucket is unbounded.
+     */
+    public static final int PAUSE_HISTOGRAM_BUCKETS = 32;
+
+    private GCTelemetry() {
+    }
+
+    /**
+     * Returns the number of completed collections, both minor and major
+     */
+    public static native long getCollectionCount();
+
+    /**
+     * Returns the number of completed major collections
+     */
+    public static native long getMajorCollectionCount();
+
+    /**
+     * Returns the total time threads were stopped for collections in nanoseconds, including the time to reach a safepoint
+     */
+    public static native long getTotalPauseNanos();
+
+    /**
+     * Returns the longest collection pause in nanoseconds
+     */
+    public static native long getMaxPauseNanos();
+
+    /**
+     * Returns the collection pause counts by power of two microsecond buckets
+     */
+    public static long[] getPauseHistogram() {
+        long[] buckets = new long[PAUSE_HISTOGRAM_BUCKETS];
+        copyPauseHistogram(buckets);
+        return buckets;
+    }
+
+    private static native void copyPauseHistogram(long[] buckets);
+
+    /**
+     * Returns the current heap usage in bytes
+     */
+    public static native long getHeapUsage();
+
+    /**
+     * Returns the highest observed heap usage in bytes
+     */
+    public static native long getHeapHighWaterMark();
+
+    /**
+     * Returns the total bytes allocated by the current thread, including array data
+     */
+    public static long getAllocatedBytes() {
+        return getAllocatedBytes(Thread.currentThread());
+    }
+
+    /**
+     * Returns the total bytes allocated by a thread, including array data, or zero if it hasn't been started
+     */
+    public static native long getAllocatedBytes(Thread thread);
+
+    /**
+     * Enables counting live objects by class during major collections, which adds some overhead to each collection.
+     * Always enabled when the collection log is.
+     */
+    public static native void setLiveHistogramEnabled(boolean enabled);
+
+    /**
+     * Returns the live objects by class from the last major collection with the histogram enabled, sorted by bytes
+     */
+    public static LiveClass[] getLiveHistogram() {
+        int size = 0;
+        while (true) {
+            Class<?>[] classes = new Class<?>[size];
+            long[] objects = new long[size];
+            long[] bytes = new long[size];
+            int count = copyLiveHistogram(classes, objects, bytes);
+            if (count > size) {
+                // The histogram grew from another collection, so retry with larger arrays
+                size = count;
+                continue;
+            }
+            LiveClass[] histogram = new LiveClass[count];
+            for (int i = 0; i < count; i++)
+                histogram[i] = new LiveClass(classes[i], objects[i], bytes[i]);
+            return histogram;
+        }
+    }
+
+    private static native int copyLiveHistogram(Class<?>[] classes, long[] objects, long[] bytes);
+
+    /**
+     * The live objects of a single class
+     */
+    public static final class LiveClass {
+        private final Class<?> type;
+        private final long objects;
+        private final long bytes;
+
+        private LiveClass(Class<?> type, long objects, long bytes) {
+            this.type = type;
+            this.objects = objects;
+            this.bytes = bytes;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public long getObjects() {
+            return objects;
+        }
+
+        /**
+         * Returns the bytes used by the live objects, including array data
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return objects + " objects (" + bytes + " bytes) of " + type.getName();
+        }
+    }
+}
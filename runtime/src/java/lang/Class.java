@@ -64,7 +64,7 @@ public final class Class<T> implements java.lang.reflect.Type {
     private boolean anonymous;
     private boolean synthetic;
     private long instanceOfCache;
-    private long interfaceCache;
+    private long itable;
 
     // Lazy-init fields start here
     private boolean initialized;
@@ -484,7 +484,7 @@ public final class Class<T> implements java.lang.reflect.Type {
     }
 
     public int getModifiers() {
-        return access;
+        return access & 0xFFFF; // Strip synthetic runtime flags
     }
 
     public boolean isMemberClass() {
@@ -25,7 +25,6 @@ package java.lang;
 
 import java.io.UnsupportedOperationException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Formatter;
 import java.util.IllegalFormatException;
@@ -51,26 +50,47 @@ public final class String implements java.lang.CharSequence, Comparable<String>
         }
     };
     
-    private static ArrayList<String> str = new ArrayList<String>();
     
+    static final byte LATIN1 = 0;
+    static final byte UTF16 = 1;
+
+    // UTF-16 chars, or null for compact strings
     private final char[] value;
 
+    // Latin-1 chars, one byte each, used instead of value whenever every char fits
+    private final byte[] latin1;
+
+    // Whether latin1 or value holds the chars
+    private final byte coder;
+
     private final int count;
 
     private int hashCode;
     
     // cached native string
     private long nativeString;
-    private static final char[] ZERO_CHAR = new char[0];
+    private static final byte[] ZERO_BYTE = new byte[0];
     
     /**
      * Initializes a newly created String object so that it represents an empty character sequence.
      */
     public String(){
-        value = ZERO_CHAR;
+        value = null;
+        latin1 = ZERO_BYTE;
+        coder = LATIN1;
         count = 0;
     }
 
+    /**
+     * Wraps Latin-1 chars without copying them
+     */
+    private String(byte[] latin1, int count) {
+        this.value = null;
+        this.latin1 = latin1;
+        this.coder = LATIN1;
+        this.count = count;
+    }
+
     public String(int[] codePoints, int offset, int count) {
         throw new UnsupportedOperationException();
     }
@@ -90,7 +110,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * JDK1.1
      */
     public String(byte[] bytes, int off, int len){
-        this(bytesToChars(bytes, off, len, "UTF-8"));
+        this(decode(bytes, off, len, "UTF-8"));
     }
 
     /**
@@ -100,7 +120,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * JDK1.1
      */
     public String(byte[] bytes, int off, int len, java.lang.String enc) throws java.io.UnsupportedEncodingException{
-        this(bytesToChars(bytes, off, len, enc));
+        this(decode(bytes, off, len, enc));
     }
     
     public String(byte[] bytes, java.nio.charset.Charset charset) throws java.io.UnsupportedEncodingException {
@@ -118,10 +138,20 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * JDK1.1
      */
     public String(byte[] bytes, java.lang.String enc) throws java.io.UnsupportedEncodingException{
-        this(bytesToChars(bytes, 0, bytes.length, enc));
+        this(decode(bytes, 0, bytes.length, enc));
     }
 
     public static native char[] bytesToChars(byte[] b, int off, int len, String encoding);
+
+    /**
+     * Decodes bytes straight into a compact string when they are all Latin-1, otherwise like bytesToChars
+     */
+    private static native String decode(byte[] b, int off, int len, String encoding);
+
+    /**
+     * Narrows chars to Latin-1, or returns null if any of them don't fit
+     */
+    private static native byte[] compress(char[] data, int offset, int length);
     
     /**
      * Allocates a new String so that it represents the sequence of characters currently contained in the character array argument. The contents of the character array are copied; subsequent modification of the character array does not affect the newly created string.
@@ -146,9 +176,18 @@ public final class String implements java.lang.CharSequence, Comparable<String>
         if ((offset | charCount) < 0 || charCount > data.length - offset) {
             throw failedBoundsCheck(data.length, offset, charCount);
         }
-        this.value = new char[charCount];
+        byte[] bytes = compress(data, offset, charCount);
+        if (bytes != null) {
+            this.value = null;
+            this.latin1 = bytes;
+            this.coder = LATIN1;
+        } else {
+            this.value = new char[charCount];
+            this.latin1 = null;
+            this.coder = UTF16;
+            System.arraycopy(data, offset, value, 0, charCount);
+        }
         this.count = charCount;
-        System.arraycopy(data, offset, value, 0, count);
     }
 
     /**
@@ -157,6 +196,8 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      */
     public String(java.lang.String value){
         this.value = value.value;
+        this.latin1 = value.latin1;
+        this.coder = value.coder;
         this.count = value.count;
     }
 
@@ -166,15 +207,11 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * - If buffer is null.
      */
     public String(java.lang.StringBuffer buffer){
-        this.count = buffer.length();
-        this.value = new char[count];
-        buffer.getChars(0, count, value, 0);
+        this(buffer.toString());
     }
     
     public String(java.lang.StringBuilder buffer) {
-        this.count = buffer.length();
-        this.value = new char[count];
-        buffer.getChars(0, count, value, 0);
+        this(buffer.toString());
     }
 
     /**
@@ -200,10 +237,13 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * @since      1.5
      */
     public int codePointAt(int index) {
-        if ((index < 0) || (index >= value.length)) {
+        if ((index < 0) || (index >= count)) {
             throw new StringIndexOutOfBoundsException(index);
         }
-        return Character.codePointAtImpl(value, index, value.length);
+        if (coder == LATIN1) {
+            return latin1[index] & 0xFF;
+        }
+        return Character.codePointAtImpl(value, index, count);
     }
 
     /**
@@ -230,9 +270,12 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      */
     public int codePointBefore(int index) {
         int i = index - 1;
-        if ((i < 0) || (i >= value.length)) {
+        if ((i < 0) || (i >= count)) {
             throw new StringIndexOutOfBoundsException(index);
         }
+        if (coder == LATIN1) {
+            return latin1[i] & 0xFF;
+        }
         return Character.codePointBeforeImpl(value, index, 0);
     }
 
@@ -258,9 +301,12 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * @since  1.5
      */
     public int codePointCount(int beginIndex, int endIndex) {
-        if (beginIndex < 0 || endIndex > value.length || beginIndex > endIndex) {
+        if (beginIndex < 0 || endIndex > count || beginIndex > endIndex) {
             throw new IndexOutOfBoundsException();
         }
+        if (coder == LATIN1) {
+            return endIndex - beginIndex;
+        }
         return Character.codePointCountImpl(value, beginIndex, endIndex - beginIndex);
     }
 
@@ -285,10 +331,17 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * @since 1.5
      */
     public int offsetByCodePoints(int index, int codePointOffset) {
-        if (index < 0 || index > value.length) {
+        if (index < 0 || index > count) {
             throw new IndexOutOfBoundsException();
         }
-        return Character.offsetByCodePointsImpl(value, 0, value.length,
+        if (coder == LATIN1) {
+            int result = index + codePointOffset;
+            if (result < 0 || result > count) {
+                throw new IndexOutOfBoundsException();
+            }
+            return result;
+        }
+        return Character.offsetByCodePointsImpl(value, 0, count,
             index, codePointOffset);
     }
 
@@ -296,6 +349,9 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * Returns the character at the specified index. An index ranges from 0 to length() - 1. The first character of the sequence is at index 0, the next at index 1, and so on, as for array indexing.
      */
     public final char charAt(int index) {
+        if (coder == LATIN1) {
+            return (char) (latin1[index] & 0xFF);
+        }
         return value[index];
     }
 
@@ -310,9 +366,19 @@ public final class String implements java.lang.CharSequence, Comparable<String>
             return 0;
         }
         int minL = Math.min(anotherString.length(), length());
+        if (coder == LATIN1 && anotherString.coder == LATIN1) {
+            byte[] bytes = latin1;
+            byte[] otherBytes = anotherString.latin1;
+            for(int iter = 0 ; iter < minL ; iter++) {
+                if(bytes[iter] != otherBytes[iter]) {
+                    return (bytes[iter] & 0xFF) - (otherBytes[iter] & 0xFF);
+                }
+            }
+            return length() - anotherString.length();
+        }
         for(int iter = 0 ; iter < minL ; iter++) {
-            char a = value[iter];
-            char b = anotherString.value[iter];
+            char a = charAt(iter);
+            char b = anotherString.charAt(iter);
             if(a != b) {
                 return a - b;
             }
@@ -352,9 +418,15 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * "cares".concat("s") returns "caress" "to".concat("get").concat("her") returns "together"
      */
     public java.lang.String concat(java.lang.String str){
+        if (coder == LATIN1 && str.coder == LATIN1) {
+            byte[] n = new byte[count + str.count];
+            System.arraycopy(latin1, 0, n, 0, count);
+            System.arraycopy(str.latin1, 0, n, count, str.count);
+            return new String(n, n.length);
+        }
         char[] n = new char[length() + str.length()];
-        System.arraycopy(value, 0, n, 0, count);
-        System.arraycopy(str.value, 0, n, count, str.count);
+        getChars(0, count, n, 0);
+        str.getChars(0, str.count, n, count);
         return new String(n); 
     }
 
@@ -365,14 +437,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
         if(suffix.length() > length()) {
             return false;
         }
-        int offset = suffix.length() - 1;
-        for(int iter = length() - 1 ; offset >= 0 ; iter--) {
-            if(value[iter] != suffix.value[offset]) {
-                return false;
-            }
-            offset--;
-        }
-        return true;
+        return regionMatches(length() - suffix.length(), suffix, 0, suffix.length());
     }
 
     /**
@@ -430,15 +495,10 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * The first character to be copied is at index srcBegin; the last character to be copied is at index srcEnd-1 (thus the total number of characters to be copied is srcEnd-srcBegin). The characters are copied into the subarray of dst starting at index dstBegin and ending at index:
      * dstbegin + (srcEnd-srcBegin) - 1
      */
-    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
-        for(int iter = srcBegin ; iter < srcEnd ; iter++) {
-            dst[dstBegin] = value[iter];
-            dstBegin++;
-        }
-    }
+    public native void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin);
 
     void getChars(char dst[], int dstBegin) {
-        System.arraycopy(value, 0, dst, dstBegin, value.length);
+        getChars(0, count, dst, dstBegin);
     }
 
     /**
@@ -489,6 +549,22 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * There is no restriction on the value of fromIndex. If it is negative, it has the same effect as if it were zero: this entire string may be searched. If it is greater than the length of this string, it has the same effect as if it were equal to the length of this string: -1 is returned.
      */
     public int indexOf(int ch, int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (coder == LATIN1) {
+            if (ch >>> 8 != 0) {
+                return -1;
+            }
+            byte b = (byte) ch;
+            byte[] bytes = latin1;
+            for(int iter = fromIndex ; iter < count ; iter++) {
+                if(bytes[iter] == b) {
+                    return iter;
+                }
+            }
+            return -1;
+        }
         for(int iter = fromIndex ; iter < count ; iter++) {
             if(value[iter] == ch) {
                 return iter;
@@ -503,33 +579,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * ) is true.
      */
     public int indexOf(java.lang.String string){
-        int start = 0;
-        int subCount = string.count;
-        int _count = count;
-        if (subCount > 0) {
-            if (subCount > _count) {
-                return -1;
-            }
-            char[] target = string.value;
-            char firstChar = target[0];
-            int end = subCount;
-            while (true) {
-                int i = indexOf(firstChar, start);
-                if (i == -1 || subCount + i > _count) {
-                    return -1; // handles subCount > count || start >= count
-                }
-                int o1 = i, o2 = 0;
-                char[] _value = value;
-                while (++o2 < end && _value[++o1] == target[o2]) {
-                    // Intentionally empty
-                }
-                if (o2 == end) {
-                    return i;
-                }
-                start = i + 1;
-            }
-        }
-        return start < _count ? start : _count;
+        return indexOf(string, 0);
     }
 
     /**
@@ -549,9 +599,8 @@ public final class String implements java.lang.CharSequence, Comparable<String>
             if (subCount + start > _count) {
                 return -1;
             }
-            char[] target = subString.value;
             int subOffset = 0;
-            char firstChar = target[subOffset];
+            char firstChar = subString.charAt(subOffset);
             int end = subOffset + subCount;
             while (true) {
                 int i = indexOf(firstChar, start);
@@ -559,8 +608,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
                     return -1; // handles subCount > count || start >= count
                 }
                 int o1 = i, o2 = subOffset;
-                char[] _value = value;
-                while (++o2 < end && _value[++o1] == target[o2]) {
+                while (++o2 < end && charAt(++o1) == subString.charAt(o2)) {
                     // Intentionally empty
                 }
                 if (o2 == end) {
@@ -579,14 +627,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * It follows that for any two strings s and t, s.intern()==t.intern() is true if and only if s.equals(t) is true.
      * All literal strings and string-valued constant expressions are interned. String literals are defined in Section 3.10.5 of the Java Language Specification
      */
-    public java.lang.String intern() {
-        int off = str.indexOf(this);
-        if(off > -1) {
-            return str.get(off);
-        }
-        str.add(this);
-        return this;
-    }
+    public native java.lang.String intern();
 
     /**
      * Returns the index within this string of the last occurrence of the specified character. That is, the index returned is the largest value
@@ -594,12 +635,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * ) == ch is true. The String is searched backwards starting at the last character.
      */
     public int lastIndexOf(int ch){
-        for(int iter = count - 1 ; iter >= 0 ; iter--) {
-            if(value[iter] == ch) {
-                return iter;
-            }
-        }
-        return -1; 
+        return lastIndexOf(ch, count - 1);
     }
 
     /**
@@ -608,13 +644,12 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      */
     public int lastIndexOf(int ch, int start){
         int _count = count;
-        char[] _value = value;
         if (start >= 0) {
             if (start >= _count) {
                 start = _count - 1;
             }
             for (int i = start; i >= 0; --i) {
-                if (_value[i] == ch) {
+                if (charAt(i) == ch) {
                     return i;
                 }
             }
@@ -661,9 +696,8 @@ public final class String implements java.lang.CharSequence, Comparable<String>
                     start = count - subCount;
                 }
                 // count and subCount are both >= 1
-                char[] target = subString.toCharArray();
                 int subOffset = 0;
-                char firstChar = target[subOffset];
+                char firstChar = subString.charAt(subOffset);
                 int end = subOffset + subCount;
                 while (true) {
                     int i = lastIndexOf(firstChar, start);
@@ -671,7 +705,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
                         return -1;
                     }
                     int o1 = i, o2 = subOffset;
-                    while (++o2 < end && value[(++o1)] == target[o2]) {
+                    while (++o2 < end && charAt(++o1) == subString.charAt(o2)) {
                         // Intentionally empty
                     }
                     if (o2 == end) {
@@ -724,10 +758,18 @@ public final class String implements java.lang.CharSequence, Comparable<String>
             return true;
         }
         int o1 = thisStart, o2 = start;
-        char[] value1 = value;
-        char[] value2 = string.value;
+        if (coder == LATIN1 && string.coder == LATIN1) {
+            byte[] value1 = latin1;
+            byte[] value2 = string.latin1;
+            for (int i = 0; i < length; ++i) {
+                if (value1[o1 + i] != value2[o2 + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
         for (int i = 0; i < length; ++i) {
-            if (value1[o1 + i] != value2[o2 + i]) {
+            if (charAt(o1 + i) != string.charAt(o2 + i)) {
                 return false;
             }
         }
@@ -754,10 +796,9 @@ public final class String implements java.lang.CharSequence, Comparable<String>
             return false;
         }
         int end = thisStart + length;
-        char[] target = string.value;
         while (thisStart < end) {
-            char c1 = value[thisStart++];
-            char c2 = target[start++];
+            char c1 = charAt(thisStart++);
+            char c2 = string.charAt(start++);
             if (c1 != c2 && foldCase(c1) != foldCase(c2)) {
                 return false;
             }
@@ -786,11 +827,27 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * "mesquite in your cellar".replace('e', 'o') returns "mosquito in your collar" "the war of baronets".replace('r', 'y') returns "the way of bayonets" "sparring with a purple porpoise".replace('p', 't') returns "starring with a turtle tortoise" "JonL".replace('q', 'x') returns "JonL" (no change)
      */
     public java.lang.String replace(char oldChar, char newChar){
-        char[] buffer = value;
+        if (coder == LATIN1) {
+            int idx = indexOf(oldChar);
+            if (idx < 0) {
+                return this;
+            }
+            if (newChar >>> 8 == 0) {
+                byte[] buffer = new byte[count];
+                System.arraycopy(latin1, 0, buffer, 0, count);
+                for (; idx < count; idx++) {
+                    if (buffer[idx] == (byte) oldChar) {
+                        buffer[idx] = (byte) newChar;
+                    }
+                }
+                return new String(buffer, count);
+            }
+        }
+        char[] buffer = coder == LATIN1 ? toCharArray() : value;
         int _count = count;
 
         int idx = 0;
-        boolean copied = false;
+        boolean copied = buffer != value;
         while (idx < _count) {
             if (buffer[idx] == oldChar) {
                 if (!copied) {
@@ -818,15 +875,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      * Tests if this string starts with the specified prefix beginning at the specified index.
      */
     public boolean startsWith(java.lang.String prefix, int toffset){
-        if(toffset + prefix.count > count) {
-            return false;
-        }
-        for(int iter = 0 ; iter < prefix.count ; iter++) {
-            if(prefix.value[iter] != value[iter + toffset]) {
-                return false;
-            }
-        }
-        return true; 
+        return regionMatches(toffset, prefix, 0, prefix.count);
     }
 
     /**
@@ -840,7 +889,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
         }
         if (start >= 0 && start <= count) {
             //return new String(offset + start, count - start, value);
-            return new String(value, start, count - start);
+            return copyRange(start, count - start);
         }
         throw new ArrayIndexOutOfBoundsException(start);
     }
@@ -858,7 +907,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
         // Fast range check.
         if (start >= 0 && start <= end && end <= count) {
             //return new String(offset + start, end - start, value);
-            return new String(value, start, end - start);
+            return copyRange(start, end - start);
         }
         throw new ArrayIndexOutOfBoundsException(start);
     }
@@ -868,17 +917,29 @@ public final class String implements java.lang.CharSequence, Comparable<String>
      */
     public char[] toCharArray(){
         char[] buffer = new char[count];
-        System.arraycopy(value, 0, buffer, 0, count);
+        getChars(0, count, buffer, 0);
         return buffer;
     }
 
+    /**
+     * Copies a range of chars into a new string, which is compact if the chars fit
+     */
+    private String copyRange(int start, int length) {
+        if (coder == LATIN1) {
+            byte[] bytes = new byte[length];
+            System.arraycopy(latin1, start, bytes, 0, length);
+            return new String(bytes, length);
+        }
+        return new String(value, start, length);
+    }
+
     /**
      * Converts all of the characters in this String to lower case.
      */
     public java.lang.String toLowerCase(){
         char[] c = new char[length()];
         for(int iter = 0 ; iter < count ; iter++) {
-            c[iter] = Character.toLowerCase(value[iter]);
+            c[iter] = Character.toLowerCase(charAt(iter));
         }
         return new String(c);
     }
@@ -900,7 +961,7 @@ public final class String implements java.lang.CharSequence, Comparable<String>
     public java.lang.String toUpperCase(){
         char[] c = new char[length()];
         for(int iter = 0 ; iter < count ; iter++) {
-            c[iter] = Character.toUpperCase(value[iter]);
+            c[iter] = Character.toUpperCase(charAt(iter));
         }
         return new String(c);
     }
@@ -921,17 +982,17 @@ public final class String implements java.lang.CharSequence, Comparable<String>
     public java.lang.String trim(){
         int start = 0, last = count - 1;
         int end = last;
-        while ((start <= end) && (value[start] <= ' ')) {
+        while ((start <= end) && (charAt(start) <= ' ')) {
             start++;
         }
-        while ((end >= start) && (value[end] <= ' ')) {
+        while ((end >= start) && (charAt(end) <= ' ')) {
             end--;
         }
         if (start == 0 && end == last) {
             return this;
         }
         //return new String(start, end - start + 1, value);
-        return new String(value, start, end - start + 1);
+        return copyRange(start, end - start + 1);
     }
 
     /**
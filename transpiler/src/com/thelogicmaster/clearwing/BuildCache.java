@@ -0,0 +1,166 @@
+package com.thelogicmaster.clearwing;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A record of the last transpile into an output directory, so that repeating it with unchanged inputs can skip parsing and
+ * generating classes entirely. Generated classes depend on whole-program analyses like devirtualization and escape analysis,
+ * so the output is only reused when the transpiler build, the config, the profile, and every input class file hash to the
+ * same key, and every generated file still has the size and modification time that it was written with.
+ */
+public class BuildCache {
+
+	private static final String FILENAME = "build-cache.txt";
+
+	private final File outputDir;
+	private final List<ClassFile> files;
+	private final String key;
+	private final HashMap<String, String> cachedHashes = new HashMap<>();
+	private final ArrayList<Output> cachedOutputs = new ArrayList<>();
+	private String cachedKey;
+
+	public BuildCache(File outputDir, List<ClassFile> files, List<String> jniIncludes, TranspilerConfig config) throws IOException {
+		this.outputDir = outputDir;
+		this.files = files;
+
+		String transpilerHash = getTranspilerHash();
+		if (transpilerHash == null) {
+			key = null;
+			return;
+		}
+		MessageDigest digest = Utils.createDigest();
+		update(digest, transpilerHash);
+		update(digest, config.toString());
+		if (config.getProfile() != null && !config.getProfile().isEmpty() && new File(config.getProfile()).isFile())
+			update(digest, Utils.hash(Files.readAllBytes(Path.of(config.getProfile()))));
+		for (String include : jniIncludes)
+			update(digest, include);
+		for (ClassFile file : files)
+			update(digest, file.getName() + " " + file.getHash());
+		key = HexFormat.of().formatHex(digest.digest());
+
+		read();
+	}
+
+	private void read() throws IOException {
+		File file = new File(outputDir, FILENAME);
+		if (!file.isFile())
+			return;
+		try {
+			for (String line : Files.readAllLines(file.toPath())) {
+				if (line.isBlank() || line.startsWith("#"))
+					continue;
+				String[] parts = line.split(" ", 4);
+				switch (parts[0]) {
+					case "key" -> cachedKey = parts[1];
+					case "class" -> cachedHashes.put(parts[1], parts[2]);
+					case "output" -> cachedOutputs.add(new Output(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+					default -> throw new TranspilerException("Unknown build cache entry: " + line);
+				}
+			}
+		} catch (RuntimeException e) {
+			// A corrupted cache is just a miss
+			cachedKey = null;
+			cachedHashes.clear();
+			cachedOutputs.clear();
+		}
+	}
+
+	/**
+	 * Whether the output directory already holds the output of transpiling the same inputs
+	 */
+	public boolean isValid() {
+		if (key == null || !key.equals(cachedKey))
+			return false;
+		for (Output output : cachedOutputs) {
+			File file = new File(outputDir, output.path);
+			if (file.length() != output.size || file.lastModified() != output.modified)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of input class files that are unchanged since the cached transpile
+	 */
+	public int getUnchangedCount() {
+		int count = 0;
+		for (ClassFile file : files)
+			if (file.getHash().equals(cachedHashes.get(file.getName())))
+				count++;
+		return count;
+	}
+
+	/**
+	 * Get the number of generated files that the cached transpile wrote
+	 */
+	public int getOutputCount() {
+		return cachedOutputs.size();
+	}
+
+	/**
+	 * Removes the cache before generating new output, so an interrupted transpile can't leave a stale cache behind
+	 */
+	public void invalidate() throws IOException {
+		Files.deleteIfExists(new File(outputDir, FILENAME).toPath());
+	}
+
+	/**
+	 * Records the generated files once a transpile finishes
+	 */
+	public void write(Collection<File> outputs) throws IOException {
+		if (key == null)
+			return;
+		StringBuilder builder = new StringBuilder();
+		builder.append("# Generated by the transpiler\n\n");
+		builder.append("key ").append(key).append("\n");
+		for (ClassFile file : files)
+			builder.append("class ").append(file.getName()).append(" ").append(file.getHash()).append("\n");
+		for (File output : outputs)
+			builder.append("output ").append(output.length()).append(" ").append(output.lastModified()).append(" ")
+					.append(outputDir.toPath().relativize(output.toPath())).append("\n");
+		Utils.writeFile(new File(outputDir, FILENAME), builder.toString());
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+	}
+
+	/**
+	 * Hashes the transpiler's own jar or class directory, so that any change to the transpiler invalidates the cache,
+	 * or returns null if its location is unknown
+	 */
+	private static String getTranspilerHash() throws IOException {
+		CodeSource source = BuildCache.class.getProtectionDomain().getCodeSource();
+		if (source == null)
+			return null;
+		Path location;
+		try {
+			location = Paths.get(source.getLocation().toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+		MessageDigest digest = Utils.createDigest();
+		try (Stream<Path> stream = Files.walk(location)) {
+			for (Path path : stream.filter(Files::isRegularFile).sorted().toList()) {
+				update(digest, location.relativize(path).toString());
+				digest.update(Files.readAllBytes(path));
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private record Output(String path, long size, long modified) {
+	}
+}
@@ -1,6 +1,10 @@
 package com.thelogicmaster.clearwing;
 
 import com.thelogicmaster.clearwing.bytecode.Instruction;
+import com.thelogicmaster.clearwing.bytecode.LabelInstruction;
+import com.thelogicmaster.clearwing.bytecode.LineNumberInstruction;
+import com.thelogicmaster.clearwing.bytecode.MethodInstruction;
+import com.thelogicmaster.clearwing.bytecode.VariableInstruction;
 import org.objectweb.asm.Opcodes;
 
 import java.util.*;
@@ -52,6 +56,7 @@ public class BytecodeClass {
 	private BytecodeClass superClass;
 	private BytecodeClass[] interfaceClasses;
 	private boolean jni;
+	private final ArrayList<String> profileCounters = new ArrayList<>();
 
 	public BytecodeClass (String name, String superName, String[] interfaces, int access) {
 		this.originalName = name;
@@ -126,6 +131,57 @@ public class BytecodeClass {
 		return false;
 	}
 
+	/**
+	 * Whether instances need to be queued for finalization, meaning the nearest finalize() override is native or does more than call super.finalize()
+	 */
+	public boolean needsFinalization() {
+		for (BytecodeClass clazz = this; clazz != null && !"java/lang/Object".equals(clazz.name); clazz = clazz.superClass) {
+			BytecodeMethod finalizer = null;
+			for (BytecodeMethod method: clazz.methods)
+				if (method.isFinalizer())
+					finalizer = method;
+			if (finalizer == null)
+				continue;
+			if (!finalizer.hasBody())
+				return true;
+			boolean callsSuper = false;
+			List<Instruction> instructions = new ArrayList<>();
+			for (Instruction instruction: finalizer.getInstructions())
+				if (instruction instanceof InstructionGroup group)
+					instructions.addAll(group.getInstructions());
+				else
+					instructions.add(instruction);
+			for (Instruction instruction: instructions) {
+				if (instruction instanceof LabelInstruction || instruction instanceof LineNumberInstruction || instruction.getOpcode() == Opcodes.RETURN)
+					continue;
+				if (instruction instanceof VariableInstruction variable && variable.getOpcode() == Opcodes.ALOAD && variable.getLocal() == 0)
+					continue;
+				if (instruction instanceof MethodInstruction invoke && invoke.getOpcode() == Opcodes.INVOKESPECIAL && "finalize".equals(invoke.getOriginalName())) {
+					callsSuper = true;
+					continue;
+				}
+				return true;
+			}
+			if (!callsSuper)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether initializing this class and its superclasses only assigns primitive constants, so it has no observable effects
+	 */
+	public boolean hasTrivialInitializer() {
+		if ("java/lang/Object".equals(name))
+			return true;
+		if (hasStaticInitializer() || superClass == null)
+			return false;
+		for (BytecodeField field : fields)
+			if (field.isStatic() && field.isFinal() && field.getInitialValue() instanceof String)
+				return false;
+		return superClass.hasTrivialInitializer();
+	}
+
 	public boolean hasStaticInitializer() {
 		for (BytecodeMethod method: methods)
 			if (method.isStaticInitializer())
@@ -185,6 +241,14 @@ public class BytecodeClass {
 			dependencies.add(method.getOwner().name);
 	}
 
+	/**
+	 * Adds a counter to the class's profile counters when instrumenting, returning the C++ expression for it
+	 */
+	public String addProfileCounter(String kind, BytecodeMethod method, int site) {
+		profileCounters.add("{ ProfileKind::" + kind + ", \"" + Profile.getKey(method) + "\", " + site + " }");
+		return "profile_" + qualifiedName + "[" + (profileCounters.size() - 1) + "]";
+	}
+
 	/**
 	 * Returns a set of cached dependencies (Does not perform collection)
 	 */
@@ -267,6 +331,8 @@ public class BytecodeClass {
 	}
 
 	public void generateHeader(StringBuilder builder, TranspilerConfig config, HashMap<String, BytecodeClass> classMap) {
+		profileCounters.clear();
+
 		builder.append("#ifndef HEADER_").append(qualifiedName).append("\n");
 		builder.append("#define HEADER_").append(qualifiedName).append("\n\n");
 
@@ -303,7 +369,10 @@ public class BytecodeClass {
 
 		builder.append("extern Class class_").append(qualifiedName).append(";\n\n");
 
-		builder.append("extern bool initialized_").append(qualifiedName).append(";\n\n");
+		builder.append("extern std::atomic_bool initialized_").append(qualifiedName).append(";\n\n");
+
+		if (config.hasProfiling())
+			builder.append("extern ProfileCounter profile_").append(qualifiedName).append("[];\n\n");
 
 		// Static fields
 		for (BytecodeField field : fields) {
@@ -332,11 +401,13 @@ public class BytecodeClass {
 			}
 		builder.append("\n");
 
-		builder.append("void mark_").append(qualifiedName).append("(jobject object, jint mark, jint depth);\n");
+		builder.append("void mark_").append(qualifiedName).append("(jobject object, jint mark);\n");
 		builder.append("void clinit_").append(qualifiedName).append("(jcontext ctx);\n");
 
 		for (BytecodeMethod method : methods)
-			if (!method.isStaticInitializer() && (!method.isAbstract() || isAnnotationImpl())) {
+			if (method.isFrameless())
+				appendFramelessMethod(builder, config, method);
+			else if (!method.isStaticInitializer() && (!method.isAbstract() || isAnnotationImpl())) {
 				appendMethodDeclaration(builder, method);
 				builder.append(";\n");
 			}
@@ -357,7 +428,9 @@ public class BytecodeClass {
 
 		builder.append("extern \"C\" {\n\n");
 
-		builder.append("bool initialized_").append(qualifiedName).append(";\n\n");
+		// Classes that only assign constants during initialization are initialized statically
+		boolean trivialInitializer = hasTrivialInitializer();
+		builder.append("std::atomic_bool initialized_").append(qualifiedName).append(trivialInitializer ? "{ true }" : "").append(";\n\n");
 
 		// Static fields
 		for (BytecodeField field : fields) {
@@ -365,34 +438,29 @@ public class BytecodeClass {
 				continue;
 			if (field.isVolatile())
 				builder.append("volatile ");
-			builder.append(field.getType().getCppType()).append(" ").append(field.getName()).append(";\n");
+			builder.append(field.getType().getCppType()).append(" ").append(field.getName());
+			if (trivialInitializer && field.isFinal() && field.getInitialValue() != null)
+				builder.append(" = ").append(Utils.getObjectValue(field.getInitialValue()));
+			builder.append(";\n");
 		}
 		builder.append("\n");
 
-		// Mark function
-		builder.append("void mark_").append(qualifiedName).append("(jobject object, jint mark, jint depth) {\n");
+		// Mark function (Only pushes children onto the mark stack, object marking is done by the GC when pushing)
+		builder.append("void mark_").append(qualifiedName).append("(jobject object, jint mark) {\n");
 		builder.append("\tif (!object) {\n");
 		for (BytecodeField field : fields)
 			if (field.isStatic() && !field.getType().isPrimitive())
 				builder.append("\t\tif (").append(field.getName()).append(")\n")
-						.append("\t\t\t((gc_mark_ptr) ((jclass) ((jobject) ").append(field.getName()).append(")->clazz)->markFunction)((jobject) ").append(field.getName()).append(", mark, depth + 1);\n");
-		builder.append("\t\treturn;\n");
-		builder.append("\t}\n");
-		builder.append("\tif (depth > GC_DEPTH_ALWAYS && (object->gcMark < GC_MARK_START || object->gcMark == mark))\n");
-		builder.append("\t\treturn;\n");
-		builder.append("\tif (depth > MAX_GC_MARK_DEPTH) {\n");
-		builder.append("\t\tmarkDeepObject(object);\n");
+						.append("\t\t\tmarkObject((jobject) ").append(field.getName()).append(", mark);\n");
 		builder.append("\t\treturn;\n");
 		builder.append("\t}\n");
 		if (superClass != null && superClass != OBJECT_CLASS)
-			builder.append("\tmark_").append(qualifiedSuperName).append("(object, mark, depth);\n");
-		builder.append("\tif (object->gcMark >= GC_MARK_START)\n");
-		builder.append("\t\tobject->gcMark = mark;\n");
+			builder.append("\tmark_").append(qualifiedSuperName).append("(object, mark);\n");
 		builder.append("\tauto self = (").append(qualifiedName).append(" *) object;\n");
 		for (BytecodeField field : fields)
 			if (!field.isStatic() && !field.getType().isPrimitive())
 				builder.append("\tif (self->").append(field.getName()).append(")\n")
-						.append("\t\t((gc_mark_ptr) ((jclass) ((jobject) self->").append(field.getName()).append(")->clazz)->markFunction)((jobject) self->").append(field.getName()).append(", mark, depth + 1);\n");
+						.append("\t\tmarkObject((jobject) self->").append(field.getName()).append(", mark);\n");
 		builder.append("}\n\n");
 
 		// Default static initializer
@@ -429,7 +497,7 @@ public class BytecodeClass {
 				continue;
 			}
 			
-			if (method.isNative() || method.isAbstract() || method.isIntrinsic())
+			if (method.isNative() || method.isAbstract() || method.isIntrinsic() || method.isFrameless())
 				continue;
 
 			appendMethodDeclaration(builder, method);
@@ -440,12 +508,8 @@ public class BytecodeClass {
 			else if (!method.isStatic())
 				builder.append("\tNULL_CHECK(self);\n");
 
-			int stackSize = method.getStackSize() + method.getLocalCount();
-			if (stackSize > 0) {
-				builder.append("\tjtype frame[").append(stackSize).append("];\n");
-				builder.append("\tauto stack = &frame[").append(method.getLocalCount()).append("];\n");
-				builder.append("\tjtype *sp = stack;\n");
-			}
+			int stackSize = method.getFrameSize();
+			appendFrameDeclarations(builder, config, method);
 			
 			if (!method.getLocations().isEmpty()) {
 				builder.append("\tstatic constexpr FrameLocation frameLocations[] { ");
@@ -456,6 +520,10 @@ public class BytecodeClass {
 				builder.append("};\n");
 			}
 
+			StackMap stackMap = stackSize > 0 ? new StackMap(method) : null;
+			if (stackMap != null)
+				stackMap.build(builder);
+
 			if (!method.getExceptionFrames().isEmpty()) {
 				builder.append("\tstatic constexpr ExceptionScope exceptionScopes[] { ");
 				for (int i = 0; i < method.getExceptionFrames().size(); i++) {
@@ -469,6 +537,8 @@ public class BytecodeClass {
 					.append(method.getOriginalName()).append("\", ").append(stackSize)
 					.append(", ").append(method.getLocations().size()).append(", ").append(method.getLocations().isEmpty() ? "nullptr" : "frameLocations")
 					.append(", ").append(method.getExceptionFrames().size()).append(", ").append(method.getExceptionFrames().isEmpty() ? "nullptr" : "exceptionScopes")
+					.append(", ").append(stackMap == null ? "nullptr" : "frameReferenceMaps")
+					.append(", ").append(stackMap == null || !stackMap.hasAmbiguousSlots() ? "nullptr" : "frameAmbiguousMaps")
 					.append(" };\n");
 			
 			builder.append("\tFrameGuard frameRef{ ctx, &frameInfo, ")
@@ -489,26 +559,24 @@ public class BytecodeClass {
 			if (method.isStatic() || method.isConstructor())
 				builder.append("\tCLINIT(").append(qualifiedName).append(");\n");
 
+			if (config.hasProfiling())
+				builder.append("\tprofileCount(").append(addProfileCounter("Method", method, 0)).append(");\n");
+
 			if (!method.getExceptionFrames().isEmpty()) {
 				builder.append("\n\tMETHOD_EXCEPTION_HANDLING_START(\n");
 				for (int i = 0; i < method.getExceptionFrames().size(); i++) {
 					BytecodeMethod.ExceptionFrame frame = method.getExceptionFrames().get(i);
-					builder.append("\t\tcase ").append(i + 1).append(": goto label_").append(frame.getHandlerLabel()).append(";\n");
+					builder.append("\t\tcase ").append(i + 1).append(": ");
+					if (config.hasProfiling())
+						builder.append("profileCount(").append(addProfileCounter("Handler", method, i)).append("); ");
+					if (frame.isCold())
+						builder.append("CPP_UNLIKELY ");
+					builder.append("goto label_").append(frame.getHandlerLabel()).append(";\n");
 				}
 				builder.append("\t);\n");
 			}
 			
-			// Set locals from parameters
-			if (method.getLocalCount() > 0) {
-				if (!method.isStatic())
-					builder.append("\tframe[0].o = self;\n");
-				for (int i = 0, j = method.isStatic() ? 0 : 1; i < method.getSignature().getParamTypes().length; i++, j++) {
-					TypeVariants paramType = method.getSignature().getParamTypes()[i].getBasicType();
-					builder.append("\tframe[").append(j).append("].").append(paramType.getStackName()).append(" = param").append(i).append(";\n");
-					if (paramType.isWide())
-						j++;
-				}
-			}
+			appendParameterLocals(builder, method);
 
 			for (Instruction instruction : method.getInstructions())
 				instruction.appendUnoptimized(builder, config);
@@ -536,7 +604,7 @@ public class BytecodeClass {
 		}
 
 		if (hasAnnotations()) {
-			builder.append("static void initAnnotations(jcontext ctx) {\n");
+			builder.append("static void initAnnotations_").append(qualifiedName).append("(jcontext ctx) {\n");
 			builder.append("\tauto &clazz = class_").append(qualifiedName).append(";\n");
 			builder.append("\tauto fields = (java_lang_reflect_Field **) ((jarray) clazz.fields)->data;\n");
 			builder.append("\tauto methods = (java_lang_reflect_Method **) ((jarray) clazz.methods)->data;\n");
@@ -606,7 +674,7 @@ public class BytecodeClass {
 		}
 
 		if (!vtable.isEmpty()) {
-			builder.append("static VtableEntry vtableEntries[] {\n");
+			builder.append("static VtableEntry vtableEntries_").append(qualifiedName).append("[] {\n");
 			for (BytecodeMethod method : vtable)
 				builder.append("\t{ \"").append(method.getOriginalName()).append("\", \"").append(method.getDesc()).append("\" },\n");
 			builder.append("};\n\n");
@@ -614,7 +682,7 @@ public class BytecodeClass {
 
 		// Interfaces list
 		if (interfaces.length > 0) {
-			builder.append("static jclass interfaces").append("[] { ");
+			builder.append("static jclass interfaces_").append(qualifiedName).append("[] { ");
 			for (String interfaceName : interfaces)
 				builder.append("&class_").append(Utils.getQualifiedClassName(interfaceName)).append(", ");
 			builder.append("};\n\n");
@@ -622,7 +690,7 @@ public class BytecodeClass {
 
 		// Inner class list
 		if (!innerClassNames.isEmpty()) {
-			builder.append("static jclass innerClasses").append("[] {\n");
+			builder.append("static jclass innerClasses_").append(qualifiedName).append("[] {\n");
 			for (String innerName : innerClassNames)
 				builder.append("\t&class_").append(Utils.getQualifiedClassName(innerName)).append(",\n");
 			builder.append("};\n\n");
@@ -630,7 +698,7 @@ public class BytecodeClass {
 
 		// Field metadata
 		if (!fields.isEmpty()) {
-			builder.append("static FieldMetadata fields").append("[] {\n");
+			builder.append("static FieldMetadata fields_").append(qualifiedName).append("[] {\n");
 			for (BytecodeField field : fields) {
 				builder.append("\t{ \"").append(field.getOriginalName()).append("\", ").append(field.getType().generateClassFetch());
 				if (field.isStatic())
@@ -644,7 +712,7 @@ public class BytecodeClass {
 
 		// Method metadata
 		if (!methods.isEmpty()) {
-			builder.append("static MethodMetadata methods").append("[] {\n");
+			builder.append("static MethodMetadata methods_").append(qualifiedName).append("[] {\n");
 			for (BytecodeMethod method : methods) {
 				builder.append("\t{ \"").append(method.getOriginalName()).append("\"");
 				if (method.isAbstract())
@@ -667,28 +735,37 @@ public class BytecodeClass {
 		builder.append("\t\t.size = sizeof(").append(qualifiedName).append("),\n");
 		builder.append("\t\t.classVtable = (intptr_t) vtable_").append(qualifiedName).append(",\n");
 		builder.append("\t\t.staticInitializer = (intptr_t) clinit_").append(qualifiedName).append(",\n");
-		builder.append("\t\t.annotationInitializer = (intptr_t) ").append(hasAnnotations() ? "initAnnotations" : "nullptr").append(",\n");
+		builder.append("\t\t.annotationInitializer = (intptr_t) ").append(hasAnnotations() ? "initAnnotations_" + qualifiedName : "nullptr").append(",\n");
 		builder.append("\t\t.markFunction = (intptr_t) mark_").append(qualifiedName).append(",\n");
 		builder.append("\t\t.primitive = false,\n");
 		builder.append("\t\t.arrayDimensions = 0,\n");
 		builder.append("\t\t.componentClass = (intptr_t) nullptr,\n");
 		builder.append("\t\t.outerClass = (intptr_t) ").append(outerClassName == null ? "nullptr" : "&class_" + Utils.getQualifiedClassName(outerClassName)).append(",\n");
 		builder.append("\t\t.innerClassCount = ").append(innerClassNames.size()).append(",\n");
-		builder.append("\t\t.nativeInnerClasses = (intptr_t) ").append(innerClassNames.isEmpty() ? "nullptr" : "innerClasses").append(",\n");
-		builder.append("\t\t.access = ").append(access).append(",\n");
+		builder.append("\t\t.nativeInnerClasses = (intptr_t) ").append(innerClassNames.isEmpty() ? "nullptr" : "innerClasses_" + qualifiedName).append(",\n");
+		builder.append("\t\t.access = ").append(access).append(needsFinalization() ? " | CLASS_FINALIZABLE" : "").append(",\n");
 		builder.append("\t\t.interfaceCount = ").append(interfaces.length).append(",\n");
-		builder.append("\t\t.nativeInterfaces = (intptr_t) ").append(interfaces.length == 0 ? "nullptr" : "interfaces").append(",\n");
+		builder.append("\t\t.nativeInterfaces = (intptr_t) ").append(interfaces.length == 0 ? "nullptr" : "interfaces_" + qualifiedName).append(",\n");
 		builder.append("\t\t.fieldCount = ").append(fields.size()).append(",\n");
-		builder.append("\t\t.nativeFields = (intptr_t) ").append(fields.isEmpty() ? "nullptr" : "fields").append(",\n");
+		builder.append("\t\t.nativeFields = (intptr_t) ").append(fields.isEmpty() ? "nullptr" : "fields_" + qualifiedName).append(",\n");
 		builder.append("\t\t.methodCount = ").append(methods.size()).append(",\n");
-		builder.append("\t\t.nativeMethods = (intptr_t) ").append(methods.isEmpty() ? "nullptr" : "methods").append(",\n");
+		builder.append("\t\t.nativeMethods = (intptr_t) ").append(methods.isEmpty() ? "nullptr" : "methods_" + qualifiedName).append(",\n");
 		builder.append("\t\t.vtableSize = ").append(vtable.size()).append(",\n");
-		builder.append("\t\t.vtableEntries = (intptr_t) ").append(vtable.isEmpty() ? "nullptr" : "vtableEntries").append(",\n");
+		builder.append("\t\t.vtableEntries = (intptr_t) ").append(vtable.isEmpty() ? "nullptr" : "vtableEntries_" + qualifiedName).append(",\n");
 		builder.append("\t\t.anonymous = ").append(isAnonymous()).append(",\n");
 		builder.append("\t\t.synthetic = ").append(isSynthetic()).append(",\n");
 		builder.append("};\n");
 		builder.append("static bool registered_").append(qualifiedName).append(" = registerClass(&class_").append(qualifiedName).append(");\n\n");
 
+		if (!profileCounters.isEmpty()) {
+			builder.append("ProfileCounter profile_").append(qualifiedName).append("[] {\n");
+			for (String counter : profileCounters)
+				builder.append("\t").append(counter).append(",\n");
+			builder.append("};\n");
+			builder.append("static bool profiled_").append(qualifiedName).append(" = registerProfile(profile_").append(qualifiedName)
+					.append(", ").append(profileCounters.size()).append(");\n\n");
+		}
+
 		builder.append("}\n\n");
 	}
 
@@ -713,16 +790,61 @@ public class BytecodeClass {
 		builder.append(")");
 	}
 
+	private void appendFrameDeclarations(StringBuilder builder, TranspilerConfig config, BytecodeMethod method) {
+		int stackSize = method.getFrameSize();
+		if (stackSize > 0) {
+			builder.append("\tjtype frame[").append(stackSize).append("];\n");
+			builder.append("\tauto stack = &frame[").append(method.getLocalCount()).append("];\n");
+			builder.append("\tjtype *sp = stack;\n");
+		}
+
+		method.setTypedLocals(config.useTypedLocals());
+		if (method.hasTypedLocals())
+			for (Map.Entry<String, String> local : method.collectTypedLocals().entrySet())
+				builder.append("\t").append(local.getValue()).append(" ").append(local.getKey()).append("{};\n");
+	}
+
+	private void appendParameterLocals(StringBuilder builder, BytecodeMethod method) {
+		if (method.getLocalCount() == 0)
+			return;
+		if (!method.isStatic())
+			builder.append("\tframe[0].o = self;\n");
+		for (int i = 0, j = method.isStatic() ? 0 : 1; i < method.getSignature().getParamTypes().length; i++, j++) {
+			TypeVariants paramType = method.getSignature().getParamTypes()[i].getBasicType();
+			builder.append("\t").append(method.getLocalExpression(j, paramType)).append(" = param").append(i).append(";\n");
+			if (paramType.isWide())
+				j++;
+		}
+	}
+
+	/**
+	 * Leaf methods can't call out or loop, so the frame is never visible to the GC or stack traces and is left unregistered
+	 */
+	private void appendFramelessMethod(StringBuilder builder, TranspilerConfig config, BytecodeMethod method) {
+		builder.append("inline ");
+		appendMethodDeclaration(builder, method);
+		builder.append(" {\n");
+		if (!method.isStatic())
+			builder.append("\tNULL_CHECK(self);\n");
+		if (config.hasProfiling())
+			builder.append("\tprofileCount(").append(addProfileCounter("Method", method, 0)).append(");\n");
+		appendFrameDeclarations(builder, config, method);
+		appendParameterLocals(builder, method);
+		for (Instruction instruction : method.getInstructions())
+			instruction.appendUnoptimized(builder, config);
+		builder.append("}\n");
+	}
+
 	private void appendStaticInitializerCode(StringBuilder builder) {
 		// Thread-safe class initialization with proper locking to prevent race conditions
 		builder.append("\tstatic std::atomic<int> initState{0}; // 0=uninit, 1=initializing, 2=initialized\n");
-		builder.append("\tstatic std::mutex initMutex;\n");
+		builder.append("\tstatic std::recursive_mutex initMutex;\n");
 		builder.append("\t\n");
 		builder.append("\t// Check if already initialized (fast path)\n");
-		builder.append("\tif (initState.load() == 2) return;\n");
+		builder.append("\tif (initState.load(std::memory_order_acquire) == 2) return;\n");
 		builder.append("\t\n");
-		builder.append("\t// Acquire lock for initialization\n");
-		builder.append("\tstd::lock_guard<std::mutex> lock(initMutex);\n");
+		builder.append("\t// Acquire lock for initialization, which the initializing thread may re-enter\n");
+		builder.append("\tstd::lock_guard<std::recursive_mutex> lock(initMutex);\n");
 		builder.append("\t\n");
 		builder.append("\t// Double-check pattern - another thread may have initialized while we waited\n");
 		builder.append("\tif (initState.load() == 2) return;\n");
@@ -734,24 +856,16 @@ public class BytecodeClass {
 		builder.append("\t\treturn;\n");
 		builder.append("\t}\n");
 		builder.append("\t\n");
-		builder.append("\t// Mark as initializing\n");
+		builder.append("\t// Mark as initializing, and as fully initialized only once the initializer returns (Or reset if it throws)\n");
 		builder.append("\tinitState.store(1);\n");
+		builder.append("\tClassInitializationGuard initGuard{ initState, initialized_").append(qualifiedName).append(" };\n");
 		builder.append("\t\n");
-		builder.append("\ttry {\n");
 		if (superClass != null)
-			builder.append("\t\tCLINIT(").append(superClass.qualifiedName).append(");\n");
+			builder.append("\tCLINIT(").append(superClass.qualifiedName).append(");\n");
 		// Initialize static final fields with constant values
 		for (BytecodeField field: fields)
 			if (field.isStatic() && field.isFinal() && field.getInitialValue() != null)
-				builder.append("\t\t").append(field.getName()).append(" = ").append(Utils.getObjectValue(field.getInitialValue())).append(";\n");
-		builder.append("\t\t\n");
-		builder.append("\t\t// Mark as fully initialized\n");
-		builder.append("\t\tinitState.store(2);\n");
-		builder.append("\t} catch (...) {\n");
-		builder.append("\t\t// Reset state on initialization failure\n");
-		builder.append("\t\tinitState.store(0);\n");
-		builder.append("\t\tthrow;\n");
-		builder.append("\t}\n");
+				builder.append("\t").append(field.getName()).append(" = ").append(Utils.getObjectValue(field.getInitialValue())).append(";\n");
 	}
 
 	/**
@@ -3,6 +3,7 @@ package com.thelogicmaster.clearwing;
 import com.thelogicmaster.clearwing.bytecode.Instruction;
 import com.thelogicmaster.clearwing.bytecode.LabelInstruction;
 import com.thelogicmaster.clearwing.bytecode.LineNumberInstruction;
+import com.thelogicmaster.clearwing.bytecode.LocalInstruction;
 import com.thelogicmaster.clearwing.bytecode.TryInstruction;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
@@ -31,6 +32,11 @@ public class BytecodeMethod {
 	private final ArrayList<ExceptionFrame> exceptionFrames = new ArrayList<>();
 	private boolean intrinsic;
 	private boolean generated;
+	private int callSiteCount;
+	private int profileSiteCount;
+	private int stackObjectSlots;
+	private boolean typedLocals;
+	private boolean frameless;
 
 	public BytecodeMethod (BytecodeClass clazz, String name, int access, String desc, String signature, String[] exceptions) {
 		this.clazz = clazz;
@@ -186,6 +192,29 @@ public class BytecodeMethod {
 		return defaultLine;
 	}
 
+	/**
+	 * Allocates a unique index for a call site cache in this method
+	 */
+	public int allocateCallSite() {
+		return callSiteCount++;
+	}
+
+	/**
+	 * Allocates an index for a profiled site in this method, which is stable as long as the bytecode doesn't change
+	 */
+	public int allocateProfileSite() {
+		return profileSiteCount++;
+	}
+
+	/**
+	 * Allocates frame slots after the operand stack to store a non-escaping object, returning the first slot
+	 */
+	public int allocateStackObject(int slots) {
+		int first = stackSize + localCount + stackObjectSlots;
+		stackObjectSlots += slots;
+		return first;
+	}
+
 	public void addAnnotation(BytecodeAnnotation annotation) {
 		annotations.add(annotation);
 	}
@@ -255,6 +284,66 @@ public class BytecodeMethod {
 		return localCount;
 	}
 
+	/**
+	 * Store primitive locals in typed C++ locals instead of the frame, so the C++ compiler can keep them in registers
+	 */
+	public void setTypedLocals(boolean typedLocals) {
+		this.typedLocals = typedLocals;
+	}
+
+	public boolean hasTypedLocals() {
+		return typedLocals;
+	}
+
+	/**
+	 * Mark as a leaf method that is generated inline in the class header without a frame record
+	 */
+	public void markFrameless() {
+		frameless = true;
+	}
+
+	public boolean isFrameless() {
+		return frameless;
+	}
+
+	/**
+	 * Returns the C++ expression for a local, which is a frame slot unless it's a primitive with typed locals enabled.
+	 * The bytecode verifier guarantees a load of a type reads a store of the same type, so each slot and type pair is a separate variable.
+	 */
+	public String getLocalExpression(int local, TypeVariants type) {
+		if (typedLocals && type != TypeVariants.OBJECT)
+			return type.getStackName() + "local" + local;
+		return "frame[" + local + "]." + type.getStackName();
+	}
+
+	/**
+	 * Collects the typed C++ locals used by the method, including primitive parameters, as a map of names to C++ types
+	 */
+	public TreeMap<String, String> collectTypedLocals() {
+		TreeMap<String, String> locals = new TreeMap<>();
+		for (int i = 0, local = isStatic() ? 0 : 1; i < methodType.getParamTypes().length; i++, local++) {
+			TypeVariants type = methodType.getParamTypes()[i].getBasicType();
+			if (type != TypeVariants.OBJECT)
+				locals.put(getLocalExpression(local, type), type.getArithmeticType());
+			if (type.isWide())
+				local++;
+		}
+		for (Instruction instruction : instructions) {
+			List<Instruction> inner = instruction instanceof InstructionGroup group ? group.getInstructions() : List.of(instruction);
+			for (Instruction child : inner)
+				if (child instanceof LocalInstruction localInstruction && localInstruction.getLocalType() != TypeVariants.OBJECT)
+					locals.put(getLocalExpression(localInstruction.getLocal(), localInstruction.getLocalType()), localInstruction.getLocalType().getArithmeticType());
+		}
+		return locals;
+	}
+
+	/**
+	 * The total frame slots for locals, the operand stack, and stack allocated objects
+	 */
+	public int getFrameSize() {
+		return localCount + stackSize + stackObjectSlots;
+	}
+
 	public void addTryCatch(Label start, Label end, Label handler, String type) {
 		exceptionFrames.add(new ExceptionFrame(type, getLabelId(start), getLabelId(end), getLabelId(handler), exceptionFrames.size()));
 	}
@@ -303,6 +392,7 @@ public class BytecodeMethod {
 		private final int index;
 		private int startLocation;
 		private int endLocation;
+		private boolean cold;
 		
 		public ExceptionFrame(String type, int start, int end, int handler, int index) {
 			this.type = type;
@@ -352,6 +442,17 @@ public class BytecodeMethod {
 		public int getEndLocation() {
 			return endLocation;
 		}
+
+		/**
+		 * Mark the handler as never entered in the profile, so that jumping to it is unlikely
+		 */
+		public void markCold() {
+			cold = true;
+		}
+
+		public boolean isCold() {
+			return cold;
+		}
 		
 		public void build(StringBuilder builder) {
 			builder.append("{ ").append(startLocation).append(", ").append(endLocation).append(", ")
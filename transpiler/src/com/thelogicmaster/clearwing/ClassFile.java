@@ -0,0 +1,139 @@
+package com.thelogicmaster.clearwing;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * An unparsed input class file, with just enough information to find the reachable classes before parsing anything
+ */
+public class ClassFile {
+
+	private final byte[] bytes;
+	private final String name;
+	private final String hash;
+	private boolean main;
+
+	public ClassFile(byte[] bytes) {
+		this.bytes = bytes;
+		hash = Utils.hash(bytes);
+		ClassReader reader = new ClassReader(bytes);
+		name = Utils.sanitizeName(reader.getClassName());
+		reader.accept(new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				if ((access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)) == (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC) && name.equals("main") && "([Ljava/lang/String;)V".equals(descriptor))
+					main = true;
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+	}
+
+	/**
+	 * Reads class files serially and indexes them in parallel
+	 */
+	public static List<ClassFile> read(List<Supplier<InputStream>> sources, ExecutorService executor) throws IOException {
+		ArrayList<Future<ClassFile>> results = new ArrayList<>();
+		for (Supplier<InputStream> input: sources)
+			try (InputStream inputStream = input.get()) {
+				byte[] bytes = inputStream.readAllBytes();
+				results.add(executor.submit(() -> new ClassFile(bytes)));
+			}
+
+		ArrayList<ClassFile> files = new ArrayList<>();
+		for (Future<ClassFile> result: results)
+			files.add(Utils.await(result));
+		return files;
+	}
+
+	/**
+	 * Finds the class files reachable from a set of root classes, in their original order
+	 */
+	public static List<ClassFile> findReachable(List<ClassFile> files, Collection<String> roots, ExecutorService executor) {
+		HashMap<String, ClassFile> fileMap = new HashMap<>();
+		for (ClassFile file: files)
+			fileMap.put(file.name, file);
+
+		HashMap<ClassFile, Future<Set<String>>> references = new HashMap<>();
+		for (ClassFile file: fileMap.values())
+			references.put(file, executor.submit(() -> file.collectReferences(fileMap.keySet())));
+
+		HashSet<ClassFile> reachable = new HashSet<>();
+		ArrayDeque<String> queue = new ArrayDeque<>(roots);
+		while (!queue.isEmpty()) {
+			ClassFile file = fileMap.get(queue.poll());
+			if (file != null && reachable.add(file))
+				queue.addAll(Utils.await(references.get(file)));
+		}
+
+		ArrayList<ClassFile> result = new ArrayList<>();
+		for (ClassFile file: files)
+			if (reachable.contains(file))
+				result.add(file);
+		return result;
+	}
+
+	/**
+	 * Collects every class name that this class file could reference. Any class reference, whether it's from a class
+	 * constant, a descriptor, a signature, or an annotation, is stored as a constant pool string, so this is a superset of
+	 * the dependencies that the parsed class will have.
+	 */
+	private Set<String> collectReferences(Set<String> names) {
+		HashSet<String> references = new HashSet<>();
+		ClassReader reader = new ClassReader(bytes);
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0 || bytes[offset - 1] != 1) // CONSTANT_Utf8
+				continue;
+			String string = Utils.sanitizeName(new String(bytes, offset + 2, reader.readUnsignedShort(offset), StandardCharsets.UTF_8));
+			if (names.contains(string))
+				references.add(string);
+			for (int start = string.indexOf('L'); start >= 0; start = string.indexOf('L', start + 1)) {
+				int end = string.indexOf(';', start);
+				if (end < 0)
+					break;
+				int typeArguments = string.indexOf('<', start);
+				if (typeArguments >= 0 && typeArguments < end)
+					end = typeArguments;
+				String descriptor = string.substring(start + 1, end);
+				if (names.contains(descriptor))
+					references.add(descriptor);
+			}
+		}
+		return references;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Get the sanitized name of the class
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the SHA-256 hash of the class file contents
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * Whether the class has a `public static void main(String[])` entrypoint
+	 */
+	public boolean hasMain() {
+		return main;
+	}
+}
@@ -0,0 +1,130 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.Instruction;
+import com.thelogicmaster.clearwing.bytecode.MethodInstruction;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Devirtualizes virtual and interface calls using the closed set of transpiled classes.
+ * Call sites with a single possible implementation become direct calls, and ones with two implementations become
+ * direct calls guarded on the receiver's exact class when one of them is only reachable from a single class.
+ * Proxy classes are created at runtime and can implement any interface, so calls on interfaces are only ever
+ * devirtualized behind an exact class guard that falls back to regular dispatch.
+ */
+public class ClassHierarchyAnalysis {
+
+	// Arrays are also instances of these types and dispatch through the Object vtable
+	private static final Set<String> ARRAY_SUPERTYPES = Set.of("java/lang/Object", "java/lang/Cloneable", "java/io/Serializable");
+	private static final String PROXY = "java/lang/reflect/Proxy";
+
+	private final HashMap<BytecodeClass, ArrayList<BytecodeClass>> subclasses = new HashMap<>(); // Instantiatable subtypes of each type
+	private int virtualCount;
+	private int monomorphicCount;
+	private int bimorphicCount;
+
+	public ClassHierarchyAnalysis(Collection<BytecodeClass> classes) {
+		for (BytecodeClass clazz : classes)
+			if (!clazz.isInterface() && !clazz.isAbstract())
+				addSubclass(clazz, clazz, new HashSet<>());
+	}
+
+	private void addSubclass(BytecodeClass type, BytecodeClass clazz, HashSet<BytecodeClass> visited) {
+		if (type == null || !visited.add(type))
+			return;
+		subclasses.computeIfAbsent(type, key -> new ArrayList<>()).add(clazz);
+		addSubclass(type.getSuperClass(), clazz, visited);
+		for (BytecodeClass interfaceClass : type.getInterfaceClasses())
+			addSubclass(interfaceClass, clazz, visited);
+	}
+
+	/**
+	 * Devirtualizes the call sites in a class's methods
+	 */
+	public void process(BytecodeClass clazz) {
+		for (BytecodeMethod method : clazz.getMethods()) {
+			if (!method.hasBody())
+				continue;
+			for (Instruction instruction : method.getInstructions())
+				if (instruction instanceof InstructionGroup group) {
+					for (Instruction inner : group.getInstructions())
+						if (inner instanceof MethodInstruction invoke)
+							process(clazz, invoke);
+				} else if (instruction instanceof MethodInstruction invoke)
+					process(clazz, invoke);
+		}
+	}
+
+	private void process(BytecodeClass caller, MethodInstruction invoke) {
+		if (invoke.getOpcode() != Opcodes.INVOKEVIRTUAL && invoke.getOpcode() != Opcodes.INVOKEINTERFACE)
+			return;
+		virtualCount++;
+		BytecodeClass owner = invoke.getOwnerClass();
+		BytecodeMethod resolved = invoke.getResolvedMethod();
+		if (owner == null || resolved == null || ARRAY_SUPERTYPES.contains(owner.getName()) || !subclasses.containsKey(owner))
+			return;
+
+		// Group the possible receiver classes by the implementation their vtable dispatches to (Methods are only equal by signature)
+		ArrayList<BytecodeMethod> targets = new ArrayList<>();
+		IdentityHashMap<BytecodeMethod, ArrayList<BytecodeClass>> receivers = new IdentityHashMap<>();
+		for (BytecodeClass clazz : subclasses.get(owner)) {
+			int index = clazz.getVtable().indexOf(resolved);
+			if (index < 0)
+				return;
+			BytecodeMethod implementation = clazz.getVtable().get(index);
+			if (implementation.isAbstract() && !implementation.getOwner().isAnnotationImpl())
+				return;
+			if (!receivers.containsKey(implementation)) {
+				if (targets.size() == 2)
+					return;
+				targets.add(implementation);
+				receivers.put(implementation, new ArrayList<>());
+			}
+			receivers.get(implementation).add(clazz);
+		}
+
+		// Runtime proxy classes can be receivers of interface calls, and extend Proxy, so those sites can't rely on the closed world
+		boolean open = owner.isInterface() || PROXY.equals(owner.getName());
+
+		if (targets.size() == 1) {
+			if (open) {
+				if (receivers.get(targets.get(0)).size() != 1)
+					return;
+				invoke.devirtualize(receivers.get(targets.get(0)).get(0), targets.get(0));
+				caller.getDependencies().add(receivers.get(targets.get(0)).get(0).getName());
+			} else
+				invoke.devirtualize(targets.get(0));
+			caller.getDependencies().add(targets.get(0).getOwner().getName());
+			monomorphicCount++;
+			return;
+		}
+
+		// Guard on the implementation with a single receiver class, preferring a stable choice for reproducible output
+		targets.sort(Comparator.comparing(target -> receivers.get(target).get(0).getName()));
+		int guarded = receivers.get(targets.get(0)).size() == 1 ? 0 : receivers.get(targets.get(1)).size() == 1 ? 1 : -1;
+		if (guarded < 0)
+			return;
+		BytecodeClass guardClass = receivers.get(targets.get(guarded)).get(0);
+		if (open)
+			invoke.devirtualize(guardClass, targets.get(guarded));
+		else
+			invoke.devirtualize(guardClass, targets.get(guarded), targets.get(1 - guarded));
+		caller.getDependencies().add(guardClass.getName());
+		for (BytecodeMethod target : targets)
+			caller.getDependencies().add(target.getOwner().getName());
+		bimorphicCount++;
+	}
+
+	public int getVirtualCount() {
+		return virtualCount;
+	}
+
+	public int getMonomorphicCount() {
+		return monomorphicCount;
+	}
+
+	public int getBimorphicCount() {
+		return bimorphicCount;
+	}
+}
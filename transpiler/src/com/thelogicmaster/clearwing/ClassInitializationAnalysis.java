@@ -0,0 +1,84 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+
+import java.util.*;
+
+/**
+ * Removes class initialization checks from sites where the class is proven to already be initialized.
+ * A class is initialized at a site if it's trivially initialized, if the method is a static method, constructor, or static
+ * initializer of the class or a subclass, or if an earlier check in the same straight-line code already initialized it.
+ * Instance methods don't prove anything, since the runtime allocates some objects without initializing their class.
+ */
+public class ClassInitializationAnalysis {
+
+	private final HashMap<String, BytecodeClass> classMap;
+	private int siteCount;
+	private int eliminatedCount;
+
+	public ClassInitializationAnalysis(HashMap<String, BytecodeClass> classMap) {
+		this.classMap = classMap;
+	}
+
+	/**
+	 * Removes the proven initialization checks from a class's methods
+	 */
+	public void process(BytecodeClass clazz) {
+		for (BytecodeMethod method : clazz.getMethods())
+			if (method.hasBody())
+				process(method);
+	}
+
+	private void process(BytecodeMethod method) {
+		// Static methods and constructors check their own class on entry, which also initializes the superclasses
+		HashSet<BytecodeClass> entry = new HashSet<>();
+		if ((method.isStatic() && !method.isFrameless()) || method.isConstructor() || method.isStaticInitializer())
+			addInitialized(entry, method.getOwner());
+
+		HashSet<Integer> targets = new HashSet<>();
+		for (BytecodeMethod.ExceptionFrame frame : method.getExceptionFrames())
+			targets.add(frame.getHandlerLabel());
+		for (Instruction instruction : method.getInstructions())
+			for (Instruction inner : flatten(instruction))
+				if (inner instanceof JumpingInstruction jumping)
+					targets.addAll(jumping.getJumpLabels());
+
+		HashSet<BytecodeClass> initialized = new HashSet<>(entry);
+		for (Instruction instruction : method.getInstructions())
+			for (Instruction inner : flatten(instruction)) {
+				// Control flow merges at jump targets, so only the entry state is known there
+				if (inner instanceof LabelInstruction label && targets.contains(label.getLabel())) {
+					initialized.clear();
+					initialized.addAll(entry);
+				}
+				if (!(inner instanceof ClassInitializingInstruction site) || site.getInitializedClass() == null)
+					continue;
+				siteCount++;
+				BytecodeClass target = classMap.get(site.getInitializedClass());
+				if (target == null)
+					continue;
+				if (initialized.contains(target) || target.hasTrivialInitializer()) {
+					site.markClassInitialized();
+					eliminatedCount++;
+				} else if (!inner.isInlined()) // Inlined instructions are evaluated later, where they're consumed
+					addInitialized(initialized, target);
+			}
+	}
+
+	private static List<Instruction> flatten(Instruction instruction) {
+		return instruction instanceof InstructionGroup group ? group.getInstructions() : List.of(instruction);
+	}
+
+	private static void addInitialized(HashSet<BytecodeClass> initialized, BytecodeClass clazz) {
+		for (; clazz != null; clazz = clazz.getSuperClass())
+			initialized.add(clazz);
+	}
+
+	public int getSiteCount() {
+		return siteCount;
+	}
+
+	public int getEliminatedCount() {
+		return eliminatedCount;
+	}
+}
@@ -0,0 +1,528 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Intraprocedural escape analysis that moves allocations which never leave their method into the method frame.
+ * Calls are followed through per-method parameter summaries, so allocations may be passed to constructors and other
+ * methods as long as they don't retain them. Allocations in loops reuse their frame storage on every iteration, as long
+ * as the object from the previous iteration is no longer reachable.
+ */
+public class EscapeAnalysis {
+
+	private static final int MAX_SUMMARY_DEPTH = 12;
+	private static final int UNKNOWN = 0; // Value bit for references not tracked as a site
+	private static final byte NONE = 0;
+	private static final byte RETURNED = 1;
+	private static final byte ESCAPES = 2;
+
+	private final HashMap<String, BytecodeClass> classMap;
+	private final IdentityHashMap<BytecodeMethod, MethodAnalysis> analyses = new IdentityHashMap<>();
+	private final Set<BytecodeMethod> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final StringBuilder report = new StringBuilder();
+	private int allocationCount;
+	private int stackAllocationCount;
+
+	public EscapeAnalysis(HashMap<String, BytecodeClass> classMap) {
+		this.classMap = classMap;
+	}
+
+	/**
+	 * Finds non-escaping allocations in a class's methods and stores them in frame slots
+	 */
+	public void process(BytecodeClass clazz) {
+		for (BytecodeMethod method : clazz.getMethods()) {
+			if (!method.hasBody() || method.getInstructions().isEmpty())
+				continue;
+			MethodAnalysis analysis = analyze(method, 0);
+			if (analysis == null)
+				continue;
+			boolean reported = false;
+			for (int i = 0; i < analysis.allocations.size(); i++) {
+				allocationCount++;
+				int site = analysis.paramCount + 1 + i;
+				int index = analysis.allocationIndices.get(i);
+				TypeInstruction allocation = analysis.allocations.get(i);
+				BytecodeClass type = classMap.get(allocation.getType());
+				if (analysis.states[index] == null || analysis.escaped.get(site) || !isStackAllocatable(type)
+						|| (analysis.isRepeated(index) && !analysis.isDeadOnRepeat(index, site)))
+					continue;
+				int slots = 4 + countInstanceFields(type); // Object header and one slot per field
+				allocation.setStackSlots(method.allocateStackObject(slots), slots);
+				stackAllocationCount++;
+				if (!reported) {
+					report.append(clazz.getName()).append('.').append(method.getOriginalName()).append(method.getDesc()).append(":\n");
+					reported = true;
+				}
+				report.append("\tline ").append(analysis.allocationLines.get(i)).append(": new ").append(allocation.getType()).append("\n");
+			}
+		}
+	}
+
+	/**
+	 * Builds a report of the eliminated heap allocation sites
+	 */
+	public String getReport() {
+		return "Stack allocated " + stackAllocationCount + " of " + allocationCount + " allocation sites\n\n" + report;
+	}
+
+	public int getAllocationCount() {
+		return allocationCount;
+	}
+
+	public int getStackAllocationCount() {
+		return stackAllocationCount;
+	}
+
+	private static boolean isStackAllocatable(BytecodeClass clazz) {
+		if (clazz == null || clazz.isInterface() || clazz.isAbstract() || clazz.isAnnotationImpl() || clazz.needsFinalization())
+			return false;
+		for (BytecodeClass c = clazz; c != null; c = c.getSuperClass())
+			if (c.getName().startsWith("java/lang/ref/"))
+				return false;
+		return true;
+	}
+
+	private static int countInstanceFields(BytecodeClass clazz) {
+		int count = 0;
+		for (BytecodeClass c = clazz; c != null; c = c.getSuperClass())
+			for (BytecodeField field : c.getFields())
+				if (!field.isStatic())
+					count++;
+		return count;
+	}
+
+	private MethodAnalysis analyze(BytecodeMethod method, int depth) {
+		MethodAnalysis analysis = analyses.get(method);
+		if (analysis != null)
+			return analysis;
+		if (depth > MAX_SUMMARY_DEPTH || inProgress.contains(method))
+			return null;
+		inProgress.add(method);
+		try {
+			analysis = new MethodAnalysis(method, depth);
+		} finally {
+			inProgress.remove(method);
+		}
+		analyses.put(method, analysis);
+		return analysis;
+	}
+
+	/**
+	 * Returns how each argument of a call is used by the callee, or null if unknown
+	 */
+	private byte[] summarize(BytecodeMethod method, int depth) {
+		if (method.getOwner() == BytecodeClass.OBJECT_CLASS && method.isConstructor())
+			return new byte[1];
+		if (!method.hasBody() || method.isIntrinsic() || method.getInstructions().isEmpty())
+			return null;
+		MethodAnalysis analysis = analyze(method, depth + 1);
+		if (analysis == null)
+			return null;
+		byte[] summary = new byte[analysis.paramSlots.length];
+		for (int i = 0; i < summary.length; i++) {
+			int site = analysis.paramSites[i];
+			if (site < 0)
+				continue;
+			summary[i] = analysis.escaped.get(site) ? ESCAPES : analysis.returned.get(site) ? RETURNED : NONE;
+		}
+		// Synchronized methods lock the receiver, which may inflate a monitor referencing it
+		if (method.isSynchronized() && !method.isStatic())
+			summary[0] = ESCAPES;
+		return summary;
+	}
+
+	/**
+	 * Finds the method a virtual call dispatches to on an instance of an exact class
+	 */
+	private static BytecodeMethod findImplementation(BytecodeClass clazz, MethodSignature signature) {
+		for (BytecodeClass c = clazz; c != null; c = c.getSuperClass())
+			for (BytecodeMethod method : c.getMethods())
+				if (method.getSignature().equals(signature) && !method.isStatic() && !method.isAbstract())
+					return method;
+		for (BytecodeClass c = clazz; c != null; c = c.getSuperClass()) {
+			BytecodeMethod method = findDefaultMethod(c, signature);
+			if (method != null)
+				return method;
+		}
+		return null;
+	}
+
+	private static BytecodeMethod findDefaultMethod(BytecodeClass clazz, MethodSignature signature) {
+		for (BytecodeClass c : clazz.getInterfaceClasses()) {
+			if (c == null)
+				continue;
+			for (BytecodeMethod method : c.getMethods())
+				if (method.getSignature().equals(signature) && !method.isStatic() && !method.isAbstract())
+					return method;
+			BytecodeMethod method = findDefaultMethod(c, signature);
+			if (method != null)
+				return method;
+		}
+		return null;
+	}
+
+	/**
+	 * Abstract interpretation of a method, where each stack slot and local holds the set of sites it may reference.
+	 * Sites are the reference parameters, numbered from 1, followed by the allocations.
+	 */
+	private class MethodAnalysis {
+		private final BytecodeMethod method;
+		private final int depth;
+		private final int localCount;
+		private final int[] paramSlots; // Local of each argument, including the receiver
+		private final int[] paramSites; // Site of each argument, or -1 for primitives
+		private int paramCount;
+		private final ArrayList<TypeInstruction> allocations = new ArrayList<>();
+		private final ArrayList<Integer> allocationIndices = new ArrayList<>();
+		private final ArrayList<Integer> allocationLines = new ArrayList<>();
+		private final BitSet escaped = new BitSet();
+		private final BitSet returned = new BitSet();
+
+		private final ArrayList<Instruction> instructions = new ArrayList<>();
+		private final HashMap<Integer, Integer> labels = new HashMap<>();
+		private final ArrayList<int[]> tryRanges = new ArrayList<>(); // Try start, catch end, and handler instruction indices
+		private final IdentityHashMap<Instruction, Integer> sites = new IdentityHashMap<>();
+		private State[] states;
+		private BitSet[] liveLocals; // Locals that may be read before being overwritten, computed on demand
+		private final BitSet queued = new BitSet(); // Instructions currently in the worklist
+
+		private MethodAnalysis(BytecodeMethod method, int depth) {
+			this.method = method;
+			this.depth = depth;
+			localCount = method.getLocalCount();
+
+			JavaType[] params = method.getSignature().getParamTypes();
+			int argCount = params.length + (method.isStatic() ? 0 : 1);
+			paramSlots = new int[argCount];
+			paramSites = new int[argCount];
+			int local = 0;
+			for (int i = 0; i < argCount; i++) {
+				TypeVariants type = method.isStatic() || i > 0 ? params[method.isStatic() ? i : i - 1].getBasicType() : TypeVariants.OBJECT;
+				paramSlots[i] = local;
+				paramSites[i] = type == TypeVariants.OBJECT ? ++paramCount : -1;
+				local += type.isWide() ? 2 : 1;
+			}
+
+			flattenInstructions();
+			computeStates();
+		}
+
+		private void flattenInstructions() {
+			int line = -1;
+			for (Instruction instruction : method.getInstructions()) {
+				List<Instruction> inner = instruction instanceof InstructionGroup group ? group.getInstructions() : List.of(instruction);
+				for (Instruction child : inner) {
+					if (child instanceof LabelInstruction label)
+						labels.put(label.getLabel(), instructions.size());
+					else if (child instanceof LineNumberInstruction lineNumber)
+						line = lineNumber.getLine();
+					else if (child instanceof TypeInstruction type && type.getOpcode() == Opcodes.NEW) {
+						sites.put(child, paramCount + 1 + allocations.size());
+						allocations.add(type);
+						allocationIndices.add(instructions.size());
+						allocationLines.add(line);
+					}
+					instructions.add(child);
+				}
+			}
+
+			for (int i = 0; i < instructions.size(); i++)
+				if (instructions.get(i) instanceof TryInstruction tryInstruction)
+					tryRanges.add(new int[] { i, instructions.indexOf(tryInstruction.getCatchInstruction()), labels.get(tryInstruction.getFrame().getHandlerLabel()) });
+		}
+
+		private List<Integer> getSuccessors(int index, boolean handlers) {
+			ArrayList<Integer> successors = new ArrayList<>();
+			Instruction instruction = instructions.get(index);
+			if (handlers)
+				for (int[] range : tryRanges)
+					if (index >= range[0] && index <= range[1])
+						successors.add(range[2]);
+			if (instruction instanceof JumpingInstruction jumping && !(instruction instanceof TryInstruction))
+				for (int label : jumping.getJumpLabels())
+					successors.add(labels.get(label));
+			if (instruction.getOutputs() != null && index + 1 < instructions.size())
+				successors.add(index + 1);
+			return successors;
+		}
+
+		/**
+		 * Whether an instruction can execute more than once in a single invocation, so its result can't have fixed storage
+		 */
+		private boolean isRepeated(int index) {
+			BitSet visited = new BitSet();
+			ArrayDeque<Integer> worklist = new ArrayDeque<>(getSuccessors(index, true));
+			while (!worklist.isEmpty()) {
+				int next = worklist.poll();
+				if (next == index)
+					return true;
+				if (visited.get(next))
+					continue;
+				visited.set(next);
+				worklist.addAll(getSuccessors(next, true));
+			}
+			return false;
+		}
+
+		/**
+		 * Whether the object from an earlier execution of an allocation is unreachable whenever it executes again, so
+		 * every execution can reuse the same storage, like a temporary that doesn't outlive its loop iteration
+		 */
+		private boolean isDeadOnRepeat(int index, int site) {
+			State state = states[index];
+			for (BitSet value : state.stack)
+				if (value.get(site))
+					return false;
+			BitSet live = getLiveLocals()[index];
+			for (int local = live.nextSetBit(0); local >= 0; local = live.nextSetBit(local + 1))
+				if (state.locals[local].get(site))
+					return false;
+			return true;
+		}
+
+		private BitSet[] getLiveLocals() {
+			if (liveLocals != null)
+				return liveLocals;
+			liveLocals = new BitSet[instructions.size()];
+			for (int i = 0; i < liveLocals.length; i++)
+				liveLocals[i] = new BitSet();
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (int i = instructions.size() - 1; i >= 0; i--) {
+					if (states[i] == null)
+						continue;
+					BitSet live = new BitSet();
+					for (int successor : getSuccessors(i, false))
+						live.or(liveLocals[successor]);
+					if (instructions.get(i) instanceof VariableInstruction variable) {
+						if (variable.getOpcode() == Opcodes.ALOAD)
+							live.set(variable.getLocal());
+						else if (variable.getOpcode() >= Opcodes.ISTORE && variable.getOpcode() <= Opcodes.ASTORE)
+							live.clear(variable.getLocal());
+					}
+					// Handlers may run before the instruction's own store, so their reads are never killed by it
+					for (int[] range : tryRanges)
+						if (i >= range[0] && i <= range[1])
+							live.or(liveLocals[range[2]]);
+					if (!live.equals(liveLocals[i])) {
+						liveLocals[i] = live;
+						changed = true;
+					}
+				}
+			}
+			return liveLocals;
+		}
+
+		private void computeStates() {
+			states = new State[instructions.size()];
+			if (instructions.isEmpty())
+				return;
+
+			State entry = new State(localCount);
+			for (int i = 0; i < paramSlots.length; i++)
+				if (paramSites[i] >= 0 && paramSlots[i] < localCount)
+					entry.locals[paramSlots[i]].set(paramSites[i]);
+
+			ArrayDeque<Integer> worklist = new ArrayDeque<>();
+			states[0] = entry;
+			worklist.add(0);
+			queued.set(0);
+			while (!worklist.isEmpty()) {
+				int index = worklist.poll();
+				queued.clear(index);
+				Instruction instruction = instructions.get(index);
+				State in = states[index];
+
+				for (int[] range : tryRanges) {
+					if (index < range[0] || index > range[1])
+						continue;
+					State handler = in.copy();
+					handler.stack.clear();
+					handler.stack.add(unknown());
+					merge(worklist, range[2], handler);
+				}
+
+				State out = transfer(instruction, in);
+				if (instruction instanceof JumpingInstruction jumping && !(instruction instanceof TryInstruction))
+					for (int label : jumping.getJumpLabels())
+						merge(worklist, labels.get(label), out);
+				if (instruction.getOutputs() != null && index + 1 < instructions.size())
+					merge(worklist, index + 1, out);
+			}
+		}
+
+		private void merge(ArrayDeque<Integer> worklist, int index, State state) {
+			if (states[index] == null)
+				states[index] = state.copy();
+			else if (!states[index].merge(state))
+				return;
+			if (!queued.get(index)) {
+				queued.set(index);
+				worklist.add(index);
+			}
+		}
+
+		private State transfer(Instruction instruction, State in) {
+			State out = in.copy();
+			List<StackEntry> inputs = instruction.getInputs() == null ? List.of() : instruction.getInputs();
+			List<StackEntry> outputs = instruction.getOutputs() == null ? List.of() : instruction.getOutputs();
+
+			ArrayList<BitSet> args = new ArrayList<>();
+			for (int i = 0; i < inputs.size(); i++)
+				args.add(0, out.stack.isEmpty() ? new BitSet() : out.stack.remove(out.stack.size() - 1));
+
+			ArrayList<BitSet> results = new ArrayList<>();
+			for (StackEntry output : outputs)
+				results.add(output.getBasicType() == TypeVariants.OBJECT ? unknown() : new BitSet());
+
+			int opcode = instruction.getOpcode();
+			if (instruction instanceof TypeInstruction) {
+				if (opcode == Opcodes.NEW)
+					results.set(0, site(sites.get(instruction)));
+				else if (opcode == Opcodes.CHECKCAST)
+					results.set(0, args.get(0));
+				else if (opcode != Opcodes.INSTANCEOF)
+					escape(args);
+			} else if (instruction instanceof VariableInstruction variable) {
+				int local = variable.getLocal();
+				if (opcode == Opcodes.ALOAD)
+					results.set(0, (BitSet) out.locals[local].clone());
+				else if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE) {
+					out.locals[local] = opcode == Opcodes.ASTORE ? args.get(0) : new BitSet();
+					if (variable.getLocalType().isWide() && local + 1 < localCount)
+						out.locals[local + 1] = new BitSet();
+				}
+			} else if (instruction instanceof ZeroOperandInstruction) {
+				switch (opcode) {
+					case Opcodes.DUP, Opcodes.DUP_X1, Opcodes.DUP_X2, Opcodes.DUP2, Opcodes.DUP2_X1, Opcodes.DUP2_X2, Opcodes.SWAP -> {
+						// Stack shuffling outputs are copies of the inputs
+						for (int i = 0; i < outputs.size(); i++) {
+							BitSet result = new BitSet();
+							for (int j = 0; j < inputs.size(); j++)
+								if (outputs.get(i).getOriginal() == inputs.get(j).getOriginal())
+									result.or(args.get(j));
+							results.set(i, result);
+						}
+					}
+					case Opcodes.POP, Opcodes.POP2 -> {}
+					case Opcodes.ACONST_NULL -> results.set(0, new BitSet());
+					case Opcodes.ARETURN -> {
+						BitSet value = args.get(0);
+						for (int site = value.nextSetBit(1); site >= 0; site = value.nextSetBit(site + 1))
+							(site <= paramCount ? returned : escaped).set(site);
+					}
+					default -> escape(args);
+				}
+			} else if (instruction instanceof FieldInstruction) {
+				if (opcode == Opcodes.PUTFIELD)
+					escape(args.get(1));
+				else if (opcode == Opcodes.PUTSTATIC)
+					escape(args);
+			} else if (instruction instanceof MethodInstruction invoke)
+				transferInvoke(invoke, args, results);
+			else if (!(instruction instanceof JumpInstruction))
+				escape(args);
+
+			out.stack.addAll(results);
+			return out;
+		}
+
+		private void transferInvoke(MethodInstruction invoke, ArrayList<BitSet> args, ArrayList<BitSet> results) {
+			BytecodeMethod target = invoke.getResolvedMethod();
+			int opcode = invoke.getOpcode();
+
+			// Find every method the call may dispatch to, which requires a receiver that's an allocation of a known class
+			ArrayList<byte[]> summaries = new ArrayList<>();
+			if (target != null && (opcode == Opcodes.INVOKESTATIC || opcode == Opcodes.INVOKESPECIAL))
+				summaries.add(summarize(target, depth));
+			else if (target != null) {
+				BitSet receiver = args.get(0);
+				if (!receiver.isEmpty() && !receiver.get(UNKNOWN) && receiver.nextSetBit(1) > paramCount)
+					for (int site = receiver.nextSetBit(1); site >= 0; site = receiver.nextSetBit(site + 1)) {
+						BytecodeClass clazz = classMap.get(allocations.get(site - paramCount - 1).getType());
+						BytecodeMethod implementation = clazz == null ? null : findImplementation(clazz, invoke.getSignature());
+						summaries.add(implementation == null ? null : summarize(implementation, depth));
+					}
+			}
+			if (summaries.isEmpty() || summaries.contains(null)) {
+				escape(args);
+				return;
+			}
+
+			for (int i = 0; i < args.size(); i++) {
+				byte usage = NONE;
+				for (byte[] summary : summaries)
+					usage = (byte) Math.max(usage, i < summary.length ? summary[i] : ESCAPES);
+				if (usage == ESCAPES)
+					escape(args.get(i));
+				else if (usage == RETURNED && !results.isEmpty())
+					results.get(0).or(args.get(i));
+			}
+		}
+
+		private BitSet unknown() {
+			BitSet set = new BitSet();
+			set.set(UNKNOWN);
+			return set;
+		}
+
+		private BitSet site(int site) {
+			BitSet set = new BitSet();
+			set.set(site);
+			return set;
+		}
+
+		private void escape(BitSet value) {
+			for (int site = value.nextSetBit(1); site >= 0; site = value.nextSetBit(site + 1))
+				escaped.set(site);
+		}
+
+		private void escape(List<BitSet> values) {
+			for (BitSet value : values)
+				escape(value);
+		}
+
+		private class State {
+			private final BitSet[] locals;
+			private final ArrayList<BitSet> stack = new ArrayList<>();
+
+			private State(int localCount) {
+				locals = new BitSet[localCount];
+				for (int i = 0; i < localCount; i++)
+					locals[i] = new BitSet();
+			}
+
+			private State copy() {
+				State copy = new State(locals.length);
+				for (int i = 0; i < locals.length; i++)
+					copy.locals[i] = (BitSet) locals[i].clone();
+				for (BitSet value : stack)
+					copy.stack.add((BitSet) value.clone());
+				return copy;
+			}
+
+			/**
+			 * Merge another state into this one, returning whether this state changed
+			 */
+			private boolean merge(State other) {
+				boolean changed = false;
+				for (int i = 0; i < locals.length; i++)
+					changed |= union(locals[i], other.locals[i]);
+				for (int i = 0; i < Math.min(stack.size(), other.stack.size()); i++)
+					changed |= union(stack.get(i), other.stack.get(i));
+				return changed;
+			}
+
+			private boolean union(BitSet target, BitSet source) {
+				int count = target.cardinality();
+				target.or(source);
+				return target.cardinality() != count;
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Finds small leaf methods, like getters, setters, and arithmetic helpers, that can't call out, allocate, throw, or loop.
+ * These don't need a frame record, stack map, or safepoint, so they are generated inline in the class header instead.
+ * Methods that are hot in the profile, if there is one, are allowed to be larger.
+ */
+public class LeafMethodAnalysis {
+
+	private static final int MAX_INSTRUCTIONS = 32;
+	private static final int MAX_HOT_INSTRUCTIONS = 64;
+	private static final long MIN_HOT_CALLS = 10000;
+
+	private final Profile profile;
+	private int methodCount;
+	private int leafCount;
+
+	public LeafMethodAnalysis() {
+		this(null);
+	}
+
+	public LeafMethodAnalysis(Profile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Marks the frameless leaf methods of a class
+	 */
+	public void process(BytecodeClass clazz) {
+		if (clazz.isAnnotationImpl())
+			return;
+		for (BytecodeMethod method : clazz.getMethods()) {
+			if (!method.hasBody() || method.isIntrinsic())
+				continue;
+			methodCount++;
+			if (isLeaf(method)) {
+				method.markFrameless();
+				leafCount++;
+			}
+		}
+	}
+
+	private boolean isLeaf(BytecodeMethod method) {
+		if (method.isSynchronized() || method.isConstructor() || method.isStaticInitializer() || !method.getExceptionFrames().isEmpty())
+			return false;
+
+		// Static methods would need a CLINIT, so only allow them when class initialization has no side effects
+		if (method.isStatic())
+			for (BytecodeClass clazz = method.getOwner(); clazz != null; clazz = clazz.getSuperClass())
+				if (clazz.hasStaticInitializer())
+					return false;
+
+		ArrayList<Instruction> instructions = new ArrayList<>();
+		HashMap<Integer, Integer> labels = new HashMap<>();
+		for (Instruction instruction : method.getInstructions())
+			if (instruction instanceof InstructionGroup group)
+				instructions.addAll(group.getInstructions());
+			else {
+				if (instruction instanceof LabelInstruction label)
+					labels.put(label.getLabel(), instructions.size());
+				instructions.add(instruction);
+			}
+		boolean hot = profile != null && profile.getMethodCount(method) >= MIN_HOT_CALLS;
+		if (instructions.size() > (hot ? MAX_HOT_INSTRUCTIONS : MAX_INSTRUCTIONS))
+			return false;
+
+		for (Instruction instruction : instructions)
+			if (instruction instanceof VariableInstruction variable && variable.getOpcode() == Opcodes.ASTORE && variable.getLocal() == 0 && !method.isStatic())
+				return false;
+
+		for (int i = 0; i < instructions.size(); i++) {
+			Instruction instruction = instructions.get(i);
+			if (instruction instanceof LabelInstruction || instruction instanceof LineNumberInstruction
+					|| instruction instanceof VariableInstruction || instruction instanceof IncrementInstruction)
+				continue;
+			if (instruction instanceof ZeroOperandInstruction) {
+				if (!isLeafOpcode(instruction.getOpcode()))
+					return false;
+			} else if (instruction instanceof IntegerInstruction) {
+				if (instruction.getOpcode() == Opcodes.NEWARRAY)
+					return false;
+			} else if (instruction instanceof LoadConstantInstruction constant) {
+				if (!(constant.getValue() instanceof Number))
+					return false;
+			} else if (instruction instanceof JumpInstruction jump) {
+				// Only forward jumps, since loops would need safepoint polls
+				Integer target = labels.get(jump.getJumpLabels().get(0));
+				if (target == null || target <= i)
+					return false;
+			} else if (instruction instanceof FieldInstruction field) {
+				if (field.getOpcode() != Opcodes.GETFIELD && field.getOpcode() != Opcodes.PUTFIELD || !isSelf(method, field))
+					return false;
+			} else
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isLeafOpcode(int opcode) {
+		return switch (opcode) {
+			// Division by zero and array accesses throw, and monitors can block
+			case Opcodes.IDIV, Opcodes.LDIV, Opcodes.IREM, Opcodes.LREM,
+			     Opcodes.IALOAD, Opcodes.LALOAD, Opcodes.FALOAD, Opcodes.DALOAD, Opcodes.AALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD,
+			     Opcodes.IASTORE, Opcodes.LASTORE, Opcodes.FASTORE, Opcodes.DASTORE, Opcodes.AASTORE, Opcodes.BASTORE, Opcodes.CASTORE, Opcodes.SASTORE,
+			     Opcodes.ARRAYLENGTH, Opcodes.ATHROW, Opcodes.MONITORENTER, Opcodes.MONITOREXIT -> false;
+			default -> true;
+		};
+	}
+
+	/**
+	 * Whether a field access is on the receiver, which has already been null checked on entry
+	 */
+	private static boolean isSelf(BytecodeMethod method, FieldInstruction field) {
+		if (method.isStatic() || field.getInputs() == null || field.getInputs().isEmpty())
+			return false;
+		Instruction source = field.getInputs().get(0).getOriginal().getSource();
+		return source instanceof VariableInstruction variable && variable.getOpcode() == Opcodes.ALOAD && variable.getLocal() == 0;
+	}
+
+	public int getMethodCount() {
+		return methodCount;
+	}
+
+	public int getLeafCount() {
+		return leafCount;
+	}
+}
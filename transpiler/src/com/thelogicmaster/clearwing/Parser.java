@@ -5,10 +5,9 @@ import org.objectweb.asm.*;
 import org.objectweb.asm.commons.JSRInlinerAdapter;
 
 import javax.annotation.Nullable;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.*;
-import java.util.function.Supplier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Parser extends ClassVisitor {
 
@@ -22,19 +21,31 @@ public class Parser extends ClassVisitor {
         this.config = config;
     }
 
-    public List<BytecodeClass> parse(List<Supplier<InputStream>> sources) throws IOException {
-        classes = new ArrayList<>();
-
-        for (Supplier<InputStream> input: sources)
-            try (InputStream inputStream = input.get()) {
-                ClassReader reader = new ClassReader(inputStream);
-                if ("java/lang/Object".equals(reader.getClassName()))
-                    continue;
-                currentClass = new BytecodeClass(reader.getClassName(), reader.getSuperName(), reader.getInterfaces(), reader.getAccess());
-                reader.accept(this, ClassReader.EXPAND_FRAMES);
-                classes.add(currentClass);
-            }
+    /**
+     * Parses class files in parallel with one parser per class
+     */
+    public List<BytecodeClass> parse(List<ClassFile> files, ExecutorService executor) {
+        ArrayList<Future<List<BytecodeClass>>> results = new ArrayList<>();
+        for (ClassFile file: files)
+            results.add(executor.submit(() -> new Parser(config).parse(file.getBytes())));
+
+        ArrayList<BytecodeClass> parsed = new ArrayList<>();
+        for (Future<List<BytecodeClass>> result: results)
+            parsed.addAll(Utils.await(result));
+        return parsed;
+    }
 
+    /**
+     * Parses a single class file, returning the class along with any generated lambda proxy classes
+     */
+    private List<BytecodeClass> parse(byte[] bytes) {
+        classes = new ArrayList<>();
+        ClassReader reader = new ClassReader(bytes);
+        if ("java/lang/Object".equals(reader.getClassName()))
+            return classes;
+        currentClass = new BytecodeClass(reader.getClassName(), reader.getSuperName(), reader.getInterfaces(), reader.getAccess());
+        reader.accept(this, ClassReader.EXPAND_FRAMES);
+        classes.add(currentClass);
         return classes;
     }
 
@@ -0,0 +1,101 @@
+package com.thelogicmaster.clearwing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * A runtime profile dumped at exit by an instrumented build. Counters are keyed by method and by the profile site index
+ * within the method, so a profile only applies to the same bytecode it was recorded from. Profiles from several runs
+ * can be concatenated, and their counts are summed.
+ */
+public class Profile {
+
+	private final HashMap<String, Long> methodCounts = new HashMap<>();
+	private final HashMap<String, long[]> branchCounts = new HashMap<>();
+	private final HashMap<String, Long> callCounts = new HashMap<>();
+	private final HashMap<String, HashMap<String, Long>> receiverCounts = new HashMap<>();
+	private final HashMap<String, Long> handlerCounts = new HashMap<>();
+
+	public static Profile read(File file) throws IOException {
+		Profile profile = new Profile();
+		for (String line : Files.readAllLines(file.toPath())) {
+			if (line.isBlank() || line.startsWith("#"))
+				continue;
+			String[] parts = line.split(" ");
+			try {
+				switch (parts[0]) {
+					case "method" -> profile.methodCounts.merge(parts[1], Long.parseLong(parts[2]), Long::sum);
+					case "branch" -> {
+						long[] counts = profile.branchCounts.computeIfAbsent(parts[1] + " " + parts[2], key -> new long[2]);
+						counts[0] += Long.parseLong(parts[3]);
+						counts[1] += Long.parseLong(parts[4]);
+					}
+					case "call" -> {
+						String key = parts[1] + " " + parts[2];
+						profile.callCounts.merge(key, Long.parseLong(parts[3]), Long::sum);
+						HashMap<String, Long> receivers = profile.receiverCounts.computeIfAbsent(key, k -> new HashMap<>());
+						for (int i = 4; i + 1 < parts.length; i += 2)
+							receivers.merge(parts[i], Long.parseLong(parts[i + 1]), Long::sum);
+					}
+					case "handler" -> profile.handlerCounts.merge(parts[1] + " " + parts[2], Long.parseLong(parts[3]), Long::sum);
+					default -> throw new TranspilerException("Unknown profile entry: " + line);
+				}
+			} catch (IndexOutOfBoundsException | NumberFormatException e) {
+				throw new TranspilerException("Invalid profile entry: " + line, e);
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Get the key that identifies a method in profiles
+	 */
+	public static String getKey(BytecodeMethod method) {
+		return method.getOwner().getName() + "." + method.getOriginalName() + method.getDesc();
+	}
+
+	private static String getSiteKey(BytecodeMethod method, int site) {
+		return getKey(method) + " " + site;
+	}
+
+	/**
+	 * Get the number of times a method was invoked, or -1 if it wasn't profiled
+	 */
+	public long getMethodCount(BytecodeMethod method) {
+		return methodCounts.getOrDefault(getKey(method), -1L);
+	}
+
+	/**
+	 * Get the taken and not taken counts of a branch, or null if it wasn't profiled
+	 */
+	public long[] getBranchCounts(BytecodeMethod method, int site) {
+		return branchCounts.get(getSiteKey(method, site));
+	}
+
+	/**
+	 * Get the number of calls made from a call site
+	 */
+	public long getCallCount(BytecodeMethod method, int site) {
+		return callCounts.getOrDefault(getSiteKey(method, site), 0L);
+	}
+
+	/**
+	 * Get the call counts by receiver class name of a call site, which may not add up to the total for megamorphic sites
+	 */
+	public Map<String, Long> getReceiverCounts(BytecodeMethod method, int site) {
+		return receiverCounts.getOrDefault(getSiteKey(method, site), new HashMap<>());
+	}
+
+	/**
+	 * Get the number of times an exception handler was entered, or -1 if it wasn't profiled
+	 */
+	public long getHandlerCount(BytecodeMethod method, int handler) {
+		return handlerCounts.getOrDefault(getSiteKey(method, handler), -1L);
+	}
+
+	public int getMethodCount() {
+		return methodCounts.size();
+	}
+}
@@ -0,0 +1,110 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Applies a profile from an instrumented build. Call sites that the hierarchy couldn't devirtualize get a direct call
+ * guarded on the receiver class that dominates the profile, branches that are almost always or never taken get a
+ * likely or unlikely hint, and exception handlers that were never entered are marked cold.
+ */
+public class ProfileAnalysis {
+
+	private static final long MIN_CALLS = 1000;
+	private static final double DOMINANT_RECEIVER_RATIO = 0.9;
+	private static final long MIN_BRANCHES = 1000;
+	private static final double BIASED_BRANCH_RATIO = 0.98;
+
+	private final Profile profile;
+	private final HashMap<String, BytecodeClass> classMap;
+	private final Set<BytecodeClass> required;
+	private int guardedCount;
+	private int branchHintCount;
+	private int coldHandlerCount;
+
+	public ProfileAnalysis(Profile profile, HashMap<String, BytecodeClass> classMap, Set<BytecodeClass> required) {
+		this.profile = profile;
+		this.classMap = classMap;
+		this.required = required;
+	}
+
+	/**
+	 * Applies the profile to a class's methods
+	 */
+	public void process(BytecodeClass clazz) {
+		for (BytecodeMethod method : clazz.getMethods()) {
+			if (!method.hasBody())
+				continue;
+			for (BytecodeMethod.ExceptionFrame frame : method.getExceptionFrames())
+				if (profile.getHandlerCount(method, frame.getIndex()) == 0) {
+					frame.markCold();
+					coldHandlerCount++;
+				}
+			for (Instruction instruction : method.getInstructions())
+				if (instruction instanceof InstructionGroup group) {
+					for (Instruction inner : group.getInstructions())
+						process(clazz, method, inner);
+				} else
+					process(clazz, method, instruction);
+		}
+	}
+
+	private void process(BytecodeClass caller, BytecodeMethod method, Instruction instruction) {
+		if (instruction instanceof JumpInstruction jump && jump.getOpcode() != Opcodes.GOTO) {
+			long[] counts = profile.getBranchCounts(method, jump.getProfileSite());
+			if (counts == null || counts[0] + counts[1] < MIN_BRANCHES)
+				return;
+			double ratio = (double) counts[0] / (counts[0] + counts[1]);
+			if (ratio >= BIASED_BRANCH_RATIO || ratio <= 1 - BIASED_BRANCH_RATIO) {
+				jump.markLikely(ratio >= BIASED_BRANCH_RATIO);
+				branchHintCount++;
+			}
+		} else if (instruction instanceof MethodInstruction invoke)
+			process(caller, method, invoke);
+	}
+
+	private void process(BytecodeClass caller, BytecodeMethod method, MethodInstruction invoke) {
+		if ((invoke.getOpcode() != Opcodes.INVOKEVIRTUAL && invoke.getOpcode() != Opcodes.INVOKEINTERFACE) || invoke.isDevirtualized())
+			return;
+		BytecodeMethod resolved = invoke.getResolvedMethod();
+		long calls = profile.getCallCount(method, invoke.getProfileSite());
+		if (resolved == null || calls < MIN_CALLS)
+			return;
+
+		Map.Entry<String, Long> dominant = null;
+		for (Map.Entry<String, Long> entry : profile.getReceiverCounts(method, invoke.getProfileSite()).entrySet())
+			if (dominant == null || entry.getValue() > dominant.getValue())
+				dominant = entry;
+		if (dominant == null || dominant.getValue() < calls * DOMINANT_RECEIVER_RATIO)
+			return;
+
+		// The profile may be out of date, so only guard on receivers that are still instantiatable and implement the method
+		BytecodeClass guardClass = classMap.get(dominant.getKey());
+		if (guardClass == null || !required.contains(guardClass) || guardClass.isInterface() || guardClass.isAbstract())
+			return;
+		int index = guardClass.getVtable().indexOf(resolved);
+		if (index < 0)
+			return;
+		BytecodeMethod target = guardClass.getVtable().get(index);
+		if (target.isAbstract())
+			return;
+		invoke.devirtualize(guardClass, target);
+		caller.getDependencies().add(guardClass.getName());
+		caller.getDependencies().add(target.getOwner().getName());
+		guardedCount++;
+	}
+
+	public int getGuardedCount() {
+		return guardedCount;
+	}
+
+	public int getBranchHintCount() {
+		return branchHintCount;
+	}
+
+	public int getColdHandlerCount() {
+		return coldHandlerCount;
+	}
+}
@@ -0,0 +1,217 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Finds loop back-edges that need safepoint polls, so that a loop without calls can't stall a collection indefinitely.
+ * With every back-edge either polled or bounded, and every call polling in its frame, time to safepoint is bounded.
+ * Counted loops with a small constant trip count, like `for (int i = 0; i < 16; i++)`, aren't polled, as long as the trip
+ * counts of nested unpolled loops multiply to at most MAX_UNPOLLED_TRIPS.
+ */
+public class SafepointAnalysis {
+
+	private static final long MAX_UNPOLLED_TRIPS = 256;
+
+	private int backEdgeCount;
+	private int polledCount;
+
+	/**
+	 * Marks the back-edges that need polls in a class's methods
+	 */
+	public void process(BytecodeClass clazz) {
+		for (BytecodeMethod method : clazz.getMethods())
+			if (method.hasBody() && !method.isFrameless())
+				process(method);
+	}
+
+	private void process(BytecodeMethod method) {
+		ArrayList<Instruction> instructions = new ArrayList<>();
+		HashMap<Integer, Integer> labels = new HashMap<>();
+		for (Instruction instruction : method.getInstructions())
+			if (instruction instanceof InstructionGroup group)
+				instructions.addAll(group.getInstructions());
+			else {
+				if (instruction instanceof LabelInstruction label)
+					labels.put(label.getLabel(), instructions.size());
+				instructions.add(instruction);
+			}
+
+		ArrayList<Loop> loops = new ArrayList<>();
+		for (int i = 0; i < instructions.size(); i++) {
+			if (!(instructions.get(i) instanceof JumpInstruction jump))
+				continue;
+			Integer target = labels.get(jump.getJumpLabels().get(0));
+			if (target == null || target > i)
+				continue;
+			backEdgeCount++;
+			loops.add(new Loop(target, i, jump, getTripCount(instructions, labels, target, i)));
+		}
+
+		// Inner loops come first, so an outer loop's unpolled iterations include those of the unpolled loops nested in it
+		loops.sort(Comparator.comparingInt(loop -> loop.end - loop.start));
+		for (Loop loop : loops) {
+			long nested = 1;
+			for (Loop inner : loops) {
+				if (inner == loop)
+					break;
+				if (!inner.polled && inner.start >= loop.start && inner.end <= loop.end)
+					nested = Math.max(nested, inner.iterations);
+			}
+			loop.iterations = loop.trips > MAX_UNPOLLED_TRIPS ? Long.MAX_VALUE : loop.trips * nested;
+			if (loop.iterations > MAX_UNPOLLED_TRIPS) {
+				loop.polled = true;
+				loop.jump.markBackEdge();
+				polledCount++;
+			}
+		}
+	}
+
+	/**
+	 * Bounds the trip count of a counted loop from the header label at `start` to the back-edge at `end`, with the condition
+	 * either right after the header or on the back-edge, or returns `Long.MAX_VALUE` if the loop isn't a simple counted loop
+	 */
+	private static long getTripCount(List<Instruction> instructions, Map<Integer, Integer> labels, int start, int end) {
+		// Find the loop condition comparing the induction variable to a constant limit
+		int condition = end;
+		if (instructions.get(end).getOpcode() == Opcodes.GOTO) {
+			int header = skipMarkers(instructions, start);
+			condition = header + 1 < end && isZeroCompare(instructions.get(header + 1).getOpcode()) ? header + 1 : header + 2;
+			if (condition >= end || !(instructions.get(condition) instanceof JumpInstruction))
+				return Long.MAX_VALUE;
+			Integer exit = labels.get(((JumpInstruction) instructions.get(condition)).getJumpLabels().get(0));
+			if (exit == null || (exit >= start && exit <= end))
+				return Long.MAX_VALUE;
+		}
+		int opcode = instructions.get(condition).getOpcode();
+		int local;
+		Integer limit;
+		if (isZeroCompare(opcode)) {
+			local = getLoadedLocal(instructions.get(condition - 1));
+			limit = 0;
+			opcode += Opcodes.IF_ICMPLT - Opcodes.IFLT;
+		} else {
+			local = getLoadedLocal(instructions.get(condition - 2));
+			limit = getConstant(instructions.get(condition - 1));
+		}
+		if (local < 0 || limit == null)
+			return Long.MAX_VALUE;
+
+		// The induction variable must only be changed by a single increment
+		int increment = -1;
+		for (int i = start; i <= end; i++) {
+			Instruction instruction = instructions.get(i);
+			if (instruction instanceof IncrementInstruction iinc && iinc.getLocal() == local) {
+				if (increment >= 0)
+					return Long.MAX_VALUE;
+				increment = i;
+			} else if (instruction instanceof VariableInstruction variable && variable.getOpcode() == Opcodes.ISTORE && variable.getLocal() == local)
+				return Long.MAX_VALUE;
+		}
+		if (increment < 0)
+			return Long.MAX_VALUE;
+		int step = ((IncrementInstruction) instructions.get(increment)).getAmount();
+
+		// Every iteration has to pass through the increment, so nothing may jump past it or re-enter the header
+		for (int i = 0; i < instructions.size(); i++) {
+			if (!(instructions.get(i) instanceof JumpingInstruction jumping) || i == end)
+				continue;
+			for (int label : jumping.getJumpLabels()) {
+				Integer target = labels.get(label);
+				if (target == null || target < start || target > end)
+					continue;
+				boolean inside = i >= start && i <= end;
+				if (jumping instanceof TryInstruction || target == start || (inside ? i < increment && target > increment : target <= increment))
+					return Long.MAX_VALUE;
+			}
+		}
+
+		// The initial value is a constant stored right before the loop, skipping the jump to a condition at the bottom
+		int store = start - 1;
+		while (store >= 0 && (isMarker(instructions.get(store)) || (instructions.get(store).getOpcode() == Opcodes.GOTO && condition == end)))
+			store--;
+		if (store < 1 || !(instructions.get(store) instanceof VariableInstruction variable) || variable.getOpcode() != Opcodes.ISTORE || variable.getLocal() != local)
+			return Long.MAX_VALUE;
+		Integer initial = getConstant(instructions.get(store - 1));
+		if (initial == null)
+			return Long.MAX_VALUE;
+
+		// The loop continues while the condition holds on the back-edge, or while the exit condition doesn't
+		if (condition != end)
+			opcode = switch (opcode) {
+				case Opcodes.IF_ICMPLT -> Opcodes.IF_ICMPGE;
+				case Opcodes.IF_ICMPGE -> Opcodes.IF_ICMPLT;
+				case Opcodes.IF_ICMPGT -> Opcodes.IF_ICMPLE;
+				case Opcodes.IF_ICMPLE -> Opcodes.IF_ICMPGT;
+				default -> -1;
+			};
+		// The counter must not wrap around before failing the condition, which it would for inclusive bounds at the int limits
+		if ((long) limit + step > Integer.MAX_VALUE || (long) limit + step < Integer.MIN_VALUE
+				|| (opcode == Opcodes.IF_ICMPLE && limit == Integer.MAX_VALUE) || (opcode == Opcodes.IF_ICMPGE && limit == Integer.MIN_VALUE))
+			return Long.MAX_VALUE;
+		long distance = step > 0 ? (long) limit - initial : (long) initial - limit;
+		long stride = Math.abs((long) step);
+		long trips = switch (opcode) {
+			case Opcodes.IF_ICMPLT -> step > 0 ? (distance + stride - 1) / stride : -1;
+			case Opcodes.IF_ICMPLE -> step > 0 ? distance / stride + 1 : -1;
+			case Opcodes.IF_ICMPGT -> step < 0 ? (distance + stride - 1) / stride : -1;
+			case Opcodes.IF_ICMPGE -> step < 0 ? distance / stride + 1 : -1;
+			default -> -1;
+		};
+		return trips < 0 ? Long.MAX_VALUE : Math.max(trips, 0) + 1;
+	}
+
+	private static boolean isZeroCompare(int opcode) {
+		return opcode >= Opcodes.IFLT && opcode <= Opcodes.IFLE;
+	}
+
+	private static boolean isMarker(Instruction instruction) {
+		return instruction instanceof LabelInstruction || instruction instanceof LineNumberInstruction;
+	}
+
+	private static int skipMarkers(List<Instruction> instructions, int index) {
+		while (index < instructions.size() && isMarker(instructions.get(index)))
+			index++;
+		return index;
+	}
+
+	private static int getLoadedLocal(Instruction instruction) {
+		return instruction instanceof VariableInstruction variable && variable.getOpcode() == Opcodes.ILOAD ? variable.getLocal() : -1;
+	}
+
+	private static Integer getConstant(Instruction instruction) {
+		if (instruction instanceof ZeroOperandInstruction && instruction.getOpcode() >= Opcodes.ICONST_M1 && instruction.getOpcode() <= Opcodes.ICONST_5)
+			return instruction.getOpcode() - Opcodes.ICONST_0;
+		if (instruction instanceof IntegerInstruction integer && (integer.getOpcode() == Opcodes.BIPUSH || integer.getOpcode() == Opcodes.SIPUSH))
+			return integer.getOperand();
+		if (instruction instanceof LoadConstantInstruction constant && constant.getValue() instanceof Integer value)
+			return value;
+		return null;
+	}
+
+	private static class Loop {
+		private final int start;
+		private final int end;
+		private final JumpInstruction jump;
+		private final long trips;
+		private long iterations; // Unpolled iterations, including those of nested loops
+		private boolean polled;
+
+		private Loop(int start, int end, JumpInstruction jump, long trips) {
+			this.start = start;
+			this.end = end;
+			this.jump = jump;
+			this.trips = trips;
+		}
+	}
+
+	public int getBackEdgeCount() {
+		return backEdgeCount;
+	}
+
+	public int getPolledCount() {
+		return polledCount;
+	}
+}
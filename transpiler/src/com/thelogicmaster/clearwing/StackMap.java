@@ -0,0 +1,262 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Computes per-location GC reference maps for a method frame, so stack scanning only visits slots that can hold references.
+ * Row 0 corresponds to the method entry (Location -1), and row `n + 1` to location `n`.
+ */
+public class StackMap {
+
+	private static final byte DEAD = 0; // Unwritten, popped, or merged from conflicting types
+	private static final byte PRIMITIVE = 1;
+	private static final byte REFERENCE = 2;
+
+	private final BytecodeMethod method;
+	private final int localCount;
+	private final int frameSize;
+	private final int words;
+	private final int rows;
+	private final int[] references;
+	private final int[] ambiguous;
+
+	private final ArrayList<Instruction> instructions = new ArrayList<>();
+	private final ArrayList<Integer> groupAreas = new ArrayList<>(); // First frame slot used by the containing instruction group, or -1
+	private final HashMap<Integer, Integer> labels = new HashMap<>();
+	private final ArrayList<int[]> tryRanges = new ArrayList<>(); // Try start, catch end, and handler instruction indices
+	private State[] states;
+	private final BitSet queued = new BitSet(); // Instructions currently in the worklist
+
+	public StackMap(BytecodeMethod method) {
+		this.method = method;
+		localCount = method.getLocalCount();
+		frameSize = method.getFrameSize();
+		words = (frameSize + 31) / 32;
+		rows = method.getLocations().size() + 1;
+		references = new int[rows * words];
+		ambiguous = new int[rows * words];
+
+		flattenInstructions();
+		computeStates();
+		computeMaps();
+	}
+
+	private void flattenInstructions() {
+		for (Instruction instruction : method.getInstructions()) {
+			if (instruction instanceof InstructionGroup group) {
+				// Groups allocate their own stack slots, so everything above the group inputs is treated as ambiguous
+				Instruction first = group.getInstructions().get(0);
+				int area = localCount + Math.max(0, first.getStackDepth() - group.getInputs().size());
+				for (Instruction inner : group.getInstructions()) {
+					instructions.add(inner);
+					groupAreas.add(area);
+				}
+			} else {
+				if (instruction instanceof LabelInstruction label)
+					labels.put(label.getLabel(), instructions.size());
+				instructions.add(instruction);
+				groupAreas.add(-1);
+			}
+		}
+
+		for (int i = 0; i < instructions.size(); i++)
+			if (instructions.get(i) instanceof TryInstruction tryInstruction)
+				tryRanges.add(new int[] { i, instructions.indexOf(tryInstruction.getCatchInstruction()), labels.get(tryInstruction.getFrame().getHandlerLabel()) });
+	}
+
+	private void computeStates() {
+		states = new State[instructions.size()];
+		if (instructions.isEmpty())
+			return;
+
+		State entry = new State(frameSize);
+		entry.locations.set(0);
+		int local = 0;
+		if (!method.isStatic())
+			entry.slots[local++] = REFERENCE;
+		for (JavaType type : method.getSignature().getParamTypes()) {
+			entry.slots[local++] = type.getBasicType() == TypeVariants.OBJECT ? REFERENCE : PRIMITIVE;
+			if (type.getBasicType().isWide())
+				local++;
+		}
+
+		ArrayDeque<Integer> worklist = new ArrayDeque<>();
+		states[0] = entry;
+		worklist.add(0);
+		queued.set(0);
+		while (!worklist.isEmpty()) {
+			int index = worklist.poll();
+			queued.clear(index);
+			Instruction instruction = instructions.get(index);
+			State in = states[index];
+
+			for (int[] range : tryRanges) {
+				if (index < range[0] || index > range[1])
+					continue;
+				State handler = in.copy();
+				for (int i = localCount; i < frameSize; i++)
+					handler.slots[i] = DEAD;
+				handler.depth = 1;
+				handler.slots[localCount] = REFERENCE;
+				merge(worklist, range[2], handler);
+			}
+
+			State out = transfer(instruction, in);
+			if (instruction instanceof JumpingInstruction jumping && !(instruction instanceof TryInstruction))
+				for (int label : jumping.getJumpLabels())
+					merge(worklist, labels.get(label), out);
+			if (instruction.getOutputs() != null && index + 1 < instructions.size())
+				merge(worklist, index + 1, out);
+		}
+	}
+
+	private void merge(ArrayDeque<Integer> worklist, int index, State state) {
+		if (states[index] == null)
+			states[index] = state.copy();
+		else if (!states[index].merge(state))
+			return;
+		if (!queued.get(index)) {
+			queued.set(index);
+			worklist.add(index);
+		}
+	}
+
+	private State transfer(Instruction instruction, State in) {
+		State out = in.copy();
+
+		if (instruction instanceof VariableInstruction variable && variable.getOpcode() >= Opcodes.ISTORE && variable.getOpcode() <= Opcodes.ASTORE) {
+			int local = variable.getLocal();
+			out.slots[local] = variable.getOpcode() == Opcodes.ASTORE ? REFERENCE : PRIMITIVE;
+			if (variable.getLocalType().isWide() && local + 1 < localCount)
+				out.slots[local + 1] = DEAD;
+		}
+
+		if (instruction.getInputs() != null)
+			for (int i = 0; i < instruction.getInputs().size() && out.depth > 0; i++)
+				out.setStack(--out.depth, DEAD);
+		if (instruction.getOutputs() != null)
+			for (StackEntry output : instruction.getOutputs())
+				out.setStack(out.depth++, output.getBasicType() == TypeVariants.OBJECT ? REFERENCE : PRIMITIVE);
+
+		int location = -1;
+		if (instruction instanceof LineNumberInstruction lineNumber)
+			location = lineNumber.getLocation();
+		else if (instruction instanceof LabelInstruction label && !method.getExceptionFrames().isEmpty())
+			location = label.getLocation();
+		if (location >= 0) {
+			out.locations.clear();
+			out.locations.set(location + 1);
+		}
+
+		return out;
+	}
+
+	private void computeMaps() {
+		boolean[] seen = new boolean[rows];
+		Arrays.fill(references, -1);
+
+		// Parameters are copied into the frame after entering it, so entry slots are never guaranteed to hold references
+		seen[0] = true;
+		Arrays.fill(references, 0, words, 0);
+
+		for (int i = 0; i < instructions.size(); i++) {
+			State state = states[i];
+			if (state == null)
+				continue;
+			int[] mask = new int[words];
+			for (int slot = 0; slot < frameSize; slot++)
+				if (state.slots[slot] == REFERENCE)
+					mask[slot / 32] |= 1 << (slot % 32);
+			// Stack allocated objects after the operand stack have their fields scanned conservatively
+			int[] area = new int[words];
+			for (int slot = Math.min(groupAreas.get(i) < 0 ? frameSize : groupAreas.get(i), localCount + method.getStackSize()); slot < frameSize; slot++)
+				area[slot / 32] |= 1 << (slot % 32);
+
+			for (int row = state.locations.nextSetBit(0); row >= 0; row = state.locations.nextSetBit(row + 1)) {
+				seen[row] = true;
+				for (int word = 0; word < words; word++) {
+					references[row * words + word] &= mask[word] & ~area[word];
+					ambiguous[row * words + word] |= mask[word] | area[word];
+				}
+			}
+		}
+
+		for (int row = 0; row < rows; row++)
+			for (int word = 0; word < words; word++) {
+				int index = row * words + word;
+				if (!seen[row]) {
+					// Unreachable locations fall back to checking every slot
+					references[index] = 0;
+					ambiguous[index] = word == words - 1 && frameSize % 32 != 0 ? (1 << (frameSize % 32)) - 1 : -1;
+				} else
+					ambiguous[index] &= ~references[index];
+			}
+	}
+
+	/**
+	 * Append the reference map arrays to a method body
+	 */
+	public void build(StringBuilder builder) {
+		appendMaps(builder, "frameReferenceMaps", references);
+		if (hasAmbiguousSlots())
+			appendMaps(builder, "frameAmbiguousMaps", ambiguous);
+	}
+
+	private static void appendMaps(StringBuilder builder, String name, int[] maps) {
+		builder.append("\tstatic constexpr uint32_t ").append(name).append("[] { ");
+		for (int map : maps)
+			builder.append("0x").append(Integer.toHexString(map)).append(", ");
+		builder.append("};\n");
+	}
+
+	public boolean hasAmbiguousSlots() {
+		for (int map : ambiguous)
+			if (map != 0)
+				return true;
+		return false;
+	}
+
+	private class State {
+		private final byte[] slots;
+		private final BitSet locations = new BitSet();
+		private int depth;
+
+		private State(int size) {
+			slots = new byte[size];
+		}
+
+		private State copy() {
+			State copy = new State(slots.length);
+			System.arraycopy(slots, 0, copy.slots, 0, slots.length);
+			copy.locations.or(locations);
+			copy.depth = depth;
+			return copy;
+		}
+
+		private void setStack(int index, byte type) {
+			if (localCount + index < slots.length)
+				slots[localCount + index] = type;
+		}
+
+		/**
+		 * Merge another state into this one, returning whether this state changed
+		 */
+		private boolean merge(State other) {
+			boolean changed = false;
+			for (int i = 0; i < slots.length; i++)
+				if (slots[i] != other.slots[i] && slots[i] != DEAD) {
+					slots[i] = DEAD;
+					changed = true;
+				}
+			if (!other.locations.equals(locations)) {
+				int count = locations.cardinality();
+				locations.or(other.locations);
+				changed |= locations.cardinality() != count;
+			}
+			return changed;
+		}
+	}
+}
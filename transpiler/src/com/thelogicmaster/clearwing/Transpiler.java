@@ -16,8 +16,14 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -28,6 +34,10 @@ import java.util.zip.ZipFile;
 
 public class Transpiler {
 
+	private final static int UNITY_BATCH_SIZE = 256 * 1024;
+	private final static int PRECOMPILED_HEADER_COUNT = 16;
+	private final static String STACK_ALLOCATION_REPORT = "stack-allocations.txt";
+
 	private final static String[] NATIVE_DEPENDENCIES = {
 			"java/lang/ArithmeticException",
 			"java/lang/reflect/Array",
@@ -78,6 +88,17 @@ public class Transpiler {
 			"java/util/zip/ZipFile",
 	};
 
+	/**
+	 * Dependencies added by the transpiler that don't appear in class files, for finding reachable classes
+	 */
+	private final static String[] IMPLICIT_DEPENDENCIES = {
+			"java/lang/Throwable",
+			"java/lang/annotation/Annotation",
+			"java/lang/reflect/Constructor",
+			"java/lang/reflect/Field",
+			"java/lang/reflect/Method",
+	};
+
 	private static void collect(BytecodeClass clazz, Set<BytecodeClass> collected, HashMap<String, BytecodeClass> classMap) {
 		collect(clazz, collected, classMap, null);
 	}
@@ -107,7 +128,7 @@ public class Transpiler {
 				Path path = Paths.get(outputDir.getPath(), resource.getPath().substring(prefix.length()));
 				path.getParent().toFile().mkdirs();
 				try (InputStream input = resource.open()) {
-					Files.copy(input, path, StandardCopyOption.REPLACE_EXISTING);
+					Utils.writeFile(path.toFile(), input.readAllBytes());
 				}
 			}
 		}
@@ -124,6 +145,17 @@ public class Transpiler {
 			});
 	}
 
+	/**
+	 * Runs an action for each class in parallel, waiting for all of them to finish
+	 */
+	private static void forEach(Collection<BytecodeClass> classes, ExecutorService executor, Consumer<BytecodeClass> action) {
+		ArrayList<Future<?>> results = new ArrayList<>();
+		for (BytecodeClass clazz: classes)
+			results.add(executor.submit(() -> action.accept(clazz)));
+		for (Future<?> result: results)
+			Utils.await(result);
+	}
+
 	private static Pattern compileQualifiedPattern(String expression) {
 		expression = expression.replace('.', '/').replace("$", "\\$").replace("**", "@").replace("*", "\\w*").replace("@", ".*");
 		return Pattern.compile(expression);
@@ -323,11 +355,7 @@ public class Transpiler {
 					builder.append("}\n\n");
 				}
 
-			File file = new File(outputDir, name + "_native.cpp");
-			file.getParentFile().mkdirs();
-			try (Writer writer = new BufferedWriter(new FileWriter(file))) {
-				writer.write(builder.toString());
-			}
+			Utils.writeFile(new File(outputDir, name + "_native.cpp"), builder.toString());
 
 			allIncludes.addAll(includes);
 		}
@@ -336,6 +364,15 @@ public class Transpiler {
 	}
 
 	public static void transpile(List<File> inputs, List<File> sourceDirs, File outputDir, TranspilerConfig config) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(config.getThreads());
+		try {
+			transpile(inputs, sourceDirs, outputDir, config, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void transpile(List<File> inputs, List<File> sourceDirs, File outputDir, TranspilerConfig config, ExecutorService executor) throws IOException {
 		// Parse input class files
 		Parser parser = new Parser(config);
 		ArrayList<Supplier<InputStream>> sources = new ArrayList<>();
@@ -383,11 +420,55 @@ public class Transpiler {
 			}
 		}
 
-		classes = parser.parse(sources);
+		long parseStart = System.currentTimeMillis();
+		List<ClassFile> files = ClassFile.read(sources, executor);
 
 		for (Closeable result: parserCloseables)
 			result.close();
 
+		// Generate natives from jnigen style comments
+		List<String> jniIncludes = processSources(sourceDirs, new File(outputDir, "src"), config.getSourceIgnores());
+
+		// Reuse the previous output when nothing changed since it was generated
+		BuildCache cache = null;
+		if (config.useBuildCache()) {
+			long cacheStart = System.currentTimeMillis();
+			cache = new BuildCache(outputDir, files, jniIncludes, config);
+			boolean valid = cache.isValid();
+			logInfo("Build cache " + (valid ? "hit" : "miss") + ": " + cache.getUnchangedCount() + " of " + files.size() + " class files unchanged"
+					+ (valid ? ", reusing " + cache.getOutputCount() + " generated files" : "") + ", checked in " + (System.currentTimeMillis() - cacheStart) + " ms");
+			if (valid) {
+				writeRuntimeFiles(outputDir, config);
+				return;
+			}
+			cache.invalidate();
+		}
+
+		// Skip parsing classes that can't be reached from any required class
+		List<ClassFile> parsedFiles = files;
+		if (config.useLazyParsing()) {
+			ArrayList<String> roots = new ArrayList<>(Arrays.asList(NATIVE_DEPENDENCIES));
+			roots.addAll(Arrays.asList(IMPLICIT_DEPENDENCIES));
+			roots.addAll(jniIncludes);
+			for (String intrinsic: config.getIntrinsics())
+				if (intrinsic.lastIndexOf('.') >= 0)
+					roots.add(Utils.sanitizeName(intrinsic.substring(0, intrinsic.lastIndexOf('.'))));
+			String main = config.getMainClass() == null ? null : Utils.sanitizeName(config.getMainClass());
+			for (ClassFile file: files)
+				if (file.hasMain() && (main == null || file.getName().equals(main)))
+					roots.add(file.getName());
+			for (String expression: config.getNonOptimized()) {
+				Pattern pattern = compileQualifiedPattern(expression);
+				for (ClassFile file: files)
+					if (pattern.matcher(file.getName()).matches())
+						roots.add(file.getName());
+			}
+			parsedFiles = ClassFile.findReachable(files, roots, executor);
+		}
+
+		classes = parser.parse(parsedFiles, executor);
+		logInfo("Parsed " + parsedFiles.size() + " of " + files.size() + " class files in " + (System.currentTimeMillis() - parseStart) + " ms");
+
 		HashSet<BytecodeClass> required = new HashSet<>();
 
 		// Collect classes into map
@@ -400,12 +481,10 @@ public class Transpiler {
 			clazz.processHierarchy(classMap);
 
 		// Resolve symbols like methods once the entire hierarchy is generated
-		for (BytecodeClass clazz : classes)
-			clazz.resolveSymbols();
+		forEach(classes, executor, BytecodeClass::resolveSymbols);
 
 		// Collect dependencies for class trimming
-		for (BytecodeClass clazz: classes)
-			clazz.collectDependencies(classMap);
+		forEach(classes, executor, clazz -> clazz.collectDependencies(classMap));
 
 		// Mark intrinsic methods
 		for (String intrinsic: config.getIntrinsics()) {
@@ -470,8 +549,6 @@ public class Transpiler {
 		if (mainClass != null)
 			collect(mainClass, required, classMap, config);
 
-		// Generate natives from jnigen style comments
-		List<String> jniIncludes = processSources(sourceDirs, new File(outputDir, "src"), config.getSourceIgnores());
 		for (String include : jniIncludes)
 			collect(classMap.get(include), required, classMap, config);
 		
@@ -479,62 +556,151 @@ public class Transpiler {
 		logInfo("Optimizing: trimming unused methods...");
 		trimUnusedMethods(required, mainClass, classMap);
 
+		// Devirtualize calls with one or two possible implementations
+		logInfo("Optimizing: devirtualizing calls...");
+		ClassHierarchyAnalysis hierarchyAnalysis = new ClassHierarchyAnalysis(required);
+		for (BytecodeClass clazz : required)
+			hierarchyAnalysis.process(clazz);
+		logInfo("Devirtualized " + hierarchyAnalysis.getMonomorphicCount() + " monomorphic and " + hierarchyAnalysis.getBimorphicCount()
+				+ " bimorphic of " + hierarchyAnalysis.getVirtualCount() + " virtual call sites");
+
+		// Apply the profile from an instrumented build
+		Profile profile = null;
+		if (config.getProfile() != null && !config.getProfile().isEmpty()) {
+			logInfo("Optimizing: applying profile...");
+			profile = Profile.read(new File(config.getProfile()));
+			ProfileAnalysis profileAnalysis = new ProfileAnalysis(profile, classMap, required);
+			for (BytecodeClass clazz : required)
+				profileAnalysis.process(clazz);
+			logInfo("Applied profile of " + profile.getMethodCount() + " methods, guarded " + profileAnalysis.getGuardedCount() + " call sites, hinted "
+					+ profileAnalysis.getBranchHintCount() + " branches, and marked " + profileAnalysis.getColdHandlerCount() + " exception handlers cold");
+		}
+
+		// Move non-escaping allocations into method frames
+		if (config.useStackAllocation()) {
+			logInfo("Optimizing: analyzing allocation escapes...");
+			EscapeAnalysis escapeAnalysis = new EscapeAnalysis(classMap);
+			for (BytecodeClass clazz : required)
+				escapeAnalysis.process(clazz);
+			logInfo("Stack allocated " + escapeAnalysis.getStackAllocationCount() + " of " + escapeAnalysis.getAllocationCount() + " allocation sites");
+			outputDir.mkdirs();
+			try (Writer writer = new BufferedWriter(new FileWriter(new File(outputDir, STACK_ALLOCATION_REPORT)))) {
+				writer.write(escapeAnalysis.getReport());
+			}
+		}
+
+		// Generate small leaf methods inline without frames
+		if (config.useFramelessLeaves()) {
+			logInfo("Optimizing: finding leaf methods...");
+			LeafMethodAnalysis leafAnalysis = new LeafMethodAnalysis(profile);
+			for (BytecodeClass clazz : required)
+				leafAnalysis.process(clazz);
+			logInfo("Generated " + leafAnalysis.getLeafCount() + " of " + leafAnalysis.getMethodCount() + " methods as frameless leaves");
+		}
+
+		// Poll for safepoints on loop back-edges, except for short counted loops
+		logInfo("Optimizing: placing loop safepoint polls...");
+		SafepointAnalysis safepointAnalysis = new SafepointAnalysis();
+		for (BytecodeClass clazz : required)
+			safepointAnalysis.process(clazz);
+		logInfo("Polling " + safepointAnalysis.getPolledCount() + " of " + safepointAnalysis.getBackEdgeCount() + " loop back-edges");
+
+		// Remove class initialization checks where the class is already known to be initialized
+		logInfo("Optimizing: eliminating class initialization checks...");
+		ClassInitializationAnalysis initializationAnalysis = new ClassInitializationAnalysis(classMap);
+		for (BytecodeClass clazz : required)
+			initializationAnalysis.process(clazz);
+		logInfo("Eliminated " + initializationAnalysis.getEliminatedCount() + " of " + initializationAnalysis.getSiteCount() + " class initialization checks");
+
+		// Remove null and bounds checks that are already proven by earlier checks and loop conditions
+		logInfo("Optimizing: eliminating value checks...");
+		ValueCheckAnalysis valueCheckAnalysis = new ValueCheckAnalysis();
+		for (BytecodeClass clazz : required)
+			valueCheckAnalysis.process(clazz);
+		logInfo("Eliminated " + valueCheckAnalysis.getNullCheckEliminatedCount() + " of " + valueCheckAnalysis.getNullCheckCount() + " null checks and "
+				+ valueCheckAnalysis.getBoundsCheckEliminatedCount() + " of " + valueCheckAnalysis.getBoundsCheckCount() + " bounds checks");
+
 		// Write transpiled output
 		logInfo("Generating C++ code for " + required.size() + " classes...");
 		File srcDir = new File(outputDir, "src");
 		File includeDir = srcDir;//new File(outputDir, "include");
-		boolean failed = false;
-		int classCount = 0;
-		for (BytecodeClass clazz: required) {
-			classCount++;
-			if (classCount % 10 == 0 || classCount == required.size()) {
-				logDebug("Generated " + classCount + "/" + required.size() + " classes");
-			}
-			File header = new File(includeDir, Utils.getClassFilename(clazz.getName()) + ".h");
-			Paths.get(header.getAbsolutePath()).getParent().toFile().mkdirs();
-			FileWriter writer = new FileWriter(header);
-			StringBuilder builder = new StringBuilder();
-			clazz.generateHeader(builder, config, classMap);
-			writer.write(builder.toString());
-			writer.close();
-
-			File cpp = new File(srcDir, Utils.getClassFilename(clazz.getName()) + ".cpp");
-			Paths.get(cpp.getAbsolutePath()).getParent().toFile().mkdirs();
-			writer = new FileWriter(cpp);
-			builder = new StringBuilder();
+		AtomicBoolean failed = new AtomicBoolean();
+		AtomicInteger classCount = new AtomicInteger();
+		AtomicInteger writtenCount = new AtomicInteger();
+		ConcurrentHashMap<BytecodeClass, Integer> sourceSizes = new ConcurrentHashMap<>();
+		long generateStart = System.currentTimeMillis();
+		forEach(required, executor, clazz -> {
 			try {
-				clazz.generateCpp(builder, config, classMap);
-			} catch (Exception e) {
-				logError("Failed to generate C++ for class " + clazz.getName() + ": " + e.getMessage());
-				failed = true;
+				StringBuilder builder = new StringBuilder();
+				clazz.generateHeader(builder, config, classMap);
+				if (Utils.writeFile(new File(includeDir, Utils.getClassFilename(clazz.getName()) + ".h"), builder.toString()))
+					writtenCount.incrementAndGet();
+
+				builder = new StringBuilder();
+				try {
+					clazz.generateCpp(builder, config, classMap);
+				} catch (Exception e) {
+					logError("Failed to generate C++ for class " + clazz.getName() + ": " + e.getMessage());
+					failed.set(true);
+				}
+				sourceSizes.put(clazz, builder.length());
+				if (Utils.writeFile(new File(srcDir, Utils.getClassFilename(clazz.getName()) + ".cpp"), builder.toString()))
+					writtenCount.incrementAndGet();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-			writer.write(builder.toString());
-			writer.close();
-		}
-		if (failed)
+
+			int count = classCount.incrementAndGet();
+			if (count % 10 == 0 || count == required.size())
+				logDebug("Generated " + count + "/" + required.size() + " classes");
+		});
+		logInfo("Generated " + required.size() + " classes in " + (System.currentTimeMillis() - generateStart) + " ms, wrote "
+				+ writtenCount.get() + " of " + required.size() * 2 + " changed files");
+		if (failed.get())
 			throw new TranspilerException("Failed to transpile sources");
 
+		// Write the source list with unity build batches for the CMake project
+		writeSourceList(required, sourceSizes, outputDir, config);
+
 		// Write main.cpp
 		if (mainClass != null)
-			try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(new File(outputDir.getPath(), "src/main.cpp")))) {
-				writer.write("" +
-						"#include \"" + Utils.getClassFilename(mainClass.getName()) + ".h\"\n" +
-						"#include \"Clearwing.h\"\n" +
-						"\n" +
-						"int main() {\n" +
-						"\trunVM(SM_" + mainClass.getQualifiedName() + "_main_Array1_java_lang_String);\n" +
-						"}\n"
-				);
+			Utils.writeFile(new File(outputDir.getPath(), "src/main.cpp"), "" +
+					"#include \"" + Utils.getClassFilename(mainClass.getName()) + ".h\"\n" +
+					"#include \"Clearwing.h\"\n" +
+					"\n" +
+					"int main() {\n" +
+					"\trunVM(SM_" + mainClass.getQualifiedName() + "_main_Array1_java_lang_String);\n" +
+					"}\n"
+			);
+
+		writeRuntimeFiles(outputDir, config);
+
+		// Record the output for the next transpile, leaving out the runtime files that are always rewritten
+		if (cache != null) {
+			ArrayList<File> outputs = new ArrayList<>();
+			for (BytecodeClass clazz : required) {
+				outputs.add(new File(includeDir, Utils.getClassFilename(clazz.getName()) + ".h"));
+				outputs.add(new File(srcDir, Utils.getClassFilename(clazz.getName()) + ".cpp"));
 			}
+			outputs.add(new File(outputDir, "sources.cmake"));
+			if (mainClass != null)
+				outputs.add(new File(srcDir, "main.cpp"));
+			if (config.useStackAllocation())
+				outputs.add(new File(outputDir, STACK_ALLOCATION_REPORT));
+			cache.write(outputs);
+		}
+	}
 
+	/**
+	 * Writes the config header and copies the runtime, which don't depend on the input classes
+	 */
+	private static void writeRuntimeFiles(File outputDir, TranspilerConfig config) throws IOException {
 		// Write config header
-		try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(new File(outputDir.getPath(), "src/Config.h")))) {
-			writer.write("#pragma once\n\n" +
-					"#ifndef USE_LINE_NUMBERS\n#define USE_LINE_NUMBERS " + config.hasLineNumbers() + "\n#endif\n\n" +
-					"#ifndef USE_VALUE_CHECKS\n#define USE_VALUE_CHECKS " + config.hasValueChecks() + "\n#endif\n\n" +
-					"#ifndef USE_PLATFORM_OVERRIDE\n#define USE_PLATFORM_OVERRIDE " + config.hasPlatformOverride() + "\n#endif\n\n"
-			);
-		}
+		Utils.writeFile(new File(outputDir.getPath(), "src/Config.h"), "#pragma once\n\n" +
+				"#ifndef USE_LINE_NUMBERS\n#define USE_LINE_NUMBERS " + config.hasLineNumbers() + "\n#endif\n\n" +
+				"#ifndef USE_VALUE_CHECKS\n#define USE_VALUE_CHECKS " + config.hasValueChecks() + "\n#endif\n\n" +
+				"#ifndef USE_PLATFORM_OVERRIDE\n#define USE_PLATFORM_OVERRIDE " + config.hasPlatformOverride() + "\n#endif\n\n"
+		);
 
 		// Copy resources to output
 		copyResources("clearwing/src/", "clearwing/", outputDir);
@@ -543,6 +709,66 @@ public class Transpiler {
 			copyResources("clearwing/project/", "clearwing/project/", outputDir);
 	}
 
+	/**
+	 * Writes the generated class sources to `sources.cmake`, batched into unity groups by package, along with the most commonly
+	 * included `java/lang` headers to precompile. Batches are sorted and split by size so that they stay stable between builds.
+	 */
+	private static void writeSourceList(Set<BytecodeClass> required, Map<BytecodeClass, Integer> sourceSizes, File outputDir, TranspilerConfig config) throws IOException {
+		ArrayList<BytecodeClass> classes = new ArrayList<>(required);
+		classes.sort(Comparator.comparing(BytecodeClass::getName));
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("# Generated by the transpiler\n\n");
+		builder.append("set(CLEARWING_CLASS_SOURCES\n");
+		for (BytecodeClass clazz : classes)
+			builder.append("\tsrc/").append(Utils.getClassFilename(clazz.getName())).append(".cpp\n");
+		builder.append(")\n\n");
+
+		String batchPackage = null;
+		int batch = 0;
+		int batchSize = 0;
+		ArrayList<String> batchSources = new ArrayList<>();
+		for (int i = 0; i <= classes.size(); i++) {
+			BytecodeClass clazz = i < classes.size() ? classes.get(i) : null;
+			String packageName = clazz == null ? null : clazz.getName().contains("/") ? clazz.getName().substring(0, clazz.getName().lastIndexOf('/')) : "";
+			if (!batchSources.isEmpty() && (clazz == null || !packageName.equals(batchPackage) || batchSize >= UNITY_BATCH_SIZE)) {
+				builder.append("set_source_files_properties(\n");
+				for (String source : batchSources)
+					builder.append("\t").append(source).append("\n");
+				builder.append("\tPROPERTIES UNITY_GROUP ").append(batchPackage.isEmpty() ? "default" : batchPackage.replace('/', '_')).append("_").append(batch).append("\n)\n");
+				batch = packageName != null && packageName.equals(batchPackage) ? batch + 1 : 0;
+				batchSize = 0;
+				batchSources.clear();
+			}
+			if (clazz == null)
+				break;
+			batchPackage = packageName;
+			batchSize += sourceSizes.getOrDefault(clazz, 0);
+			batchSources.add("src/" + Utils.getClassFilename(clazz.getName()) + ".cpp");
+		}
+
+		HashMap<String, Integer> includeCounts = new HashMap<>();
+		for (BytecodeClass clazz : classes)
+			for (String dependency : clazz.getDependencies())
+				if (dependency.startsWith("java/lang/") && dependency.indexOf('/', "java/lang/".length()) < 0)
+					includeCounts.merge(dependency, 1, Integer::sum);
+		builder.append("\nset(CLEARWING_PRECOMPILED_HEADERS\n\tsrc/Clearwing.h\n");
+		includeCounts.entrySet().stream()
+				.filter(entry -> entry.getValue() >= classes.size() / 10)
+				.sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.limit(PRECOMPILED_HEADER_COUNT)
+				.forEach(entry -> builder.append("\tsrc/").append(Utils.getClassFilename(entry.getKey())).append(".h\n"));
+		builder.append(")\n");
+
+		// Compiler profile guided optimization follows the transpiler's instrumentation and profile
+		if (config.hasProfiling())
+			builder.append("\nset(CLEARWING_PGO_DEFAULT GENERATE)\n");
+		else if (config.getProfile() != null && !config.getProfile().isEmpty())
+			builder.append("\nset(CLEARWING_PGO_DEFAULT USE)\n");
+
+		Utils.writeFile(new File(outputDir, "sources.cmake"), builder.toString());
+	}
+
 	private static List<File> getFileArgs(Namespace namespace, String name) {
 		List<String> paths = namespace.getList(name);
 		ArrayList<File> files = new ArrayList<>();
@@ -20,6 +20,14 @@ public class TranspilerConfig {
     private boolean valueChecks = false; // Enable type/NPE checks at runtime, has substantial performance overhead
     private boolean platformOverride = false; // Enable custom platform implementation for env vars and such
     private boolean optimizations = true; // Enable stack optimizations
+    private boolean stackAllocation = true; // Store non-escaping allocations in method frames instead of the heap
+    private boolean typedLocals = false; // Store primitive locals in typed C++ locals instead of the frame, so they can be kept in registers
+    private boolean framelessLeaves = true; // Generate small leaf methods inline in headers without frame records
+    private boolean lazyParsing = true; // Only parse class files that are reachable from the entrypoint and other required classes
+    private boolean buildCache = true; // Skip parsing and generating when the inputs are unchanged since the last transpile into the output directory
+    private int threads = 0; // Number of threads to parse and generate classes with, or 0 to use one per processor
+    private boolean profiling = false; // Instrument the generated code to dump a runtime profile at exit
+    private String profile; // An optional profile dumped by an instrumented build, to guide optimizations
 
     public TranspilerConfig() {
     }
@@ -38,6 +46,14 @@ public class TranspilerConfig {
         lineNumbers = json.optBoolean("useLineNumbers", true);
         valueChecks = json.optBoolean("useValueChecks", true);
         platformOverride = json.optBoolean("platformOverride", false);
+        stackAllocation = json.optBoolean("useStackAllocation", true);
+        typedLocals = json.optBoolean("useTypedLocals", false);
+        framelessLeaves = json.optBoolean("useFramelessLeaves", true);
+        lazyParsing = json.optBoolean("useLazyParsing", true);
+        buildCache = json.optBoolean("useBuildCache", true);
+        threads = json.optInt("threads", 0);
+        profiling = json.optBoolean("useProfiling", false);
+        profile = json.optString("profile", null);
     }
 
     private static List<String> getArray(JSONObject json, String name) {
@@ -137,6 +153,70 @@ public class TranspilerConfig {
         this.optimizations = optimizations;
     }
 
+    public boolean useStackAllocation() {
+        return stackAllocation;
+    }
+
+    public void setStackAllocation(boolean stackAllocation) {
+        this.stackAllocation = stackAllocation;
+    }
+
+    public boolean useTypedLocals() {
+        return typedLocals;
+    }
+
+    public void setTypedLocals(boolean typedLocals) {
+        this.typedLocals = typedLocals;
+    }
+
+    public boolean useFramelessLeaves() {
+        return framelessLeaves;
+    }
+
+    public void setFramelessLeaves(boolean framelessLeaves) {
+        this.framelessLeaves = framelessLeaves;
+    }
+
+    public boolean useLazyParsing() {
+        return lazyParsing;
+    }
+
+    public void setLazyParsing(boolean lazyParsing) {
+        this.lazyParsing = lazyParsing;
+    }
+
+    public boolean useBuildCache() {
+        return buildCache;
+    }
+
+    public void setBuildCache(boolean buildCache) {
+        this.buildCache = buildCache;
+    }
+
+    public int getThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean hasProfiling() {
+        return profiling;
+    }
+
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        this.profile = profile;
+    }
+
     public List<String> getWarningIgnores() {
         return warningIgnores;
     }
@@ -144,4 +224,16 @@ public class TranspilerConfig {
     public void setWarningIgnores(List<String> warningIgnores) {
         this.warningIgnores = warningIgnores;
     }
+
+    /**
+     * Describes every option that affects the generated output, to key the build cache
+     */
+    @Override
+    public String toString() {
+        return "nonOptimized=" + nonOptimized + "\nsourceIgnores=" + sourceIgnores + "\nintrinsics=" + intrinsics + "\njniClasses=" + jniClasses
+                + "\ndefinitions=" + definitions + "\nprojectFiles=" + projectFiles + "\nmainClass=" + mainClass + "\nlineNumbers=" + lineNumbers
+                + "\nvalueChecks=" + valueChecks + "\nplatformOverride=" + platformOverride + "\noptimizations=" + optimizations
+                + "\nstackAllocation=" + stackAllocation + "\ntypedLocals=" + typedLocals + "\nframelessLeaves=" + framelessLeaves
+                + "\nlazyParsing=" + lazyParsing + "\nprofiling=" + profiling + "\nprofile=" + profile;
+    }
 }
@@ -2,7 +2,16 @@ package com.thelogicmaster.clearwing;
 
 import org.objectweb.asm.Type;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class Utils {
 
@@ -122,6 +131,26 @@ public class Utils {
 		return builder.toString();
 	}
 
+	/**
+	 * Encode a string as a StringChars initializer, with a Latin-1 literal if every char fits or else a UTF-16 literal
+	 */
+	public static String encodeStringChars(String string) {
+		boolean latin1 = string.chars().allMatch(c -> c < 0x100);
+		StringBuilder builder = new StringBuilder("StringChars{ ").append(latin1 ? "\"" : "u\"");
+		boolean escaped = false;
+		for (char c : string.toCharArray()) {
+			// Hex escapes consume any following hex digits, so those are escaped as well
+			if (c >= 32 && c < 127 && c != '"' && c != '\\' && !(escaped && Character.digit(c, 16) >= 0)) {
+				builder.append(c);
+				escaped = false;
+			} else {
+				builder.append(String.format(latin1 ? "\\x%02x" : "\\x%04x", (int) c));
+				escaped = true;
+			}
+		}
+		return builder.append("\", ").append(string.length()).append(", ").append(latin1).append(" }").toString();
+	}
+
 	/**
 	 * Get a value representation of a Number, String, or Type
 	 */
@@ -159,7 +188,7 @@ public class Utils {
 			else
 				return "jdouble(" + formatDoubleLiteral(d) + ")";
 		} else if (o instanceof String)
-			return "((jobject) createStringLiteral(ctx, " + Utils.encodeStringLiteral((String)o) + "))";
+			return "((jobject) STRING_LITERAL(" + Utils.encodeStringLiteral((String)o) + "))";
 		else if (o instanceof Type)
 			switch (((Type) o).getSort()) {
 				case Type.OBJECT, Type.ARRAY -> {
@@ -184,4 +213,55 @@ public class Utils {
 			return String.format("%e", value);
 		return Double.toString(value);
 	}
+
+	/**
+	 * Writes a file only if its contents changed, leaving the modification time of unchanged files alone so that builds stay incremental
+	 *
+	 * @return Whether the file was written
+	 */
+	public static boolean writeFile(File file, byte[] contents) throws IOException {
+		if (file.length() == contents.length && file.isFile() && Arrays.equals(Files.readAllBytes(file.toPath()), contents))
+			return false;
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		Files.write(file.toPath(), contents);
+		return true;
+	}
+
+	public static boolean writeFile(File file, String contents) throws IOException {
+		return writeFile(file, contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Creates a SHA-256 digest for content hashes
+	 */
+	public static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new TranspilerException("SHA-256 is unavailable", e);
+		}
+	}
+
+	/**
+	 * Gets the hex SHA-256 hash of some data
+	 */
+	public static String hash(byte[] data) {
+		return HexFormat.of().formatHex(createDigest().digest(data));
+	}
+
+	/**
+	 * Waits for the result of a task, rethrowing any exception it failed with
+	 */
+	public static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException exception)
+				throw exception;
+			throw new TranspilerException("Task failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TranspilerException("Interrupted", e);
+		}
+	}
 }
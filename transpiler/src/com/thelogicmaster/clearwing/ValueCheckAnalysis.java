@@ -0,0 +1,383 @@
+package com.thelogicmaster.clearwing;
+
+import com.thelogicmaster.clearwing.bytecode.*;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Forward dataflow analysis of local nullness and integer ranges that removes redundant null and array bounds checks.
+ * Facts are only tracked for locals, so a stack value is only related to a fact when it was loaded from the local in the
+ * same basic block with no stores to it in between. Indices are proven in bounds by dominating loop conditions like
+ * `i < array.length`, by `i = array.length - 1` style initialization, and by an earlier access to the same element.
+ */
+public class ValueCheckAnalysis {
+
+	private static final int MAX_PASSES = 32;
+
+	private enum FactType {
+		NON_NULL, // The reference local is non-null
+		NON_NEGATIVE, // The int local is at least zero
+		BELOW_LENGTH // The int local is less than the length of the array local
+	}
+
+	private record Fact(FactType type, int local, int array) {
+
+		boolean refersTo(int index) {
+			return local == index || (type == FactType.BELOW_LENGTH && array == index);
+		}
+	}
+
+	private int nullCheckCount;
+	private int nullCheckEliminatedCount;
+	private int boundsCheckCount;
+	private int boundsCheckEliminatedCount;
+
+	/**
+	 * Removes the proven null and bounds checks from a class's methods
+	 */
+	public void process(BytecodeClass clazz) {
+		for (BytecodeMethod method : clazz.getMethods())
+			if (method.hasBody() && !method.getInstructions().isEmpty())
+				new MethodAnalysis(method).run();
+	}
+
+	public int getNullCheckCount() {
+		return nullCheckCount;
+	}
+
+	public int getNullCheckEliminatedCount() {
+		return nullCheckEliminatedCount;
+	}
+
+	public int getBoundsCheckCount() {
+		return boundsCheckCount;
+	}
+
+	public int getBoundsCheckEliminatedCount() {
+		return boundsCheckEliminatedCount;
+	}
+
+	private class MethodAnalysis {
+
+		private final BytecodeMethod method;
+		private final ArrayList<Instruction> instructions = new ArrayList<>();
+		private final IdentityHashMap<Instruction, Integer> positions = new IdentityHashMap<>();
+		private final HashSet<Integer> targets = new HashSet<>();
+		private final HashSet<Integer> handlers = new HashSet<>();
+		private final HashMap<Integer, HashSet<Fact>> incoming = new HashMap<>(); // Meet of the states jumping to each label
+		private final boolean selfNonNull;
+
+		private MethodAnalysis(BytecodeMethod method) {
+			this.method = method;
+			for (Instruction instruction : method.getInstructions())
+				if (instruction instanceof InstructionGroup group)
+					instructions.addAll(group.getInstructions());
+				else
+					instructions.add(instruction);
+			for (int i = 0; i < instructions.size(); i++)
+				positions.put(instructions.get(i), i);
+
+			for (BytecodeMethod.ExceptionFrame frame : method.getExceptionFrames())
+				handlers.add(frame.getHandlerLabel());
+			boolean storesSelf = false;
+			for (Instruction instruction : instructions) {
+				if (instruction instanceof TryInstruction)
+					handlers.addAll(((TryInstruction) instruction).getJumpLabels());
+				else if (instruction instanceof JumpingInstruction jumping)
+					targets.addAll(jumping.getJumpLabels());
+				if (isStore(instruction, 0))
+					storesSelf = true;
+			}
+			targets.addAll(handlers);
+			selfNonNull = !method.isStatic() && !storesSelf; // The receiver is null checked on entry
+		}
+
+		private void run() {
+			for (int pass = 0; pass < MAX_PASSES; pass++)
+				if (!walk(false)) {
+					walk(true);
+					return;
+				}
+		}
+
+		/**
+		 * Propagates facts through the method once, returning whether any label state changed
+		 */
+		private boolean walk(boolean mark) {
+			boolean changed = false;
+			HashSet<Fact> state = new HashSet<>();
+			for (int i = 0; i < instructions.size(); i++) {
+				Instruction instruction = instructions.get(i);
+
+				if (instruction instanceof LabelInstruction label && targets.contains(label.getLabel())) {
+					if (handlers.contains(label.getLabel()))
+						state = new HashSet<>();
+					else if (incoming.containsKey(label.getLabel()))
+						state = meet(state, incoming.get(label.getLabel()));
+				}
+				if (state == null) // Unreachable until a jump target
+					continue;
+				if (instruction.getInputs() == null) { // Unresolved, so nothing is known afterwards
+					state.clear();
+					continue;
+				}
+
+				if (instruction instanceof JumpingInstruction jumping && !(instruction instanceof TryInstruction)) {
+					HashSet<Fact> taken = new HashSet<>(state);
+					HashSet<Fact> fallthrough = new HashSet<>(state);
+					if (instruction instanceof JumpInstruction)
+						applyCondition(i, instruction, taken, fallthrough);
+					for (int target : jumping.getJumpLabels()) {
+						HashSet<Fact> previous = incoming.get(target);
+						HashSet<Fact> merged = previous == null ? taken : meet(previous, taken);
+						if (!merged.equals(previous)) {
+							incoming.put(target, new HashSet<>(merged));
+							changed = true;
+						}
+					}
+					state = hasFallthrough(instruction) ? fallthrough : null;
+					continue;
+				}
+
+				if (mark)
+					markChecks(i, instruction, state);
+				transfer(i, instruction, state);
+				if (!hasFallthrough(instruction))
+					state = null;
+			}
+			return changed;
+		}
+
+		private HashSet<Fact> meet(HashSet<Fact> a, HashSet<Fact> b) {
+			if (a == null)
+				return b == null ? null : new HashSet<>(b);
+			if (b == null)
+				return a;
+			HashSet<Fact> result = new HashSet<>(a);
+			result.retainAll(b);
+			return result;
+		}
+
+		private boolean hasFallthrough(Instruction instruction) {
+			return switch (instruction.getOpcode()) {
+				case Opcodes.GOTO, Opcodes.TABLESWITCH, Opcodes.LOOKUPSWITCH, Opcodes.ATHROW, Opcodes.IRETURN, Opcodes.LRETURN,
+				     Opcodes.FRETURN, Opcodes.DRETURN, Opcodes.ARETURN, Opcodes.RETURN -> false;
+				default -> !(instruction instanceof SwitchInstruction);
+			};
+		}
+
+		private void applyCondition(int position, Instruction jump, HashSet<Fact> taken, HashSet<Fact> fallthrough) {
+			List<StackEntry> inputs = jump.getInputs();
+			switch (jump.getOpcode()) {
+				case Opcodes.IFNULL -> addNonNull(position, inputs.get(0), fallthrough);
+				case Opcodes.IFNONNULL -> addNonNull(position, inputs.get(0), taken);
+				case Opcodes.IFLT -> addNonNegative(position, inputs.get(0), fallthrough);
+				case Opcodes.IFGE, Opcodes.IFGT -> addNonNegative(position, inputs.get(0), taken);
+				case Opcodes.IFLE -> addNonNegative(position, inputs.get(0), fallthrough);
+				case Opcodes.IF_ICMPLT -> addBelowLength(position, inputs.get(0), inputs.get(1), taken);
+				case Opcodes.IF_ICMPGE -> addBelowLength(position, inputs.get(0), inputs.get(1), fallthrough);
+				case Opcodes.IF_ICMPGT -> addBelowLength(position, inputs.get(1), inputs.get(0), taken);
+				case Opcodes.IF_ICMPLE -> addBelowLength(position, inputs.get(1), inputs.get(0), fallthrough);
+				default -> {}
+			}
+		}
+
+		private void addNonNull(int position, StackEntry value, HashSet<Fact> state) {
+			int local = getLoadedLocal(position, value, Opcodes.ALOAD);
+			if (local >= 0)
+				state.add(new Fact(FactType.NON_NULL, local, -1));
+		}
+
+		private void addNonNegative(int position, StackEntry value, HashSet<Fact> state) {
+			int local = getLoadedLocal(position, value, Opcodes.ILOAD);
+			if (local >= 0)
+				state.add(new Fact(FactType.NON_NEGATIVE, local, -1));
+		}
+
+		/**
+		 * Adds the fact for `index < length` when the operands are an int local and an array local's length
+		 */
+		private void addBelowLength(int position, StackEntry index, StackEntry length, HashSet<Fact> state) {
+			int local = getLoadedLocal(position, index, Opcodes.ILOAD);
+			int array = getLengthArray(position, length);
+			if (local >= 0 && array >= 0)
+				state.add(new Fact(FactType.BELOW_LENGTH, local, array));
+		}
+
+		private void markChecks(int position, Instruction instruction, HashSet<Fact> state) {
+			if (instruction instanceof FieldInstruction field && (field.getOpcode() == Opcodes.GETFIELD || field.getOpcode() == Opcodes.PUTFIELD)) {
+				nullCheckCount++;
+				if (isNonNull(position, field.getInputs().get(0), state)) {
+					field.markNullChecked();
+					nullCheckEliminatedCount++;
+				}
+			} else if (instruction instanceof MethodInstruction invoke && isReceiverChecked(invoke)) {
+				nullCheckCount++;
+				if (isNonNull(position, invoke.getInputs().get(0), state)) {
+					invoke.markNullChecked();
+					nullCheckEliminatedCount++;
+				}
+			} else if (instruction instanceof ZeroOperandInstruction zero) {
+				if (zero.getOpcode() == Opcodes.ARRAYLENGTH) {
+					nullCheckCount++;
+					if (isNonNull(position, zero.getInputs().get(0), state)) {
+						zero.markNullChecked();
+						nullCheckEliminatedCount++;
+					}
+				} else if (isArrayAccess(zero.getOpcode())) {
+					boundsCheckCount++;
+					if (isInBounds(position, zero.getInputs().get(0), zero.getInputs().get(1), state)) {
+						zero.markBoundsChecked();
+						boundsCheckEliminatedCount++;
+					}
+				}
+			}
+		}
+
+		private void transfer(int position, Instruction instruction, HashSet<Fact> state) {
+			// Successfully checked values are known to be valid afterwards, unless the check was inlined into a later expression
+			if (!instruction.isInlined()) {
+				if (instruction instanceof FieldInstruction field && (field.getOpcode() == Opcodes.GETFIELD || field.getOpcode() == Opcodes.PUTFIELD))
+					addNonNull(position, field.getInputs().get(0), state);
+				else if (instruction instanceof MethodInstruction invoke && isReceiverChecked(invoke))
+					addNonNull(position, invoke.getInputs().get(0), state);
+				else if (instruction.getOpcode() == Opcodes.ARRAYLENGTH)
+					addNonNull(position, instruction.getInputs().get(0), state);
+				else if (isArrayAccess(instruction.getOpcode())) {
+					addNonNull(position, instruction.getInputs().get(0), state);
+					addNonNegative(position, instruction.getInputs().get(1), state);
+					int local = getLoadedLocal(position, instruction.getInputs().get(1), Opcodes.ILOAD);
+					int array = getLoadedLocal(position, instruction.getInputs().get(0), Opcodes.ALOAD);
+					if (local >= 0 && array >= 0)
+						state.add(new Fact(FactType.BELOW_LENGTH, local, array));
+				}
+			}
+
+			if (instruction instanceof IncrementInstruction increment) {
+				int local = increment.getLocal();
+				boolean belowLength = state.stream().anyMatch(fact -> fact.type == FactType.BELOW_LENGTH && fact.local == local);
+				boolean nonNegative = state.contains(new Fact(FactType.NON_NEGATIVE, local, -1));
+				// Incrementing by one from below a length can't overflow, and decrementing from non-negative can't underflow
+				if (increment.getAmount() > 0) {
+					state.removeIf(fact -> fact.type == FactType.BELOW_LENGTH && fact.local == local);
+					if (increment.getAmount() > 1 || !belowLength)
+						state.remove(new Fact(FactType.NON_NEGATIVE, local, -1));
+				} else if (increment.getAmount() < 0) {
+					if (!nonNegative)
+						state.removeIf(fact -> fact.type == FactType.BELOW_LENGTH && fact.local == local);
+					state.remove(new Fact(FactType.NON_NEGATIVE, local, -1));
+				}
+			} else if (instruction instanceof VariableInstruction variable && isStoreOpcode(variable.getOpcode())) {
+				int local = variable.getLocal();
+				state.removeIf(fact -> fact.refersTo(local)
+						|| ((variable.getOpcode() == Opcodes.LSTORE || variable.getOpcode() == Opcodes.DSTORE) && fact.refersTo(local + 1)));
+				StackEntry value = variable.getInputs().get(0);
+				if (variable.getOpcode() == Opcodes.ISTORE) {
+					Integer constant = getConstant(value);
+					if ((constant != null && constant >= 0) || getLengthArray(position, value) >= 0)
+						state.add(new Fact(FactType.NON_NEGATIVE, local, -1));
+					int array = getLengthMinusArray(position, value);
+					if (array >= 0 && array != local)
+						state.add(new Fact(FactType.BELOW_LENGTH, local, array));
+				} else if (variable.getOpcode() == Opcodes.ASTORE && value.getOriginal().getSource() instanceof TypeInstruction type
+						&& type.getOpcode() == Opcodes.NEW)
+					state.add(new Fact(FactType.NON_NULL, local, -1));
+			}
+		}
+
+		private boolean isNonNull(int position, StackEntry value, HashSet<Fact> state) {
+			Instruction source = value.getOriginal().getSource();
+			if (source instanceof TypeInstruction type && type.getOpcode() == Opcodes.NEW)
+				return true;
+			if (selfNonNull && source instanceof VariableInstruction variable && variable.getOpcode() == Opcodes.ALOAD && variable.getLocal() == 0)
+				return true;
+			int local = getLoadedLocal(position, value, Opcodes.ALOAD);
+			return local >= 0 && state.contains(new Fact(FactType.NON_NULL, local, -1));
+		}
+
+		private boolean isInBounds(int position, StackEntry array, StackEntry index, HashSet<Fact> state) {
+			int arrayLocal = getLoadedLocal(position, array, Opcodes.ALOAD);
+			int indexLocal = getLoadedLocal(position, index, Opcodes.ILOAD);
+			if (arrayLocal < 0 || indexLocal < 0)
+				return false;
+			return state.contains(new Fact(FactType.NON_NEGATIVE, indexLocal, -1)) && state.contains(new Fact(FactType.BELOW_LENGTH, indexLocal, arrayLocal));
+		}
+
+		/**
+		 * Gets the local a value was loaded from, if the local still holds that value at the given position
+		 */
+		private int getLoadedLocal(int position, StackEntry value, int loadOpcode) {
+			if (!(value.getOriginal().getSource() instanceof VariableInstruction load) || load.getOpcode() != loadOpcode)
+				return -1;
+			Integer loadPosition = positions.get(load);
+			if (loadPosition == null || loadPosition > position)
+				return -1;
+			for (int i = loadPosition + 1; i < position; i++) {
+				Instruction instruction = instructions.get(i);
+				if (instruction instanceof LabelInstruction label && targets.contains(label.getLabel()))
+					return -1;
+				if (instruction instanceof JumpingInstruction || isStore(instruction, load.getLocal()))
+					return -1;
+			}
+			return load.getLocal();
+		}
+
+		/**
+		 * Gets the array local whose length is the given value
+		 */
+		private int getLengthArray(int position, StackEntry value) {
+			Instruction source = value.getOriginal().getSource();
+			if (source == null || source.getOpcode() != Opcodes.ARRAYLENGTH || !positions.containsKey(source))
+				return -1;
+			return getLoadedLocal(position, source.getInputs().get(0), Opcodes.ALOAD);
+		}
+
+		/**
+		 * Gets the array local for a value of `array.length - n` with a positive constant n
+		 */
+		private int getLengthMinusArray(int position, StackEntry value) {
+			Instruction source = value.getOriginal().getSource();
+			if (source == null || source.getOpcode() != Opcodes.ISUB || !positions.containsKey(source))
+				return -1;
+			Integer constant = getConstant(source.getInputs().get(1));
+			if (constant == null || constant <= 0)
+				return -1;
+			return getLengthArray(position, source.getInputs().get(0));
+		}
+
+		private Integer getConstant(StackEntry value) {
+			Instruction source = value.getOriginal().getSource();
+			if (source == null)
+				return null;
+			if (source.getOpcode() >= Opcodes.ICONST_M1 && source.getOpcode() <= Opcodes.ICONST_5)
+				return source.getOpcode() - Opcodes.ICONST_0;
+			if (source instanceof IntegerInstruction integer && integer.getOpcode() != Opcodes.NEWARRAY)
+				return integer.getOperand();
+			if (source instanceof LoadConstantInstruction constant && constant.getValue() instanceof Integer)
+				return (Integer) constant.getValue();
+			return null;
+		}
+
+		private boolean isStore(Instruction instruction, int local) {
+			if (instruction instanceof IncrementInstruction increment)
+				return increment.getLocal() == local;
+			if (!(instruction instanceof VariableInstruction variable) || !isStoreOpcode(variable.getOpcode()))
+				return false;
+			boolean wide = variable.getOpcode() == Opcodes.LSTORE || variable.getOpcode() == Opcodes.DSTORE;
+			return variable.getLocal() == local || (wide && variable.getLocal() + 1 == local);
+		}
+
+		private boolean isStoreOpcode(int opcode) {
+			return opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE;
+		}
+
+		private boolean isReceiverChecked(MethodInstruction invoke) {
+			return invoke.getOpcode() == Opcodes.INVOKEVIRTUAL || (invoke.getOpcode() == Opcodes.INVOKEINTERFACE && invoke.isDevirtualized());
+		}
+
+		private boolean isArrayAccess(int opcode) {
+			return (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD) || (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.thelogicmaster.clearwing.bytecode;
+
+/**
+ * An instruction that ensures a class is initialized before using it
+ */
+public interface ClassInitializingInstruction {
+
+    /**
+     * The class initialized by this instruction, or null if it doesn't initialize one
+     */
+    String getInitializedClass();
+
+    /**
+     * Omit the initialization check, since the class is proven to already be initialized
+     */
+    void markClassInitialized();
+}
@@ -8,7 +8,7 @@ import java.util.*;
 /**
  * An instruction that gets or sets a field
  */
-public class FieldInstruction extends Instruction {
+public class FieldInstruction extends Instruction implements ClassInitializingInstruction {
 
     private final String owner;
     private final String qualifiedOwner;
@@ -21,6 +21,8 @@ public class FieldInstruction extends Instruction {
     private BytecodeClass ownerClass;
     private BytecodeClass realOwnerClass;
     private String realName;
+    private boolean classInitialized;
+    private boolean nullChecked;
 
     public FieldInstruction(BytecodeMethod method, int opcode, String owner, String name, String desc) {
         super(method, opcode);
@@ -77,7 +79,7 @@ public class FieldInstruction extends Instruction {
         if (realOwnerClass == null)
             throw new TranspilerException("Failed to find owner class for: " + name + " needed for " + method.getName());
         
-        if (isStatic) // Todo: Skip on same class for clinit
+        if (isStatic && !classInitialized)
             builder.append("\tCLINIT(").append(qualifiedOwner).append(");\n");
         
         switch (opcode) {
@@ -87,11 +89,11 @@ public class FieldInstruction extends Instruction {
                 builder.append("\t").append(realName).append(" = (--sp)->").append(type.getBasicType().getStackName()).append(";\n");
             case Opcodes.GETFIELD -> {
                 builder.append("\tsp[-1].").append(type.getBasicType().getStackName()).append(" = ").append(type.isPrimitive() ? "" : "(jobject) ")
-                        .append("((").append(realOwnerClass.getQualifiedName()).append(" *) NULL_CHECK(sp[-1].o))->").append(name).append(";\n");
+                        .append("((").append(realOwnerClass.getQualifiedName()).append(" *) ").append(getNullCheck("sp[-1].o")).append(")->").append(name).append(";\n");
             }
             case Opcodes.PUTFIELD -> {
                 builder.append("\tsp -= 2;\n");
-                builder.append("\t((").append(realOwnerClass.getQualifiedName()).append(" *) NULL_CHECK(sp[0].o))->").append(name).append(" = ").append(type.isPrimitive() ? "" : "(jref) ")
+                builder.append("\t((").append(realOwnerClass.getQualifiedName()).append(" *) ").append(getNullCheck("sp[0].o")).append(")->").append(name).append(" = ").append(type.isPrimitive() ? "" : "(jref) ")
                         .append("sp[1].").append(type.getBasicType().getStackName()).append(";\n");
             }
             default -> throw new TranspilerException("Invalid opcode");
@@ -103,7 +105,7 @@ public class FieldInstruction extends Instruction {
         if (realOwnerClass == null)
             throw new TranspilerException("Failed to find owner class for: " + name + " needed for " + method.getName());
         
-        if (isStatic) // Todo: Skip on same class for clinit
+        if (isStatic && !classInitialized)
             builder.append("\tCLINIT(").append(qualifiedOwner).append(");\n");
 
         switch (opcode) {
@@ -113,10 +115,10 @@ public class FieldInstruction extends Instruction {
                     builder.append("\t").append(realName).append(" = ").append(inputs.get(0).arg()).append(";\n");
             case Opcodes.GETFIELD -> outputs.get(0).buildAssignment(builder).append("(")
                     .append(type.getBasicType().getArithmeticType()).append(")").append("((")
-                    .append(realOwnerClass.getQualifiedName()).append(" *) NULL_CHECK(")
-                    .append(inputs.get(0).arg()).append("))->").append(name).append(";\n");
+                    .append(realOwnerClass.getQualifiedName()).append(" *) ")
+                    .append(getNullCheck(inputs.get(0).arg())).append(")->").append(name).append(";\n");
             case Opcodes.PUTFIELD -> builder.append("\t((").append(realOwnerClass.getQualifiedName())
-                    .append(" *) NULL_CHECK(").append(inputs.get(0).arg()).append("))->").append(name)
+                    .append(" *) ").append(getNullCheck(inputs.get(0).arg())).append(")->").append(name)
                     .append(" = ").append(type.isPrimitive() ? "" : "(jref) ").append(inputs.get(1).arg()).append(";\n");
             default -> throw new TranspilerException("Invalid opcode");
         }
@@ -125,11 +127,14 @@ public class FieldInstruction extends Instruction {
     @Override
     public void appendInlined(StringBuilder builder) {
         switch (opcode) {
-            case Opcodes.GETSTATIC -> builder.append("[ctx]{CLINIT(").append(qualifiedOwner).append(");}(), (")
-                    .append(type.getArithmeticType()).append(")").append(realName);
+            case Opcodes.GETSTATIC -> {
+                if (!classInitialized)
+                    builder.append("[ctx]{CLINIT(").append(qualifiedOwner).append(");}(), ");
+                builder.append("(").append(type.getArithmeticType()).append(")").append(realName);
+            }
             case Opcodes.GETFIELD -> builder.append("(").append(type.getBasicType().getArithmeticType()).append(")")
-                    .append("((").append(realOwnerClass.getQualifiedName()).append(" *) NULL_CHECK(")
-                    .append(inputs.get(0).arg()).append("))->").append(name);
+                    .append("((").append(realOwnerClass.getQualifiedName()).append(" *) ")
+                    .append(getNullCheck(inputs.get(0).arg())).append(")->").append(name);
             default -> throw new TranspilerException("Not inlinable");
         }
     }
@@ -163,6 +168,27 @@ public class FieldInstruction extends Instruction {
             dependencies.add(type.getRegistryTypeName());
     }
 
+    private String getNullCheck(String object) {
+        return nullChecked ? "(" + object + ")" : "NULL_CHECK(" + object + ")";
+    }
+
+    /**
+     * Omit the null check, since the object is proven to be non-null
+     */
+    public void markNullChecked() {
+        nullChecked = true;
+    }
+
+    @Override
+    public String getInitializedClass() {
+        return isStatic ? owner : null;
+    }
+
+    @Override
+    public void markClassInitialized() {
+        classInitialized = true;
+    }
+
     public String getOwner() {
         return owner;
     }
@@ -24,7 +24,10 @@ public class IncrementInstruction extends Instruction implements LocalInstructio
 
 	@Override
 	public void appendUnoptimized (StringBuilder builder, TranspilerConfig config) {
-		appendStandardInstruction(builder, "iinc", "" + local, "" + amount);
+		if (method.hasTypedLocals())
+			builder.append("\t").append(method.getLocalExpression(local, TypeVariants.INT)).append(" += ").append(amount).append(";\n");
+		else
+			appendStandardInstruction(builder, "iinc", "" + local, "" + amount);
 	}
 
 	@Override
@@ -7,13 +7,14 @@ import org.objectweb.asm.Opcodes;
 import java.util.*;
 
 // Todo: Rename to InvokeLambda or something
-public class InvokeDynamicInstruction extends Instruction {
+public class InvokeDynamicInstruction extends Instruction implements ClassInitializingInstruction {
 
     private final Handle handle;
     private final String className;
     private final String qualifiedProxyClassName;
     private final JavaType[] proxyFields;
     private final MethodSignature proxyMethodSignature;
+    private boolean classInitialized;
 
     public InvokeDynamicInstruction(BytecodeMethod method, Handle handle, String proxyClassName, JavaType[] proxyFields, String proxyMethodDesc) {
         super(method, Opcodes.INVOKEDYNAMIC);
@@ -27,7 +28,8 @@ public class InvokeDynamicInstruction extends Instruction {
     @Override
     public void appendUnoptimized(StringBuilder builder, TranspilerConfig config) {
         builder.append("\t{ /* InvokeDynamic */\n");
-        builder.append("\t\tCLINIT(").append(qualifiedProxyClassName).append(");\n");
+        if (!classInitialized)
+            builder.append("\t\tCLINIT(").append(qualifiedProxyClassName).append(");\n");
         
         // Cache proxies without captured variables for performance
         if (proxyFields.length == 0) {
@@ -49,7 +51,8 @@ public class InvokeDynamicInstruction extends Instruction {
     @Override
     public void appendOptimized(StringBuilder builder, TranspilerConfig config) {
         builder.append("\t{ /* InvokeDynamic */\n");
-        builder.append("\t\tCLINIT(").append(qualifiedProxyClassName).append(");\n");
+        if (!classInitialized)
+            builder.append("\t\tCLINIT(").append(qualifiedProxyClassName).append(");\n");
         
         // Cache proxies without captured variables for performance
         if (proxyFields.length == 0) {
@@ -81,6 +84,16 @@ public class InvokeDynamicInstruction extends Instruction {
         dependencies.add(Utils.sanitizeName(className));
     }
 
+    @Override
+    public String getInitializedClass() {
+        return Utils.sanitizeName(className);
+    }
+
+    @Override
+    public void markClassInitialized() {
+        classInitialized = true;
+    }
+
     public Handle getHandle() {
         return handle;
     }
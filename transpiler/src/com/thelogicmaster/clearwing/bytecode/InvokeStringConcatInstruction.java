@@ -19,55 +19,59 @@ public class InvokeStringConcatInstruction extends Instruction {
 
     @Override
     public void appendUnoptimized(StringBuilder builder, TranspilerConfig config) {
-        int arg = 0;
-        int constant = 0;
-        char[] chars = recipe.toCharArray();
-        int values = 0;
-        for (char c : chars)
-            if (c == '\u0001' || c == '\u0002')
-                values++;
-        builder.append("\tPOP_N(").append(values).append("); // Pop string concat args\n");
-        builder.append("\t(sp++)->o = (jobject)concatStringsRecipe(ctx, ").append(Utils.encodeStringLiteral(recipe)).append(".string, ").append(values);
-        for (char c : chars) {
-            if (c == '\u0001') {
-                JavaType paramType = signature.getParamTypes()[arg];
-                builder.append(", ");
-                boolean wrapped = paramType.appendWrapperPrefix(new JavaType("Ljava/lang/Object;"), builder);
-                builder.append("sp[").append(arg).append("].").append(paramType.getBasicType().getStackName());
-                if (wrapped)
-                    builder.append(")");
-                arg++;
-            } else if (c == '\u0002') {
-                builder.append(", (jobject)").append(Utils.encodeStringLiteral((String)constants[constant++]));
-            }
-        }
-        builder.append(");\n");
+        int count = signature.getParamTypes().length;
+        builder.append("\tPOP_N(").append(count).append("); // Pop string concat args\n");
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++)
+            args[i] = "sp[" + i + "]." + signature.getParamTypes()[i].getBasicType().getStackName();
+        builder.append("\t(sp++)->o = (jobject)");
+        appendConcat(builder, args);
+        builder.append(";\n");
     }
 
     @Override
     public void appendOptimized(StringBuilder builder, TranspilerConfig config) {
+        String[] args = new String[inputs.size()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = inputs.get(i).arg();
+        outputs.get(0).buildAssignment(builder).append("(jobject)");
+        appendConcat(builder, args);
+        builder.append(";\n");
+    }
+
+    /**
+     * Appends a call to the concatStrings template specialized for the recipe, with constant text encoded in place and each
+     * argument passed as the narrowest type it's formatted from, so that primitives are never boxed
+     */
+    private void appendConcat(StringBuilder builder, String[] args) {
+        builder.append("concatStrings(ctx");
+        StringBuilder text = new StringBuilder();
         int arg = 0;
         int constant = 0;
-        char[] chars = recipe.toCharArray();
-        int values = 0;
-        for (char c : chars)
-            if (c == '\u0001' || c == '\u0002')
-                values++;
-        outputs.get(0).buildAssignment(builder).append("(jobject)concatStringsRecipe(ctx, ").append(Utils.encodeStringLiteral(recipe)).append(".string, ").append(values);
-        for (char c : chars) {
+        for (char c : recipe.toCharArray()) {
             if (c == '\u0001') {
-                JavaType paramType = signature.getParamTypes()[arg];
-                builder.append(", ");
-                boolean wrapped = paramType.appendWrapperPrefix(new JavaType("Ljava/lang/Object;"), builder);
-                inputs.get(arg).buildArg(builder);
-                if (wrapped)
-                    builder.append(")");
+                if (!text.isEmpty())
+                    builder.append(", ").append(Utils.encodeStringChars(text.toString()));
+                text.setLength(0);
+                builder.append(", (").append(getConcatType(signature.getParamTypes()[arg])).append(")").append(args[arg]);
                 arg++;
-            } else if (c == '\u0002') {
-                builder.append(", (jobject)").append(Utils.encodeStringLiteral((String)constants[constant++]));
-            }
+            } else if (c == '\u0002')
+                text.append(constants[constant++]);
+            else
+                text.append(c);
         }
-        builder.append(");\n");
+        if (!text.isEmpty())
+            builder.append(", ").append(Utils.encodeStringChars(text.toString()));
+        builder.append(")");
+    }
+
+    private static String getConcatType(JavaType type) {
+        if (type.getArrayDimensions() == 0 && "java/lang/String".equals(type.getReferenceType()))
+            return "jstring";
+        return switch (type.getBasicType()) {
+            case BYTE, SHORT, INT -> "jint";
+            default -> type.getCppType();
+        };
     }
 
     @Override
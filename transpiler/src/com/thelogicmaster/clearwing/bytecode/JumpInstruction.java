@@ -12,59 +12,95 @@ import java.util.List;
  */
 public class JumpInstruction extends Instruction implements JumpingInstruction {
     private final int label;
+    private final int profileSite;
+    private String branchHint = "";
+    private boolean backEdge;
 
     public JumpInstruction(BytecodeMethod method, int opcode, Label label) {
         super(method, opcode);
         this.label = method.getLabelId(label);
+        profileSite = method.allocateProfileSite();
     }
     
     private void appendGoto(StringBuilder builder) {
-        builder.append("goto ").append(LABEL_PREFIX).append(label).append(";");
+        if (backEdge)
+            builder.append("{ SAFEPOINT(); goto ").append(LABEL_PREFIX).append(label).append("; }");
+        else
+            builder.append("goto ").append(LABEL_PREFIX).append(label).append(";");
     }
 
-    private void appendCompare(StringBuilder builder, TypeVariants type, String operation) {
-        builder.append("\tsp -= 2; ");
-        builder.append("if (sp[0].").append(type.getStackName()).append(" ").append(operation).append(" sp[1].").append(type.getStackName()).append(") ");
+    private void appendBranch(StringBuilder builder, TranspilerConfig config, String condition) {
+        builder.append("if (");
+        if (config.hasProfiling())
+            builder.append("profileBranch(").append(method.getOwner().addProfileCounter("Branch", method, profileSite)).append(", ").append(condition).append(")");
+        else
+            builder.append(condition);
+        builder.append(") ").append(branchHint);
         appendGoto(builder);
     }
 
-    private void appendCompareZero(StringBuilder builder, TypeVariants type, String operation) {
-        builder.append("\tif ((--sp)->").append(type.getStackName()).append(" ").append(operation).append(" ").append(type == TypeVariants.OBJECT ? "nullptr" : "0").append(") ");
-        appendGoto(builder);
+    private void appendCompare(StringBuilder builder, TranspilerConfig config, TypeVariants type, String operation) {
+        builder.append("\tsp -= 2; ");
+        appendBranch(builder, config, "sp[0]." + type.getStackName() + " " + operation + " sp[1]." + type.getStackName());
+    }
+
+    private void appendCompareZero(StringBuilder builder, TranspilerConfig config, TypeVariants type, String operation) {
+        builder.append("\t");
+        appendBranch(builder, config, "(--sp)->" + type.getStackName() + " " + operation + " " + (type == TypeVariants.OBJECT ? "nullptr" : "0"));
     }
 
     // Todo: Ensure future stack optimizations don't break object comparisons (Only compare jobject base types)
-    private void appendCompareOptimized(StringBuilder builder, TypeVariants type, String operation) {
-        builder.append("\tif (").append(inputs.get(0).arg()).append(" ").append(operation);
-        builder.append(" ").append(inputs.get(1).arg()).append(") ");
-        appendGoto(builder);
+    private void appendCompareOptimized(StringBuilder builder, TranspilerConfig config, TypeVariants type, String operation) {
+        builder.append("\t");
+        appendBranch(builder, config, inputs.get(0).arg() + " " + operation + " " + inputs.get(1).arg());
     }
 
-    private void appendCompareZeroOptimized(StringBuilder builder, TypeVariants type, String operation) {
-        builder.append("\tif (").append(inputs.get(0).arg()).append(" ").append(operation);
-        builder.append(type == TypeVariants.OBJECT ? " nullptr" : " 0").append(") ");
-        appendGoto(builder);
+    private void appendCompareZeroOptimized(StringBuilder builder, TranspilerConfig config, TypeVariants type, String operation) {
+        builder.append("\t");
+        appendBranch(builder, config, inputs.get(0).arg() + " " + operation + (type == TypeVariants.OBJECT ? " nullptr" : " 0"));
+    }
+
+    /**
+     * Hint that the branch is almost always or almost never taken, based on the profile
+     */
+    public void markLikely(boolean likely) {
+        branchHint = likely ? "CPP_LIKELY " : "CPP_UNLIKELY ";
+    }
+
+    /**
+     * Poll for safepoints when taking the jump, since it closes a loop that may not otherwise reach one
+     */
+    public void markBackEdge() {
+        backEdge = true;
+    }
+
+    public boolean isBackEdge() {
+        return backEdge;
+    }
+
+    public int getProfileSite() {
+        return profileSite;
     }
 
     @Override
     public void appendUnoptimized(StringBuilder builder, TranspilerConfig config) {
         switch (opcode) {
-            case Opcodes.IFEQ -> appendCompareZero(builder, TypeVariants.INT, "==");
-            case Opcodes.IFNE -> appendCompareZero(builder, TypeVariants.INT, "!=");
-            case Opcodes.IFLT -> appendCompareZero(builder, TypeVariants.INT, "<");
-            case Opcodes.IFGE -> appendCompareZero(builder, TypeVariants.INT, ">=");
-            case Opcodes.IFGT -> appendCompareZero(builder, TypeVariants.INT, ">");
-            case Opcodes.IFLE -> appendCompareZero(builder, TypeVariants.INT, "<=");
-            case Opcodes.IFNULL -> appendCompareZero(builder, TypeVariants.OBJECT, "==");
-            case Opcodes.IFNONNULL -> appendCompareZero(builder, TypeVariants.OBJECT, "!=");
-            case Opcodes.IF_ICMPEQ -> appendCompare(builder, TypeVariants.INT, "==");
-            case Opcodes.IF_ICMPNE -> appendCompare(builder, TypeVariants.INT, "!=");
-            case Opcodes.IF_ICMPLT -> appendCompare(builder, TypeVariants.INT, "<");
-            case Opcodes.IF_ICMPGE -> appendCompare(builder, TypeVariants.INT, ">=");
-            case Opcodes.IF_ICMPGT -> appendCompare(builder, TypeVariants.INT, ">");
-            case Opcodes.IF_ICMPLE -> appendCompare(builder, TypeVariants.INT, "<=");
-            case Opcodes.IF_ACMPEQ -> appendCompare(builder, TypeVariants.OBJECT, "==");
-            case Opcodes.IF_ACMPNE -> appendCompare(builder, TypeVariants.OBJECT, "!=");
+            case Opcodes.IFEQ -> appendCompareZero(builder, config, TypeVariants.INT, "==");
+            case Opcodes.IFNE -> appendCompareZero(builder, config, TypeVariants.INT, "!=");
+            case Opcodes.IFLT -> appendCompareZero(builder, config, TypeVariants.INT, "<");
+            case Opcodes.IFGE -> appendCompareZero(builder, config, TypeVariants.INT, ">=");
+            case Opcodes.IFGT -> appendCompareZero(builder, config, TypeVariants.INT, ">");
+            case Opcodes.IFLE -> appendCompareZero(builder, config, TypeVariants.INT, "<=");
+            case Opcodes.IFNULL -> appendCompareZero(builder, config, TypeVariants.OBJECT, "==");
+            case Opcodes.IFNONNULL -> appendCompareZero(builder, config, TypeVariants.OBJECT, "!=");
+            case Opcodes.IF_ICMPEQ -> appendCompare(builder, config, TypeVariants.INT, "==");
+            case Opcodes.IF_ICMPNE -> appendCompare(builder, config, TypeVariants.INT, "!=");
+            case Opcodes.IF_ICMPLT -> appendCompare(builder, config, TypeVariants.INT, "<");
+            case Opcodes.IF_ICMPGE -> appendCompare(builder, config, TypeVariants.INT, ">=");
+            case Opcodes.IF_ICMPGT -> appendCompare(builder, config, TypeVariants.INT, ">");
+            case Opcodes.IF_ICMPLE -> appendCompare(builder, config, TypeVariants.INT, "<=");
+            case Opcodes.IF_ACMPEQ -> appendCompare(builder, config, TypeVariants.OBJECT, "==");
+            case Opcodes.IF_ACMPNE -> appendCompare(builder, config, TypeVariants.OBJECT, "!=");
             case Opcodes.GOTO -> {
                 builder.append("\t");
                 appendGoto(builder);
@@ -77,22 +113,22 @@ public class JumpInstruction extends Instruction implements JumpingInstruction {
     @Override
     public void appendOptimized(StringBuilder builder, TranspilerConfig config) {
         switch (opcode) {
-            case Opcodes.IFEQ -> appendCompareZeroOptimized(builder, TypeVariants.INT, "==");
-            case Opcodes.IFNE -> appendCompareZeroOptimized(builder, TypeVariants.INT, "!=");
-            case Opcodes.IFLT -> appendCompareZeroOptimized(builder, TypeVariants.INT, "<");
-            case Opcodes.IFGE -> appendCompareZeroOptimized(builder, TypeVariants.INT, ">=");
-            case Opcodes.IFGT -> appendCompareZeroOptimized(builder, TypeVariants.INT, ">");
-            case Opcodes.IFLE -> appendCompareZeroOptimized(builder, TypeVariants.INT, "<=");
-            case Opcodes.IFNULL -> appendCompareZeroOptimized(builder, TypeVariants.OBJECT, "==");
-            case Opcodes.IFNONNULL -> appendCompareZeroOptimized(builder, TypeVariants.OBJECT, "!=");
-            case Opcodes.IF_ICMPEQ -> appendCompareOptimized(builder, TypeVariants.INT, "==");
-            case Opcodes.IF_ICMPNE -> appendCompareOptimized(builder, TypeVariants.INT, "!=");
-            case Opcodes.IF_ICMPLT -> appendCompareOptimized(builder, TypeVariants.INT, "<");
-            case Opcodes.IF_ICMPGE -> appendCompareOptimized(builder, TypeVariants.INT, ">=");
-            case Opcodes.IF_ICMPGT -> appendCompareOptimized(builder, TypeVariants.INT, ">");
-            case Opcodes.IF_ICMPLE -> appendCompareOptimized(builder, TypeVariants.INT, "<=");
-            case Opcodes.IF_ACMPEQ -> appendCompareOptimized(builder, TypeVariants.OBJECT, "==");
-            case Opcodes.IF_ACMPNE -> appendCompareOptimized(builder, TypeVariants.OBJECT, "!=");
+            case Opcodes.IFEQ -> appendCompareZeroOptimized(builder, config, TypeVariants.INT, "==");
+            case Opcodes.IFNE -> appendCompareZeroOptimized(builder, config, TypeVariants.INT, "!=");
+            case Opcodes.IFLT -> appendCompareZeroOptimized(builder, config, TypeVariants.INT, "<");
+            case Opcodes.IFGE -> appendCompareZeroOptimized(builder, config, TypeVariants.INT, ">=");
+            case Opcodes.IFGT -> appendCompareZeroOptimized(builder, config, TypeVariants.INT, ">");
+            case Opcodes.IFLE -> appendCompareZeroOptimized(builder, config, TypeVariants.INT, "<=");
+            case Opcodes.IFNULL -> appendCompareZeroOptimized(builder, config, TypeVariants.OBJECT, "==");
+            case Opcodes.IFNONNULL -> appendCompareZeroOptimized(builder, config, TypeVariants.OBJECT, "!=");
+            case Opcodes.IF_ICMPEQ -> appendCompareOptimized(builder, config, TypeVariants.INT, "==");
+            case Opcodes.IF_ICMPNE -> appendCompareOptimized(builder, config, TypeVariants.INT, "!=");
+            case Opcodes.IF_ICMPLT -> appendCompareOptimized(builder, config, TypeVariants.INT, "<");
+            case Opcodes.IF_ICMPGE -> appendCompareOptimized(builder, config, TypeVariants.INT, ">=");
+            case Opcodes.IF_ICMPGT -> appendCompareOptimized(builder, config, TypeVariants.INT, ">");
+            case Opcodes.IF_ICMPLE -> appendCompareOptimized(builder, config, TypeVariants.INT, "<=");
+            case Opcodes.IF_ACMPEQ -> appendCompareOptimized(builder, config, TypeVariants.OBJECT, "==");
+            case Opcodes.IF_ACMPNE -> appendCompareOptimized(builder, config, TypeVariants.OBJECT, "!=");
             case Opcodes.GOTO -> {
                 builder.append("\t");
                 appendGoto(builder);
@@ -25,7 +25,7 @@ public class LineNumberInstruction extends Instruction {
 
 	@Override
 	public void appendUnoptimized (StringBuilder builder, TranspilerConfig config) {
-		if (location >= 0)
+		if (location >= 0 && !method.isFrameless())
 			builder.append("\tLINE_NUMBER(").append(line).append(", ").append(location).append(");\n");
 	}
 
@@ -35,7 +35,7 @@ public class LoadConstantInstruction extends Instruction {
         if (value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double || value instanceof Type)
             return Utils.getObjectValue(value);
         else if (value instanceof String)
-            return "((jobject) createStringLiteral(ctx, " + Utils.encodeStringLiteral((String)value) + "))";
+            return "((jobject) STRING_LITERAL(" + Utils.encodeStringLiteral((String)value) + "))";
         else if (value instanceof Handle) {
             throw new TranspilerException("Unsupported value: " + value); // Todo
         }
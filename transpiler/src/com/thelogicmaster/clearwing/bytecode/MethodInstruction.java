@@ -21,6 +21,12 @@ public class MethodInstruction extends Instruction {
     private final boolean isStatic;
     private BytecodeClass ownerClass;
     private BytecodeMethod resolvedMethod;
+    private int callSite = -1;
+    private final int profileSite;
+    private BytecodeMethod directTarget; // Devirtualized target, or the fallback target of a guarded call
+    private BytecodeClass guardClass;
+    private BytecodeMethod guardTarget;
+    private boolean nullChecked;
 
     public MethodInstruction(BytecodeMethod method, int opcode, String owner, String name, String desc, boolean onInterface) {
         super(method, opcode);
@@ -33,6 +39,7 @@ public class MethodInstruction extends Instruction {
         this.name = Utils.sanitizeMethod(qualifiedOwner, signature, isStatic);
         this.desc = desc;
         this.onInterface = onInterface;
+        profileSite = method.allocateProfileSite();
     }
 
     @Override
@@ -71,10 +78,98 @@ public class MethodInstruction extends Instruction {
         return null;
     }
 
+    private boolean isInterfaceDispatch() {
+        if (opcode != Opcodes.INVOKEINTERFACE || directTarget != null)
+            return false;
+        for (BytecodeMethod m : BytecodeClass.OBJECT_METHODS)
+            if (m.getDesc().equals(desc) && m.getOriginalName().equals(originalName))
+                return false;
+        return true;
+    }
+
+    /**
+     * Declare the inline cache for an interface call site, since the call expression can't declare it
+     */
+    private void appendCallSiteDeclaration(StringBuilder builder) {
+        if (!isInterfaceDispatch())
+            return;
+        if (callSite < 0)
+            callSite = method.allocateCallSite();
+        builder.append("\tstatic InterfaceCallSite callSite").append(callSite).append(";\n");
+    }
+
+    /**
+     * Call a single implementation directly, for call sites where the hierarchy only allows one
+     */
+    public void devirtualize(BytecodeMethod target) {
+        directTarget = target;
+    }
+
+    /**
+     * Call one of two implementations directly, guarded on the receiver's exact class
+     */
+    public void devirtualize(BytecodeClass guardClass, BytecodeMethod guardTarget, BytecodeMethod fallbackTarget) {
+        this.guardClass = guardClass;
+        this.guardTarget = guardTarget;
+        directTarget = fallbackTarget;
+    }
+
+    /**
+     * Call the implementation of the receiver class that dominates the profile directly, guarded on the receiver's exact
+     * class, and fall back to regular dispatch otherwise
+     */
+    public void devirtualize(BytecodeClass guardClass, BytecodeMethod guardTarget) {
+        this.guardClass = guardClass;
+        this.guardTarget = guardTarget;
+    }
+
+    /**
+     * Omit the receiver null check, since the receiver is proven to be non-null
+     */
+    public void markNullChecked() {
+        nullChecked = true;
+    }
+
+    private String getNullCheck(String receiver) {
+        return nullChecked ? "(" + receiver + ")" : "nullCheck(ctx, " + receiver + ")";
+    }
+
+    public boolean isDevirtualized() {
+        return directTarget != null || guardClass != null;
+    }
+
+    public int getProfileSite() {
+        return profileSite;
+    }
+
+    /**
+     * Record the receiver class when instrumenting, for the first evaluation of the receiver in a dispatched call
+     */
+    private String getProfiledReceiver(TranspilerConfig config, String receiver) {
+        if (!config.hasProfiling())
+            return receiver;
+        return "profileReceiver(" + method.getOwner().addProfileCounter("Call", method, profileSite) + ", " + receiver + ")";
+    }
+
+    private void appendDevirtualizedCall(StringBuilder builder, TranspilerConfig config, String receiver, String args) {
+        if (guardClass == null) {
+            builder.append(directTarget.getName()).append("(ctx, ").append(getNullCheck(receiver)).append(args).append(")");
+            return;
+        }
+        appendGuard(builder, config, receiver, args);
+        builder.append(directTarget.getName()).append("(ctx, ").append(receiver).append(args).append("))");
+    }
+
+    private void appendGuard(StringBuilder builder, TranspilerConfig config, String receiver, String args) {
+        builder.append("(").append(getNullCheck(getProfiledReceiver(config, receiver))).append("->clazz == (jref) &class_").append(guardClass.getQualifiedName())
+                .append(" ? ").append(guardTarget.getName()).append("(ctx, ").append(receiver).append(args).append(")").append(" : ");
+    }
+
     @Override
     public void appendUnoptimized(StringBuilder builder, TranspilerConfig config) {
         if (resolvedMethod == null)
             throw new TranspilerException("Method not resolved: " + owner + "." + originalName + " " + signature.getDesc() + " for " + method);
+        appendCallSiteDeclaration(builder);
         if (signature.getParamTypes().length > 0 || opcode != Opcodes.INVOKESTATIC)
             builder.append("\tPOP_N(").append(signature.getParamTypes().length + (opcode != Opcodes.INVOKESTATIC ? 1 : 0)).append("); // Pop method args\n");
         builder.append("\t");
@@ -93,13 +188,33 @@ public class MethodInstruction extends Instruction {
             }
         }
 
+        if (directTarget != null) {
+            StringBuilder args = new StringBuilder();
+            for (int i = 0; i < signature.getParamTypes().length; i++)
+                args.append(", sp[").append(1 + i).append("].").append(signature.getParamTypes()[i].getBasicType().getStackName());
+            appendDevirtualizedCall(builder, config, "sp[0].o", args.toString());
+            builder.append(";\n");
+            if (!signature.getReturnType().isVoid())
+                builder.append("\tsp++;\n");
+            return;
+        }
+
+        String receiver = "sp[0].o";
+        if (guardClass != null) {
+            StringBuilder args = new StringBuilder();
+            for (int i = 0; i < signature.getParamTypes().length; i++)
+                args.append(", sp[").append(1 + i).append("].").append(signature.getParamTypes()[i].getBasicType().getStackName());
+            appendGuard(builder, config, receiver, args.toString());
+        } else if (actualOpcode != Opcodes.INVOKESPECIAL && actualOpcode != Opcodes.INVOKESTATIC)
+            receiver = getProfiledReceiver(config, receiver);
+
         // Todo: Use invocation macros
         switch (actualOpcode) {
             case Opcodes.INVOKEVIRTUAL ->
-                builder.append("((func_").append(virtualName.substring(2)).append(") ((void **) nullCheck(ctx, sp[0].o)->vtable)[VTABLE_").append(virtualName.substring(2)).append("])");
+                builder.append("((func_").append(virtualName.substring(2)).append(") ((void **) ").append(guardClass != null ? "(" + receiver + ")" : getNullCheck(receiver)).append("->vtable)[VTABLE_").append(virtualName.substring(2)).append("])");
             case Opcodes.INVOKEINTERFACE ->
-                builder.append("((func_").append(resolvedMethod.getName().substring(2)).append(") resolveInterfaceMethod(ctx, &class_")
-                        .append(resolvedMethod.getOwner().getQualifiedName()).append(", INDEX_").append(resolvedMethod.getName().substring(2)).append(", sp[0].o))");
+                builder.append("((func_").append(resolvedMethod.getName().substring(2)).append(") resolveInterfaceCallSite(ctx, callSite").append(callSite).append(", &class_")
+                        .append(resolvedMethod.getOwner().getQualifiedName()).append(", INDEX_").append(resolvedMethod.getName().substring(2)).append(", ").append(receiver).append("))");
             case Opcodes.INVOKESPECIAL, Opcodes.INVOKESTATIC -> builder.append(resolvedMethod.getName());
             default -> throw new TranspilerException("Invalid opcode");
         }
@@ -112,7 +227,7 @@ public class MethodInstruction extends Instruction {
             builder.append(", ");
             builder.append("sp[").append(paramOffset + i).append("].").append(type.getBasicType().getStackName());
         }
-        builder.append(");\n");
+        builder.append(guardClass != null ? "));\n" : ");\n");
 
         if (!signature.getReturnType().isVoid())
             builder.append("\tsp++;\n");
@@ -122,7 +237,8 @@ public class MethodInstruction extends Instruction {
     public void appendOptimized(StringBuilder builder, TranspilerConfig config) {
         if (resolvedMethod == null)
             throw new TranspilerException("Method not resolved: " + owner + "." + originalName + " " + signature.getDesc() + " for " + method);
-        
+
+        appendCallSiteDeclaration(builder);
         if (!signature.getReturnType().isVoid())
             outputs.get(0).buildAssignment(builder).append("(")
                     .append(signature.getReturnType().getBasicType().getArithmeticType()).append(")");
@@ -141,27 +257,63 @@ public class MethodInstruction extends Instruction {
             }
         }
 
+        // Calls that read the receiver more than once bind an inlined receiver (Like an array element) once, so that
+        // the dispatch and the call can't see different objects if another thread changes it in between
+        boolean bindReceiver = actualOpcode != Opcodes.INVOKESTATIC && inputs.get(0).getOperandType() == OperandType.Inlined
+                && (guardClass != null || (directTarget == null && actualOpcode != Opcodes.INVOKESPECIAL));
+        if (bindReceiver)
+            builder.append("[&](jobject receiver) { return ");
+        String receiverArg = actualOpcode == Opcodes.INVOKESTATIC ? null : bindReceiver ? "receiver" : inputs.get(0).arg();
+
+        if (directTarget != null) {
+            StringBuilder args = new StringBuilder();
+            for (int i = 0; i < signature.getParamTypes().length; i++)
+                inputs.get(1 + i).buildArg(args.append(", "));
+            appendDevirtualizedCall(builder, config, receiverArg, args.toString());
+            appendCallEnd(builder, bindReceiver);
+            return;
+        }
+
+        String receiver = receiverArg;
+        if (guardClass != null) {
+            StringBuilder args = new StringBuilder();
+            for (int i = 0; i < signature.getParamTypes().length; i++)
+                inputs.get(1 + i).buildArg(args.append(", "));
+            appendGuard(builder, config, receiver, args.toString());
+        } else if (actualOpcode != Opcodes.INVOKESPECIAL && actualOpcode != Opcodes.INVOKESTATIC)
+            receiver = getProfiledReceiver(config, receiver);
+
         // Todo: Use invocation macros
         switch (actualOpcode) {
             case Opcodes.INVOKEVIRTUAL ->
-                    builder.append("((func_").append(virtualName.substring(2)).append(") ((void **) nullCheck(ctx, ").append(inputs.get(0).arg())
-                            .append(")->vtable)[VTABLE_").append(virtualName.substring(2)).append("])");
+                    builder.append("((func_").append(virtualName.substring(2)).append(") ((void **) ").append(guardClass != null ? "(" + receiver + ")" : getNullCheck(receiver))
+                            .append("->vtable)[VTABLE_").append(virtualName.substring(2)).append("])");
             case Opcodes.INVOKEINTERFACE ->
-                    builder.append("((func_").append(resolvedMethod.getName().substring(2)).append(") resolveInterfaceMethod(ctx, &class_")
+                    builder.append("((func_").append(resolvedMethod.getName().substring(2)).append(") resolveInterfaceCallSite(ctx, callSite").append(callSite).append(", &class_")
                             .append(resolvedMethod.getOwner().getQualifiedName()).append(", INDEX_").append(resolvedMethod.getName().substring(2))
-                            .append(", ").append(inputs.get(0).arg()).append("))");
+                            .append(", ").append(receiver).append("))");
             case Opcodes.INVOKESPECIAL, Opcodes.INVOKESTATIC -> builder.append(resolvedMethod.getName());
             default -> throw new TranspilerException("Invalid opcode");
         }
         builder.append("(ctx");
         if (actualOpcode != Opcodes.INVOKESTATIC)
-            builder.append(", ").append(inputs.get(0).arg());
+            builder.append(", ").append(receiverArg);
         int paramOffset = actualOpcode == Opcodes.INVOKESTATIC ? 0 : 1;
         for (int i = 0; i < signature.getParamTypes().length; i++) {
             builder.append(", ");
             inputs.get(paramOffset + i).buildArg(builder);
         }
-        builder.append(");\n");
+        builder.append(guardClass != null ? "))" : ")");
+        appendCallEnd(builder, bindReceiver);
+    }
+
+    /**
+     * End an optimized call statement, passing the receiver to the binding lambda if it's bound
+     */
+    private void appendCallEnd(StringBuilder builder, boolean bindReceiver) {
+        if (bindReceiver)
+            inputs.get(0).buildArg(builder.append("; }(")).append(")");
+        builder.append(";\n");
     }
 
     @Override
@@ -221,4 +373,8 @@ public class MethodInstruction extends Instruction {
     public BytecodeMethod getResolvedMethod() {
         return resolvedMethod;
     }
+
+    public BytecodeClass getOwnerClass() {
+        return ownerClass;
+    }
 }
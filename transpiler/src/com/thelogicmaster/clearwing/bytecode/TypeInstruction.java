@@ -9,11 +9,14 @@ import java.util.Set;
 /**
  * An instruction that takes a type as a parameter (NEW, ANEWARRAY, CHECKCAST, INSTANCEOF)
  */
-public class TypeInstruction extends Instruction {
+public class TypeInstruction extends Instruction implements ClassInitializingInstruction {
 
     private final String type;
     private final String qualifiedType;
     private final JavaType javaType;
+    private int stackSlot = -1;
+    private int stackSlotCount;
+    private boolean classInitialized;
 
     public TypeInstruction(BytecodeMethod method, int opcode, String type) {
         super(method, opcode);
@@ -26,8 +29,10 @@ public class TypeInstruction extends Instruction {
     public void appendUnoptimized(StringBuilder builder, TranspilerConfig config) {
         switch (opcode) {
             case Opcodes.NEW -> {
-                builder.append("\tCLINIT(").append(qualifiedType).append(");\n");
-                builder.append("\tPUSH_OBJECT(gcAlloc(ctx, &class_").append(qualifiedType).append("));\n");
+                if (!classInitialized)
+                    builder.append("\tCLINIT(").append(qualifiedType).append(");\n");
+                appendStackAssertion(builder);
+                builder.append("\tPUSH_OBJECT(").append(getAllocation()).append(");\n");
             }
             case Opcodes.ANEWARRAY -> appendStandardInstruction(builder, "anewarray", javaType.generateClassFetch());
             case Opcodes.CHECKCAST -> appendStandardInstruction(builder, "checkcast", javaType.generateClassFetch());
@@ -40,8 +45,10 @@ public class TypeInstruction extends Instruction {
     public void appendOptimized(StringBuilder builder, TranspilerConfig config) {
         switch (opcode) {
             case Opcodes.NEW -> {
-                builder.append("\tCLINIT(").append(qualifiedType).append(");\n");
-                outputs.get(0).buildAssignment(builder).append("gcAlloc(ctx, &class_").append(qualifiedType).append(");\n");;
+                if (!classInitialized)
+                    builder.append("\tCLINIT(").append(qualifiedType).append(");\n");
+                appendStackAssertion(builder);
+                outputs.get(0).buildAssignment(builder).append(getAllocation()).append(";\n");
             }
             case Opcodes.ANEWARRAY -> outputs.get(0).buildAssignment(builder).append("(jobject)createArray(ctx, ")
                     .append(javaType.generateClassFetch()).append(", ").append(inputs.get(0).arg()).append(");\n");
@@ -53,6 +60,29 @@ public class TypeInstruction extends Instruction {
         }
     }
 
+    private String getAllocation() {
+        if (stackSlot < 0)
+            return "gcAlloc(ctx, &class_" + qualifiedType + ")";
+        return "initStackObject(&class_" + qualifiedType + ", &frame[" + stackSlot + "])";
+    }
+
+    private void appendStackAssertion(StringBuilder builder) {
+        if (stackSlot >= 0)
+            builder.append("\tstatic_assert(sizeof(").append(qualifiedType).append(") <= ").append(stackSlotCount).append(" * sizeof(jtype));\n");
+    }
+
+    /**
+     * Store the allocated object in frame slots instead of the heap, for an allocation that never escapes its method
+     */
+    public void setStackSlots(int first, int count) {
+        stackSlot = first;
+        stackSlotCount = count;
+    }
+
+    public boolean isStackAllocated() {
+        return stackSlot >= 0;
+    }
+
     @Override
     public boolean inlineable() {
         return opcode == Opcodes.CHECKCAST || opcode == Opcodes.INSTANCEOF;
@@ -98,6 +128,16 @@ public class TypeInstruction extends Instruction {
             dependencies.add(javaType.getRegistryTypeName());
     }
 
+    @Override
+    public String getInitializedClass() {
+        return opcode == Opcodes.NEW ? Utils.sanitizeName(type) : null;
+    }
+
+    @Override
+    public void markClassInitialized() {
+        classInitialized = true;
+    }
+
     public String getType() {
         return type;
     }
@@ -24,6 +24,17 @@ public class VariableInstruction extends Instruction implements LocalInstruction
 
     @Override
     public void appendUnoptimized(StringBuilder builder, TranspilerConfig config) {
+        if (method.hasTypedLocals() && getLocalType() != TypeVariants.OBJECT) {
+            String stackName = getLocalType().getStackName();
+            switch (opcode) {
+                case Opcodes.ILOAD, Opcodes.LLOAD, Opcodes.FLOAD, Opcodes.DLOAD ->
+                        builder.append("\t(sp++)->").append(stackName).append(" = ").append(method.getLocalExpression(local, getLocalType())).append(";\n");
+                case Opcodes.ISTORE, Opcodes.LSTORE, Opcodes.FSTORE, Opcodes.DSTORE ->
+                        builder.append("\t").append(method.getLocalExpression(local, getLocalType())).append(" = (--sp)->").append(stackName).append(";\n");
+                default -> throw new TranspilerException("Invalid opcode");
+            }
+            return;
+        }
         switch (opcode) {
             case Opcodes.ILOAD, Opcodes.LLOAD, Opcodes.FLOAD, Opcodes.DLOAD, Opcodes.ALOAD -> appendLoadStore(builder, Opcodes.ILOAD, "load");
             case Opcodes.ISTORE, Opcodes.LSTORE, Opcodes.FSTORE, Opcodes.DSTORE, Opcodes.ASTORE -> appendLoadStore(builder, Opcodes.ISTORE, "store");
@@ -35,10 +46,9 @@ public class VariableInstruction extends Instruction implements LocalInstruction
     public void appendOptimized(StringBuilder builder, TranspilerConfig config) {
         switch (opcode) {
             case Opcodes.ILOAD, Opcodes.LLOAD, Opcodes.FLOAD, Opcodes.DLOAD, Opcodes.ALOAD ->
-                    outputs.get(0).buildAssignment(builder).append("frame[").append(local).append("].")
-                            .append(getLocalType().getStackName()).append(";\n");
+                    outputs.get(0).buildAssignment(builder).append(method.getLocalExpression(local, getLocalType())).append(";\n");
             case Opcodes.ISTORE, Opcodes.LSTORE, Opcodes.FSTORE, Opcodes.DSTORE, Opcodes.ASTORE ->
-                    builder.append("\tframe[").append(local).append("].").append(getLocalType().getStackName())
+                    builder.append("\t").append(method.getLocalExpression(local, getLocalType()))
                             .append(" = ").append(inputs.get(0).arg()).append(";\n");
             default -> throw new TranspilerException("Invalid opcode");
         }
@@ -48,7 +58,7 @@ public class VariableInstruction extends Instruction implements LocalInstruction
     public void appendInlined(StringBuilder builder) {
         switch (opcode) {
             case Opcodes.ILOAD, Opcodes.LLOAD, Opcodes.FLOAD, Opcodes.DLOAD, Opcodes.ALOAD ->
-                    builder.append("frame[").append(local).append("].").append(getLocalType().getStackName());
+                    builder.append(method.getLocalExpression(local, getLocalType()));
             default -> throw new TranspilerException("Not inlinable");
         }
     }
@@ -11,10 +11,35 @@ import java.util.*;
  */
 public class ZeroOperandInstruction extends Instruction {
 
+    private boolean nullChecked;
+    private boolean boundsChecked;
+
     public ZeroOperandInstruction(BytecodeMethod method, int opcode) {
         super(method, opcode);
     }
 
+    /**
+     * Omit the null check of an array length, since the array is proven to be non-null
+     */
+    public void markNullChecked() {
+        nullChecked = true;
+    }
+
+    /**
+     * Omit the bounds check of an array access, since the index is proven to be in bounds
+     */
+    public void markBoundsChecked() {
+        boundsChecked = true;
+    }
+
+    private String getNullCheck(String object) {
+        return nullChecked ? "(" + object + ")" : "nullCheck(ctx, " + object + ")";
+    }
+
+    private String getArrayAccess() {
+        return boundsChecked ? "ARRAY_ACCESS_UNCHECKED" : "ARRAY_ACCESS";
+    }
+
     private String getOpcodeConst(int zeroOpcode) {
         return Integer.toString(opcode - zeroOpcode);
     }
@@ -122,13 +147,13 @@ public class ZeroOperandInstruction extends Instruction {
             case Opcodes.ACONST_NULL -> outputs.get(0).buildAssignment(builder).append("jobject(nullptr);\n");
             case Opcodes.IALOAD, Opcodes.LALOAD, Opcodes.FALOAD, Opcodes.DALOAD, Opcodes.AALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD -> {
                 type = opcodeType(Opcodes.IALOAD);
-                outputs.get(0).buildAssignment(builder).append("(").append(type.getArithmeticType()).append(")ARRAY_ACCESS(")
+                outputs.get(0).buildAssignment(builder).append("(").append(type.getArithmeticType()).append(")").append(getArrayAccess()).append("(")
                         .append(type.getCppType()).append(", ").append(inputs.get(0).arg()).append(", ")
                         .append(inputs.get(1).arg()).append(");\n");
             }
             case Opcodes.IASTORE, Opcodes.LASTORE, Opcodes.FASTORE, Opcodes.DASTORE, Opcodes.AASTORE, Opcodes.BASTORE, Opcodes.CASTORE, Opcodes.SASTORE -> {
                 type = opcodeType(Opcodes.IASTORE);
-                builder.append("\tARRAY_ACCESS(").append(type.getCppType()).append(", ").append(inputs.get(0).arg()).append(", ")
+                builder.append("\t").append(getArrayAccess()).append("(").append(type.getCppType()).append(", ").append(inputs.get(0).arg()).append(", ")
                         .append(inputs.get(1).arg()).append(") = ").append(inputs.get(2).arg()).append(";\n");
             }
             case Opcodes.POP, Opcodes.POP2, Opcodes.DUP, Opcodes.DUP_X1, Opcodes.DUP_X2, Opcodes.DUP2, Opcodes.DUP2_X1, Opcodes.DUP2_X2, Opcodes.SWAP ->
@@ -187,7 +212,7 @@ public class ZeroOperandInstruction extends Instruction {
             case Opcodes.DCMPG ->
                 outputs.get(0).buildAssignment(builder).append("doubleCompare(").append(inputs.get(0).arg()).append(", ").append(inputs.get(1).arg()).append(", 1);\n");
             case Opcodes.ARRAYLENGTH ->
-                outputs.get(0).buildAssignment(builder).append("((jarray) nullCheck(ctx, ").append(inputs.get(0).arg()).append("))->length;\n");
+                outputs.get(0).buildAssignment(builder).append("((jarray) ").append(getNullCheck(inputs.get(0).arg())).append(")->length;\n");
             case Opcodes.ATHROW -> {
                 builder.append("\tthrowException(ctx, ").append(inputs.get(0).arg()).append(");");
                 appendThrowReturn(builder);
@@ -219,7 +244,7 @@ public class ZeroOperandInstruction extends Instruction {
             case Opcodes.ACONST_NULL -> builder.append("jobject(nullptr)");
             case Opcodes.IALOAD, Opcodes.LALOAD, Opcodes.FALOAD, Opcodes.DALOAD, Opcodes.AALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD -> {
                 type = opcodeType(Opcodes.IALOAD);
-                builder.append("(").append(type.getArithmeticType()).append(")ARRAY_ACCESS(")
+                builder.append("(").append(type.getArithmeticType()).append(")").append(getArrayAccess()).append("(")
                         .append(type.getCppType()).append(", ").append(inputs.get(0).arg()).append(", ")
                         .append(inputs.get(1).arg()).append(")");
             }
@@ -277,7 +302,7 @@ public class ZeroOperandInstruction extends Instruction {
             case Opcodes.DCMPG ->
                     builder.append("doubleCompare(").append(inputs.get(0).arg()).append(", ").append(inputs.get(1).arg()).append(", 1)");
             case Opcodes.ARRAYLENGTH ->
-                    builder.append("((jarray) nullCheck(ctx, ").append(inputs.get(0).arg()).append("))->length");
+                    builder.append("((jarray) ").append(getNullCheck(inputs.get(0).arg())).append(")->length");
             default -> throw new TranspilerException("Not inlinable");
         }
     }